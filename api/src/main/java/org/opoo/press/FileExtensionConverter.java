@@ -0,0 +1,35 @@
+/*
+ * Copyright 2013 Alex Lin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opoo.press;
+
+/**
+ * A {@link Converter} which declares the file extensions it converts, so the
+ * converter can be looked up by the extension of source file.
+ * <p>{@link #matches(Source)} is only called for the sources with one of
+ * the extensions.</p>
+ *
+ * @author Alex Lin
+ */
+public interface FileExtensionConverter extends Converter {
+
+    /**
+     * The input file extensions without '.', in lower case,
+     * such as 'md', 'markdown'.
+     *
+     * @return input file extensions
+     */
+    String[] getInputFileExtensions();
+}
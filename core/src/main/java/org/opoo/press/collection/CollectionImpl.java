@@ -25,7 +25,9 @@ import org.opoo.press.collection.configuration.CollectionConfiguration;
 import org.opoo.press.impl.ListHolderImpl;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * @author Alex Lin
@@ -35,6 +37,8 @@ public class CollectionImpl implements Collection{
     private List<Page> pages = new ArrayList<Page>();
     private ListHolder<Tag> tags;
     private ListHolder<Category> categories;
+    private Map<String, MetaTagRegistry<Tag>> tagRegistries = new HashMap<String, MetaTagRegistry<Tag>>();
+    private Map<String, MetaTagRegistry<Category>> categoryRegistries = new HashMap<String, MetaTagRegistry<Category>>();
 
     public CollectionImpl(CollectionConfiguration configuration){
         this.configuration = configuration;
@@ -62,6 +66,32 @@ public class CollectionImpl implements Collection{
         return categories;
     }
 
+    /**
+     * @param key the meta of tags for collection
+     * @return the registry of tags
+     */
+    public MetaTagRegistry<Tag> getTagRegistry(String key){
+        MetaTagRegistry<Tag> registry = tagRegistries.get(key);
+        if(registry == null){
+            registry = new MetaTagRegistry<Tag>(tags.get(key));
+            tagRegistries.put(key, registry);
+        }
+        return registry;
+    }
+
+    /**
+     * @param key the meta of categories for collection
+     * @return the registry of categories
+     */
+    public MetaTagRegistry<Category> getCategoryRegistry(String key){
+        MetaTagRegistry<Category> registry = categoryRegistries.get(key);
+        if(registry == null){
+            registry = new MetaTagRegistry<Category>(categories.get(key));
+            categoryRegistries.put(key, registry);
+        }
+        return registry;
+    }
+
     public CollectionImpl addPage(Page page){
         pages.add(page);
         return this;
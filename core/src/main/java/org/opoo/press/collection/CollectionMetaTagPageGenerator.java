@@ -31,6 +31,8 @@ import org.opoo.press.Tag;
 import org.opoo.press.impl.SimplePage;
 import org.opoo.press.pagination.PaginationUtils;
 import org.opoo.press.renderer.AbstractFreeMarkerRenderer;
+import org.opoo.press.task.CallableTask;
+import org.opoo.press.task.TaskExecutor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -43,19 +45,24 @@ import java.util.Set;
  */
 public class CollectionMetaTagPageGenerator implements Generator{
     private static final Logger log = LoggerFactory.getLogger(CollectionMetaTagPageGenerator.class);
+    private static final int CHUNK_SIZE = 100;
 
 
     @Override
     public void generate(Site site) {
         Map<String, Collection> collections = site.getCollections();
 
-        Set<Page> templatePages = Sets.newHashSet();
+        Set<Page> templatePages = Sets.newIdentityHashSet();
+        Map<String, Page> templatePageIndex = site.get(CollectionProcessor.TEMPLATE_PAGE_INDEX);
         List<Page> allNewPages = Lists.newArrayList();
 
+        //initialize before generating pages in threads
+        site.getFactory().getPaginationUpdater();
+
         for(Collection collection: collections.values()){
             log.debug("Generate meta tag page for collection: {}", collection.getName());
-            generateCollectionTagPages(site, collection, templatePages, allNewPages);
-            generateCollectionCategoryPages(site, collection, templatePages, allNewPages);
+            generateCollectionTagPages(site, collection, templatePageIndex, templatePages, allNewPages);
+            generateCollectionCategoryPages(site, collection, templatePageIndex, templatePages, allNewPages);
         }
 
         // put tempate pages in cache, will be removed later.
@@ -82,14 +89,15 @@ public class CollectionMetaTagPageGenerator implements Generator{
     }
 
 
-    private void generateCollectionTagPages(Site site, Collection collection, Set<Page> templatePages, List<Page> allNewPages) {
+    private void generateCollectionTagPages(Site site, Collection collection, Map<String, Page> templatePageIndex,
+                                            Set<Page> templatePages, List<Page> allNewPages) {
         ListHolder<Tag> tagsHolder = collection.getTagsHolder();
         String[] tagMetaNames = tagsHolder.getKeys();
 
         for(String tagMeta: tagMetaNames) {
             String templateIdentity = "tag_template_" + collection.getName() + "_" + tagMeta;
 
-            Page templatePage = lookupTemplatePage(templateIdentity, site.getAllPages(), templatePages);
+            Page templatePage = lookupTemplatePage(templateIdentity, templatePageIndex, site.getAllPages(), templatePages);
 
             if(templatePage == null){
                 log.warn("Template page for collection '{}', tag '{}' not found.", collection.getName(), tagMeta);
@@ -106,55 +114,92 @@ public class CollectionMetaTagPageGenerator implements Generator{
         }
     }
 
-    private void generateCollectionMetaTagPages(Site site, Collection collection, Page templatePage, List<? extends MetaTag> tags,
-                                            List<Page> allNewPages) {
-        for(MetaTag tag: tags){
-            List<Page> pages = tag.getPages();
-            if(pages.isEmpty()){
-                continue;
-            }
+    private void generateCollectionMetaTagPages(final Site site, Collection collection, final Page templatePage,
+                                                List<? extends MetaTag> tags, List<Page> allNewPages) {
+        final List<? extends List<? extends MetaTag>> chunks = Lists.partition(tags, CHUNK_SIZE);
+        List<Integer> indexes = Lists.newArrayList();
+        for(int i = 0 ; i < chunks.size() ; i++){
+            indexes.add(i);
+        }
 
-            SimplePage tagPage = new SimplePage(site, templatePage, null);
+        CallableTask<Integer, GeneratedPages> task = new CallableTask<Integer, GeneratedPages>() {
+            @Override
+            public GeneratedPages call(Integer index) {
+                GeneratedPages generated = new GeneratedPages(index);
+                for(MetaTag tag: chunks.get(index)){
+                    generateMetaTagPage(site, templatePage, tag, generated.pages);
+                }
+                return generated;
+            }
+        };
 
-            String title = tag.getName();
-            String titlePrefix = getProperty(templatePage, tag.getConfig(), "title_prefix");
-            if(titlePrefix != null){
-                title = titlePrefix + title;
+        TaskExecutor taskExecutor = TaskExecutor.forSite(site);
+        List<GeneratedPages> results;
+        if(taskExecutor != null){
+            results = taskExecutor.call(indexes, task);
+        }else{
+            results = Lists.newArrayList();
+            for(Integer index: indexes){
+                results.add(task.call(index));
             }
-            tagPage.setTitle(title);
+        }
 
+        //merge in tags order, results are in completion order
+        GeneratedPages[] ordered = new GeneratedPages[chunks.size()];
+        for(GeneratedPages generated: results){
+            ordered[generated.index] = generated;
+        }
+        for(GeneratedPages generated: ordered){
+            allNewPages.addAll(generated.pages);
+        }
+    }
 
-            String permalink = getProperty(templatePage, tag.getConfig(), "permalink");
-            String url = "/" + tag.getSlug() + "/";
-            if(permalink != null){
-                url = AbstractFreeMarkerRenderer.process(permalink, tag);
-            }else {
-                if(tag instanceof Category){
-                    url = "/" + ((Category) tag).getPath() + "/";
-                }
-                String tagDir = getProperty(templatePage, tag.getConfig(), "output_dir");
-                if(tagDir != null){
-                    url = tagDir + url;
-                }
+    private void generateMetaTagPage(Site site, Page templatePage, MetaTag tag, List<Page> newPages) {
+        List<Page> pages = tag.getPages();
+        if(pages.isEmpty()){
+            return;
+        }
+
+        SimplePage tagPage = new SimplePage(site, templatePage, null);
+
+        String title = tag.getName();
+        String titlePrefix = getProperty(templatePage, tag.getConfig(), "title_prefix");
+        if(titlePrefix != null){
+            title = titlePrefix + title;
+        }
+        tagPage.setTitle(title);
+
+
+        String permalink = getProperty(templatePage, tag.getConfig(), "permalink");
+        String url = "/" + tag.getSlug() + "/";
+        if(permalink != null){
+            url = AbstractFreeMarkerRenderer.process(permalink, tag);
+        }else {
+            if(tag instanceof Category){
+                url = "/" + ((Category) tag).getPath() + "/";
+            }
+            String tagDir = getProperty(templatePage, tag.getConfig(), "output_dir");
+            if(tagDir != null){
+                url = tagDir + url;
             }
-            tagPage.setUrl(url);
+        }
+        tagPage.setUrl(url);
 
-            //require render content
-            //tagPage.set("render", true);
+        //require render content
+        //tagPage.set("render", true);
 
-            tagPage.set("metaTag", tag);
-            tag.setPage(tagPage);
-            allNewPages.add(tagPage);
+        tagPage.set("metaTag", tag);
+        tag.setPage(tagPage);
+        newPages.add(tagPage);
 
-            //List<Page> pages = tag.getPages();
-            //Collections.sort(pages, PageComparator.INSTANCE);
+        //List<Page> pages = tag.getPages();
+        //Collections.sort(pages, PageComparator.INSTANCE);
 
-            Number paginate = getProperty(templatePage, tag.getConfig(), "paginate");
-            if(paginate != null && paginate.intValue() > 0){
-                List<Page> pagedList = PaginationUtils.paginate(site, tagPage, pages, paginate.intValue());
-                if(pagedList != null){
-                    allNewPages.addAll(pagedList);
-                }
+        Number paginate = getProperty(templatePage, tag.getConfig(), "paginate");
+        if(paginate != null && paginate.intValue() > 0){
+            List<Page> pagedList = PaginationUtils.paginate(site, tagPage, pages, paginate.intValue());
+            if(pagedList != null){
+                newPages.addAll(pagedList);
             }
         }
     }
@@ -168,7 +213,13 @@ public class CollectionMetaTagPageGenerator implements Generator{
     }
 
 
-    private Page lookupTemplatePage(final String identity, List<Page> allPages, Set<Page> templatePages){
+    private Page lookupTemplatePage(final String identity, Map<String, Page> templatePageIndex,
+                                    List<Page> allPages, Set<Page> templatePages){
+        //indexed by CollectionProcessor
+        if(templatePageIndex != null){
+            return templatePageIndex.get(identity);
+        }
+
         Predicate<Page> predicate = new Predicate<Page>() {
             @Override
             public boolean apply(Page input) {
@@ -188,15 +239,15 @@ public class CollectionMetaTagPageGenerator implements Generator{
     }
 
 
-    private void generateCollectionCategoryPages(Site site, Collection collection, Set<Page> templatePages,
-                                                 List<Page> allNewPages) {
+    private void generateCollectionCategoryPages(Site site, Collection collection, Map<String, Page> templatePageIndex,
+                                                 Set<Page> templatePages, List<Page> allNewPages) {
         ListHolder<Category> categoriesHolder = collection.getCategoriesHolder();
         String[] categoryMetaNames = categoriesHolder.getKeys();
 
         for(String categoryMeta: categoryMetaNames) {
             String templateIdentity = "category_template_" + collection.getName() + "_" + categoryMeta;
 
-            Page templatePage = lookupTemplatePage(templateIdentity, site.getAllPages(), templatePages);
+            Page templatePage = lookupTemplatePage(templateIdentity, templatePageIndex, site.getAllPages(), templatePages);
 
             if(templatePage == null){
                 log.warn("Template page for collection '{}', category '{}' not found.", collection.getName(), categoryMeta);
@@ -213,6 +264,15 @@ public class CollectionMetaTagPageGenerator implements Generator{
 
 
 
+    private static class GeneratedPages {
+        private final int index;
+        private final List<Page> pages = Lists.newArrayList();
+
+        private GeneratedPages(int index) {
+            this.index = index;
+        }
+    }
+
     @Override
     public int getOrder() {
         return 3000;
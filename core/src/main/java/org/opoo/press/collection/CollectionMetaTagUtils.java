@@ -15,8 +15,6 @@
  */
 package org.opoo.press.collection;
 
-import com.google.common.base.Predicate;
-import com.google.common.collect.Iterables;
 import org.opoo.press.Category;
 import org.opoo.press.Collection;
 import org.opoo.press.Config;
@@ -151,7 +149,7 @@ public class CollectionMetaTagUtils {
     }
 
 
-    public static void processPageMetaTags(Collection collection, CollectionConfiguration configuration,
+    public static void processPageMetaTags(CollectionImpl collection, CollectionConfiguration configuration,
                                            Factory factory, Page page){
         if(page.getSource() == null || page.getSource().getMeta() == null){
             return;
@@ -165,7 +163,7 @@ public class CollectionMetaTagUtils {
     }
 
 
-    private static void processPageTags(Collection collection, CollectionConfiguration configuration,
+    private static void processPageTags(CollectionImpl collection, CollectionConfiguration configuration,
                                         Factory factory, Page page,
                                         String collectionName, Map<String, Object> sourceMeta){
         TagConfiguration[] tags = configuration.getTags();
@@ -178,7 +176,7 @@ public class CollectionMetaTagUtils {
         }
     }
 
-    private static void processPageTag(Collection collection, CollectionConfiguration configuration,
+    private static void processPageTag(CollectionImpl collection, CollectionConfiguration configuration,
                                        Factory factory, Page page, TagConfiguration tagConfiguration,
                                        String collectionName, Map<String, Object> sourceMeta) {
         List<String> stringTags = MetaTagsUtils.getStringTags(sourceMeta, tagConfiguration);
@@ -187,35 +185,25 @@ public class CollectionMetaTagUtils {
         }
 
         String tagMeta = tagConfiguration.getMeta();
-        List<Tag> tags = collection.getTagsHolder().get(tagConfiguration.getMetaForCollection());
-
-        for(final String stringTag: stringTags){
-            Tag tag = Iterables.tryFind(tags, new Predicate<Tag>() {
-                @Override
-                public boolean apply(Tag tag) {
-                    return tag.isNameOrSlug(stringTag);
-                }
-            }).orNull();
+        MetaTagRegistry<Tag> registry = collection.getTagRegistry(tagConfiguration.getMetaForCollection());
 
+        for(String stringTag: stringTags){
+            Tag tag = registry.get(stringTag);
             if(tag == null){
                 tag = factory.createTag(collectionName + "-" + tagMeta, stringTag);
                 if(tag instanceof AbstractMetaTag){
                     ((AbstractMetaTag) tag).setConfig(tagConfiguration);
                 }
-                tags.add(tag);
+                registry.add(tag);
             }
 
-			//tag.getPages().add(page);
-            List<Page> pages = tag.getPages();
-			if(!pages.contains(page)){
-				pages.add(page);
-			}
+            registry.addPage(tag, page);
             page.getTagsHolder().add(tagMeta, tag);
         }
     }
 
 
-    private static void processPageCategories(Collection collection, CollectionConfiguration configuration,
+    private static void processPageCategories(CollectionImpl collection, CollectionConfiguration configuration,
                                               Factory factory, Page page,
                                               String collectionName, Map<String, Object> sourceMeta) {
         CategoryConfiguration[] categories = configuration.getCategories();
@@ -229,7 +217,7 @@ public class CollectionMetaTagUtils {
         }
     }
 
-    private static void processPageCategory(Collection collection, CollectionConfiguration configuration,
+    private static void processPageCategory(CollectionImpl collection, CollectionConfiguration configuration,
                                             Factory factory, Page page, CategoryConfiguration categoryConfiguration,
                                             String collectionName, Map<String, Object> sourceMeta) {
         List<String> stringCategories = MetaTagsUtils.getStringTags(sourceMeta, categoryConfiguration);
@@ -238,29 +226,20 @@ public class CollectionMetaTagUtils {
         }
 
         String categoryMeta = categoryConfiguration.getMeta();
-        List<Category> categories = collection.getCategoriesHolder().get(categoryConfiguration.getMetaForCollection());
+        MetaTagRegistry<Category> registry = collection.getCategoryRegistry(categoryConfiguration.getMetaForCollection());
 
-        for(final String stringCategory: stringCategories){
-            Category category = Iterables.tryFind(categories, new Predicate<Category>() {
-                @Override
-                public boolean apply(Category input) {
-                    return input.isNameOrSlug(stringCategory);
-                }
-            }).orNull();
+        for(String stringCategory: stringCategories){
+            Category category = registry.get(stringCategory);
             if(category == null){
                 category = factory.createCategory(collectionName + "-" + categoryMeta, stringCategory);
                 if(category instanceof AbstractMetaTag){
                     ((AbstractMetaTag) category).setConfig(categoryConfiguration);
                 }
-                categories.add(category);
+                registry.add(category);
             }
 
-            //category.getPages().add(page);
-            List<Page> pages = category.getPages();
-			if(!pages.contains(page)){
-				pages.add(page);
-			}
-			page.getCategoriesHolder().add(categoryMeta, category);
+            registry.addPage(category, page);
+            page.getCategoriesHolder().add(categoryMeta, category);
         }
     }
 }
@@ -16,6 +16,7 @@
 package org.opoo.press.collection;
 
 import com.google.common.base.Predicate;
+import com.google.common.collect.Lists;
 import org.opoo.press.Category;
 import org.opoo.press.Factory;
 import org.opoo.press.ListHolder;
@@ -30,12 +31,15 @@ import org.opoo.press.collection.configuration.CollectionConfiguration;
 import org.opoo.press.collection.configuration.CollectionConfigurationResolver;
 import org.opoo.press.collection.configuration.FilterConfiguration;
 import org.opoo.press.collection.configuration.impl.CollectionConfigurationResolverImpl;
+import org.opoo.press.task.CallableTask;
+import org.opoo.press.task.TaskExecutor;
 import org.opoo.press.util.ClassUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Iterator;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -45,6 +49,13 @@ import java.util.Set;
  */
 public class CollectionProcessor extends ProcessorAdapter {
     private static final Logger log = LoggerFactory.getLogger(CollectionProcessor.class);
+    private static final int CHUNK_SIZE = 200;
+
+    /**
+     * Site variable name of the template pages index.
+     * @see CollectionMetaTagPageGenerator
+     */
+    public static final String TEMPLATE_PAGE_INDEX = "template_page_index";
 
     private CollectionConfigurationResolver collectionConfigurationResolver
             = new CollectionConfigurationResolverImpl();
@@ -57,6 +68,9 @@ public class CollectionProcessor extends ProcessorAdapter {
     @Override
     public void postRead(Site site) {
         createCollections(site);
+
+        log.debug("Building site query indexes.");
+        site.set(SiteQuery.NAME, new SiteQuery(site.getCollections()));
     }
 
     private void createCollections(Site site) {
@@ -66,14 +80,24 @@ public class CollectionProcessor extends ProcessorAdapter {
             return;
         }
 
+        List<CollectionContext> contexts = new ArrayList<CollectionContext>();
         for (Map.Entry<String, ?> configEntry : collectionsMap.entrySet()) {
             String collectionName = configEntry.getKey();
             Map<String, ?> collectionConfiguration = (Map<String, ?>) configEntry.getValue();
-            createCollection(site, collectionName, collectionConfiguration);
+            contexts.add(createCollectionContext(site, collectionName, collectionConfiguration));
+        }
+
+        Map<String, Page> templatePageIndex = new HashMap<String, Page>();
+        List<List<Page>> collectionPages = classify(site, contexts, templatePageIndex);
+        site.set(TEMPLATE_PAGE_INDEX, templatePageIndex);
+
+        for (int i = 0; i < contexts.size(); i++) {
+            createCollection(site, contexts.get(i), collectionPages.get(i));
         }
     }
 
-    private void createCollection(Site site, String collectionName, Map<String, ?> collectionConfigurationMap) {
+    private CollectionContext createCollectionContext(Site site, String collectionName,
+                                                      Map<String, ?> collectionConfigurationMap) {
         CollectionConfiguration configuration = collectionConfigurationResolver.resolve(collectionName,
                 collectionConfigurationMap);
 
@@ -87,21 +111,104 @@ public class CollectionProcessor extends ProcessorAdapter {
         FilterConfiguration filterConfiguration = configuration.getFilter();
         Predicate<Page> filter = createFilter(site, factory, filterConfiguration);
 
-        log.debug("Filter pages by: " + filter);
+        log.debug("Filter pages of collection '{}' by: {}", collectionName, filter);
+        return new CollectionContext(collection, configuration, filter);
+    }
 
-        Iterator<Page> iterator = site.getAllPages().iterator();
-        while (iterator.hasNext()) {
-            Page page = iterator.next();
-            if (filter.apply(page)) {
-                collection.addPage(page);
-                page.set("collection", collection);
-                log.debug("Add page '{}' to collection '{}'", page.getUrl(), collectionName);
+    /**
+     * Walk all pages once in parallel chunks, apply filters of all collections to every page
+     * and index the template pages of tags and categories.
+     * Chunk results are merged in chunk order, so the pages of each collection keep the order
+     * of the site pages.
+     *
+     * @param templatePageIndex template pages by identity, e.g. 'tag_template_post_tag', filled by this method
+     * @return pages of each collection, same order as contexts
+     */
+    private List<List<Page>> classify(Site site, final List<CollectionContext> contexts,
+                                      Map<String, Page> templatePageIndex) {
+        final List<List<Page>> chunks = Lists.partition(new ArrayList<Page>(site.getAllPages()), CHUNK_SIZE);
+        List<Integer> indexes = new ArrayList<Integer>(chunks.size());
+        for (int i = 0; i < chunks.size(); i++) {
+            indexes.add(i);
+        }
 
-                log.debug("Processing tags and categories for page: {}", page.getUrl());
-                CollectionMetaTagUtils.processPageMetaTags(collection, configuration, factory, page);
+        CallableTask<Integer, Classification> task = new CallableTask<Integer, Classification>() {
+            @Override
+            public Classification call(Integer index) {
+                Classification classification = new Classification(index, contexts.size());
+                for (Page page : chunks.get(index)) {
+                    for (int i = 0; i < contexts.size(); i++) {
+                        if (contexts.get(i).filter.apply(page)) {
+                            classification.pages.get(i).add(page);
+                        }
+                    }
+                    indexTemplatePage(page, classification.templatePages);
+                }
+                return classification;
+            }
+        };
+
+        TaskExecutor taskExecutor = TaskExecutor.forSite(site);
+        List<Classification> classifications;
+        if (taskExecutor != null) {
+            classifications = taskExecutor.call(indexes, task);
+        } else {
+            classifications = new ArrayList<Classification>();
+            for (Integer index : indexes) {
+                classifications.add(task.call(index));
             }
         }
 
+        //results are in completion order
+        Classification[] ordered = new Classification[chunks.size()];
+        for (Classification classification : classifications) {
+            ordered[classification.index] = classification;
+        }
+
+        for (Classification classification : ordered) {
+            for (Map.Entry<String, Page> entry : classification.templatePages.entrySet()) {
+                if (!templatePageIndex.containsKey(entry.getKey())) {
+                    templatePageIndex.put(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+
+        List<List<Page>> result = new ArrayList<List<Page>>();
+        for (int i = 0; i < contexts.size(); i++) {
+            List<Page> pages = new ArrayList<Page>();
+            for (Classification classification : ordered) {
+                pages.addAll(classification.pages.get(i));
+            }
+            result.add(pages);
+        }
+        return result;
+    }
+
+    private void indexTemplatePage(Page page, Map<String, Page> templatePages) {
+        if (page.getSource() == null || page.getSource().getMeta() == null) {
+            return;
+        }
+        for (Map.Entry<String, Object> entry : page.getSource().getMeta().entrySet()) {
+            String key = entry.getKey();
+            if (entry.getValue() != null && (key.startsWith("tag_template_") || key.startsWith("category_template_"))
+                    && !templatePages.containsKey(key)) {
+                templatePages.put(key, page);
+            }
+        }
+    }
+
+    private void createCollection(Site site, CollectionContext context, List<Page> pages) {
+        CollectionImpl collection = context.collection;
+        CollectionConfiguration configuration = context.configuration;
+        String collectionName = configuration.getName();
+        Factory factory = site.getFactory();
+
+        for (Page page : pages) {
+            collection.addPage(page);
+            page.set("collection", collection);
+            log.debug("Add page '{}' to collection '{}'", page.getUrl(), collectionName);
+        }
+
         //if collection name is 'post' or configuration has property 'sort'
         Boolean sortable = configuration.get("sortable");
         if (collectionName.equals("post")
@@ -109,13 +216,17 @@ public class CollectionProcessor extends ProcessorAdapter {
 
 //            Collections.sort(collection.getPages(), PageComparator.INSTANCE);
             sort(collection.getPages());
-            sort(collection.getCategoriesHolder(), true);
-            sort(collection.getTagsHolder(), true);
-        } else {
-            sort(collection.getCategoriesHolder(), false);
-            sort(collection.getTagsHolder(), false);
         }
 
+        //pages of tags and categories are added in collection order, no need to sort them again
+        for (Page page : collection.getPages()) {
+            log.debug("Processing tags and categories for page: {}", page.getUrl());
+            CollectionMetaTagUtils.processPageMetaTags(collection, configuration, factory, page);
+        }
+
+        sort(collection.getCategoriesHolder());
+        sort(collection.getTagsHolder());
+
         site.getCollections().put(collectionName, collection);
 
         if (collectionName.equals("post")) {
@@ -145,21 +256,12 @@ public class CollectionProcessor extends ProcessorAdapter {
         }
     }
 
-    private void sort(ListHolder<? extends MetaTag> listHolder, boolean sortPagesOfMetaTag) {
+    private void sort(ListHolder<? extends MetaTag> listHolder) {
         String[] keys = listHolder.getKeys();
         for (String key : keys) {
             List<? extends MetaTag> list = listHolder.get(key);
             //sort tag
             Collections.sort(list, MetaTagComparator.INSTANCE);
-
-            if (sortPagesOfMetaTag) {
-                for (MetaTag metaTag : list) {
-                    List<Page> pages = metaTag.getPages();
-                    if (pages != null && !pages.isEmpty()) {
-                        Collections.sort(pages, PageComparator.INSTANCE);
-                    }
-                }
-            }
         }
     }
 
@@ -187,12 +289,41 @@ public class CollectionProcessor extends ProcessorAdapter {
     }
 
 
+    private static class CollectionContext {
+        private final CollectionImpl collection;
+        private final CollectionConfiguration configuration;
+        private final Predicate<Page> filter;
+
+        private CollectionContext(CollectionImpl collection, CollectionConfiguration configuration,
+                                  Predicate<Page> filter) {
+            this.collection = collection;
+            this.configuration = configuration;
+            this.filter = filter;
+        }
+    }
+
+    private static class Classification {
+        private final int index;
+        private final List<List<Page>> pages;
+        private final Map<String, Page> templatePages = new HashMap<String, Page>();
+
+        private Classification(int index, int collections) {
+            this.index = index;
+            this.pages = new ArrayList<List<Page>>(collections);
+            for (int i = 0; i < collections; i++) {
+                pages.add(new ArrayList<Page>());
+            }
+        }
+    }
+
     @Override
     public void postGenerate(Site site) {
         Set<Page> siteTemplatePages = (Set<Page>) site.get("template_pages");
         if (siteTemplatePages != null) {
             log.info("Removing template pages: {}", siteTemplatePages.size());
+            //template pages is an identity set, ArrayList.removeAll is linear
             site.getAllPages().removeAll(siteTemplatePages);
         }
+        site.set(TEMPLATE_PAGE_INDEX, null);
     }
 }
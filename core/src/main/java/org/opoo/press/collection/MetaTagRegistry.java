@@ -0,0 +1,92 @@
+/*
+ * Copyright 2013-2015 Alex Lin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opoo.press.collection;
+
+import org.opoo.press.MetaTag;
+import org.opoo.press.Page;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Tags (or categories) of one meta in a collection, indexed by both name and slug.
+ * Pages of each tag are tracked by an identity set, the page list of the tag
+ * keeps the insertion order.
+ *
+ * @author Alex Lin
+ */
+public class MetaTagRegistry<T extends MetaTag> {
+    private final List<T> metaTags;
+    private final Map<String, T> index = new HashMap<String, T>();
+    private final Map<T, Set<Page>> pageSets = new IdentityHashMap<T, Set<Page>>();
+
+    /**
+     * @param metaTags the backing list, usually from the {@link org.opoo.press.ListHolder} of the collection
+     */
+    public MetaTagRegistry(List<T> metaTags) {
+        this.metaTags = metaTags;
+        for (T metaTag : metaTags) {
+            indexMetaTag(metaTag);
+        }
+    }
+
+    /**
+     * Same as finding the first tag which {@link MetaTag#isNameOrSlug(String)}.
+     *
+     * @param nameOrSlug name or slug
+     * @return the tag, or null if not found
+     */
+    public T get(String nameOrSlug) {
+        return index.get(nameOrSlug);
+    }
+
+    public void add(T metaTag) {
+        metaTags.add(metaTag);
+        indexMetaTag(metaTag);
+    }
+
+    /**
+     * @param metaTag tag
+     * @param page page
+     * @return true if the page was not added to the tag before
+     */
+    public boolean addPage(T metaTag, Page page) {
+        Set<Page> pages = pageSets.get(metaTag);
+        if (pages.add(page)) {
+            metaTag.getPages().add(page);
+            return true;
+        }
+        return false;
+    }
+
+    private void indexMetaTag(T metaTag) {
+        //the first one wins, same as the linear lookup
+        if (metaTag.getSlug() != null && !index.containsKey(metaTag.getSlug())) {
+            index.put(metaTag.getSlug(), metaTag);
+        }
+        if (metaTag.getName() != null && !index.containsKey(metaTag.getName())) {
+            index.put(metaTag.getName(), metaTag);
+        }
+
+        Set<Page> pages = Collections.newSetFromMap(new IdentityHashMap<Page, Boolean>());
+        pages.addAll(metaTag.getPages());
+        pageSets.put(metaTag, pages);
+    }
+}
@@ -0,0 +1,394 @@
+/*
+ * Copyright 2013-2015 Alex Lin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opoo.press.collection;
+
+import org.opoo.press.Collection;
+import org.opoo.press.ListHolder;
+import org.opoo.press.MetaTag;
+import org.opoo.press.Page;
+import org.opoo.press.impl.AccessTracker;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Indexed page queries for templates, available as <code>site.query</code>.
+ * <p>Built once by {@link CollectionProcessor} after all collections created. Every index keeps
+ * pages in collection order, so a query takes the smallest matched index and checks the others by
+ * binary search on the page position. Top-k queries stop after k matches.</p>
+ * <pre>
+ * &lt;#list site.query.from("post").category("java").limit(5).list() as post&gt;...&lt;/#list&gt;
+ * &lt;#list site.query.from("post").year(2014).where("author", "alex").list() as post&gt;...&lt;/#list&gt;
+ * </pre>
+ * <p>The queried collections are recorded for incremental rebuilding in preview, see
+ * {@link AccessTracker}.</p>
+ *
+ * @author Alex Lin
+ */
+public class SiteQuery implements AccessTracker.Tracked {
+    public static final String NAME = "query";
+
+    private final Map<String, CollectionIndex> indexes = new LinkedHashMap<String, CollectionIndex>();
+
+    public SiteQuery(Map<String, Collection> collections) {
+        for (Map.Entry<String, Collection> entry : collections.entrySet()) {
+            indexes.put(entry.getKey(), new CollectionIndex(entry.getValue()));
+        }
+    }
+
+    /**
+     * Start a query on the specified collection.
+     *
+     * @param collectionName collection name
+     * @return query
+     */
+    public Query from(String collectionName) {
+        AccessTracker.collectionAccessed(collectionName);
+        CollectionIndex index = indexes.get(collectionName);
+        if (index == null) {
+            throw new IllegalArgumentException("Collection not found: " + collectionName);
+        }
+        return new Query(index);
+    }
+
+    public String[] getCollectionNames() {
+        return indexes.keySet().toArray(new String[indexes.size()]);
+    }
+
+    /**
+     * Secondary indexes of one collection.
+     */
+    static class CollectionIndex {
+        private final List<Page> pages;
+        private final Map<Page, Integer> positions = new IdentityHashMap<Page, Integer>();
+        private final Map<String, Map<String, List<Page>>> metaTags = new HashMap<String, Map<String, List<Page>>>();
+        private final Map<String, List<Page>> dates = new HashMap<String, List<Page>>();
+        private final ConcurrentMap<String, Map<Object, List<Page>>> fields
+                = new ConcurrentHashMap<String, Map<Object, List<Page>>>();
+
+        CollectionIndex(Collection collection) {
+            this.pages = Collections.unmodifiableList(new ArrayList<Page>(collection.getPages()));
+            for (int i = 0; i < pages.size(); i++) {
+                positions.put(pages.get(i), i);
+            }
+
+            indexMetaTags(collection.getTagsHolder());
+            indexMetaTags(collection.getCategoriesHolder());
+            indexDates();
+        }
+
+        private void indexMetaTags(ListHolder<? extends MetaTag> holder) {
+            for (String key : holder.getKeys()) {
+                Map<String, List<Page>> map = metaTags.get(key);
+                if (map == null) {
+                    map = new HashMap<String, List<Page>>();
+                    metaTags.put(key, map);
+                }
+                for (MetaTag metaTag : holder.get(key)) {
+                    List<Page> list = sortByPosition(metaTag.getPages());
+                    map.put(metaTag.getSlug(), list);
+                    if (metaTag.getName() != null) {
+                        map.put(metaTag.getName(), list);
+                    }
+                }
+            }
+        }
+
+        private void indexDates() {
+            SimpleDateFormat year = new SimpleDateFormat("yyyy");
+            SimpleDateFormat month = new SimpleDateFormat("yyyy-MM");
+            for (Page page : pages) {
+                Date date = page.getDate();
+                if (date != null) {
+                    add(dates, year.format(date), page);
+                    add(dates, month.format(date), page);
+                }
+            }
+        }
+
+        private List<Page> sortByPosition(List<Page> list) {
+            List<Page> result = new ArrayList<Page>(list.size());
+            for (Page page : list) {
+                if (positions.containsKey(page)) {
+                    result.add(page);
+                }
+            }
+            Collections.sort(result, new Comparator<Page>() {
+                @Override
+                public int compare(Page o1, Page o2) {
+                    return positions.get(o1).compareTo(positions.get(o2));
+                }
+            });
+            return result;
+        }
+
+        List<Page> getMetaTagPages(String key, String nameOrSlug) {
+            Map<String, List<Page>> map = metaTags.get(key);
+            if (map == null) {
+                return Collections.emptyList();
+            }
+            List<Page> list = map.get(nameOrSlug);
+            return list != null ? list : Collections.<Page>emptyList();
+        }
+
+        List<Page> getDatePages(String bucket) {
+            List<Page> list = dates.get(bucket);
+            return list != null ? list : Collections.<Page>emptyList();
+        }
+
+        /**
+         * Front matter indexes are built on first use, rendering is running in parallel.
+         */
+        List<Page> getFieldPages(String key, Object value) {
+            Map<Object, List<Page>> map = fields.get(key);
+            if (map == null) {
+                map = new HashMap<Object, List<Page>>();
+                for (Page page : pages) {
+                    Object v = page.get(key);
+                    if (v instanceof java.util.Collection) {
+                        for (Object o : (java.util.Collection<?>) v) {
+                            add(map, normalize(o), page);
+                        }
+                    } else if (v != null) {
+                        add(map, normalize(v), page);
+                    }
+                }
+                Map<Object, List<Page>> previous = fields.putIfAbsent(key, map);
+                if (previous != null) {
+                    map = previous;
+                }
+            }
+            List<Page> list = map.get(normalize(value));
+            return list != null ? list : Collections.<Page>emptyList();
+        }
+
+        int position(Page page) {
+            return positions.get(page);
+        }
+
+        private static Object normalize(Object value) {
+            //numbers and booleans in templates may be passed as strings
+            return value != null ? value.toString() : null;
+        }
+
+        private static <K> void add(Map<K, List<Page>> map, K key, Page page) {
+            List<Page> list = map.get(key);
+            if (list == null) {
+                list = new ArrayList<Page>();
+                map.put(key, list);
+            }
+            list.add(page);
+        }
+    }
+
+    /**
+     * A query on one collection. All filters are combined with AND.
+     */
+    public static class Query {
+        private final CollectionIndex index;
+        private final List<List<Page>> filters = new ArrayList<List<Page>>();
+        private String orderBy;
+        private boolean reverse;
+        private int offset;
+        private int limit = -1;
+
+        Query(CollectionIndex index) {
+            this.index = index;
+        }
+
+        public Query tag(String nameOrSlug) {
+            return metaTag("tag", nameOrSlug);
+        }
+
+        public Query category(String nameOrSlug) {
+            return metaTag("category", nameOrSlug);
+        }
+
+        /**
+         * @param key meta of tag or category in collection, e.g. 'tag', 'category'
+         * @param nameOrSlug name or slug of the tag
+         * @return this query
+         */
+        public Query metaTag(String key, String nameOrSlug) {
+            filters.add(index.getMetaTagPages(key, nameOrSlug));
+            return this;
+        }
+
+        public Query year(int year) {
+            filters.add(index.getDatePages(String.valueOf(year)));
+            return this;
+        }
+
+        public Query month(int year, int month) {
+            filters.add(index.getDatePages(String.format("%04d-%02d", year, month)));
+            return this;
+        }
+
+        /**
+         * Filter by front matter value. For list value, matches if any element equals.
+         * @param key front matter key
+         * @param value value
+         * @return this query
+         */
+        public Query where(String key, Object value) {
+            filters.add(index.getFieldPages(key, value));
+            return this;
+        }
+
+        /**
+         * Order by front matter value, default is collection order.
+         * @param key front matter key
+         * @return this query
+         */
+        public Query orderBy(String key) {
+            this.orderBy = key;
+            return this;
+        }
+
+        public Query reverse() {
+            this.reverse = !reverse;
+            return this;
+        }
+
+        public Query offset(int offset) {
+            this.offset = offset;
+            return this;
+        }
+
+        public Query limit(int limit) {
+            this.limit = limit;
+            return this;
+        }
+
+        public List<Page> list() {
+            if (orderBy == null && !reverse) {
+                return match(offset, limit);
+            }
+
+            List<Page> result = match(0, -1);
+            if (orderBy != null) {
+                Collections.sort(result, new FieldComparator(orderBy));
+            }
+            if (reverse) {
+                Collections.reverse(result);
+            }
+            return slice(result, offset, limit);
+        }
+
+        public Page first() {
+            List<Page> list = limit(1).list();
+            return list.isEmpty() ? null : list.get(0);
+        }
+
+        public int count() {
+            return match(0, -1).size();
+        }
+
+        private List<Page> match(int offset, int limit) {
+            List<Page> smallest = index.pages;
+            for (List<Page> filter : filters) {
+                if (filter.size() < smallest.size()) {
+                    smallest = filter;
+                }
+            }
+
+            if (filters.size() <= 1) {
+                return slice(smallest, offset, limit);
+            }
+
+            List<Page> result = new ArrayList<Page>();
+            int skipped = 0;
+            for (Page page : smallest) {
+                if (limit >= 0 && result.size() >= limit) {
+                    break;
+                }
+                if (matchesAll(page, smallest)) {
+                    if (skipped < offset) {
+                        skipped++;
+                    } else {
+                        result.add(page);
+                    }
+                }
+            }
+            return result;
+        }
+
+        private boolean matchesAll(Page page, List<Page> except) {
+            int position = index.position(page);
+            for (List<Page> filter : filters) {
+                if (filter != except && !contains(filter, position)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private boolean contains(List<Page> sorted, int position) {
+            int low = 0;
+            int high = sorted.size() - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                int p = index.position(sorted.get(mid));
+                if (p < position) {
+                    low = mid + 1;
+                } else if (p > position) {
+                    high = mid - 1;
+                } else {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private static List<Page> slice(List<Page> list, int offset, int limit) {
+            int from = Math.min(Math.max(offset, 0), list.size());
+            int to = limit < 0 ? list.size() : Math.min(from + limit, list.size());
+            return new ArrayList<Page>(list.subList(from, to));
+        }
+    }
+
+    private static class FieldComparator implements Comparator<Page> {
+        private final String key;
+
+        private FieldComparator(String key) {
+            this.key = key;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public int compare(Page o1, Page o2) {
+            Object v1 = o1.get(key);
+            Object v2 = o2.get(key);
+            if (v1 == null || v2 == null) {
+                return v1 == null ? (v2 == null ? 0 : 1) : -1;
+            }
+            if (v1 instanceof Comparable && v1.getClass().isInstance(v2)) {
+                return ((Comparable<Object>) v1).compareTo(v2);
+            }
+            return v1.toString().compareTo(v2.toString());
+        }
+    }
+}
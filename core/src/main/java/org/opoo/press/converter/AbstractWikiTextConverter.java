@@ -18,7 +18,8 @@ package org.opoo.press.converter;
 import org.apache.commons.io.FilenameUtils;
 import org.eclipse.mylyn.wikitext.core.parser.MarkupParser;
 import org.eclipse.mylyn.wikitext.core.parser.builder.HtmlDocumentBuilder;
-import org.opoo.press.Converter;
+import org.eclipse.mylyn.wikitext.core.parser.markup.MarkupLanguage;
+import org.opoo.press.FileExtensionConverter;
 import org.opoo.press.Source;
 
 import java.io.StringWriter;
@@ -33,23 +34,37 @@ import java.io.StringWriter;
  * @author Alex Lin
  *
  */
-public abstract class AbstractWikiTextConverter implements Converter{
+public abstract class AbstractWikiTextConverter implements FileExtensionConverter{
+	/**
+	 * MarkupParser and MarkupLanguage are not thread safe, each converting thread
+	 * holds its own parser and output buffer.
+	 */
+	private final ThreadLocalMarkupParser<MarkupParser> parsers = new ThreadLocalMarkupParser<MarkupParser>(){
+		@Override
+		protected MarkupParser createParser() {
+			return new MarkupParser(createMarkupLanguage());
+		}
+
+		@Override
+		protected void parse(MarkupParser parser, String content, StringWriter out) {
+			HtmlDocumentBuilder builder = new HtmlDocumentBuilder(out);
+			// avoid the <html> and <body> tags 
+			builder.setEmitAsDocument(false);
+			parser.setBuilder(builder);
+			try {
+				parser.parse(content);
+			} finally {
+				parser.setBuilder(null);
+			}
+		}
+	};
+
 	/* (non-Javadoc)
 	 * @see org.opoo.press.Converter#convert(java.lang.String)
 	 */
 	@Override
 	public String convert(String content) {
-		MarkupParser parser = getMarkupParser();
-		
-		StringWriter writer = new StringWriter();
-		HtmlDocumentBuilder builder = new HtmlDocumentBuilder(writer);
-		// avoid the <html> and <body> tags 
-		builder.setEmitAsDocument(false);
-
-		parser.setBuilder(builder);
-		parser.parse(content);
-		parser.setBuilder(null);
-		return writer.toString();
+		return parsers.convert(content);
 	}
 	
 //	public String convert2(String content){
@@ -62,10 +77,18 @@ public abstract class AbstractWikiTextConverter implements Converter{
 //	}
 	
 	/**
-	 * Return the MarkupParser instance.
+	 * Return the MarkupParser instance of current thread.
 	 * @return MarkupParser for this converter.
 	 */
-	protected abstract MarkupParser getMarkupParser();
+	protected MarkupParser getMarkupParser(){
+		return parsers.get();
+	}
+
+	/**
+	 * Create a new MarkupLanguage instance for a converting thread.
+	 * @return MarkupLanguage for this converter.
+	 */
+	protected abstract MarkupLanguage createMarkupLanguage();
 	
 
 	/* (non-Javadoc)
@@ -90,5 +113,5 @@ public abstract class AbstractWikiTextConverter implements Converter{
 		return FilenameUtils.isExtension(name, extensions);
 	}
 	
-	protected abstract String[] getInputFileExtensions();
+	public abstract String[] getInputFileExtensions();
 }
@@ -19,7 +19,7 @@ import net.java.textilej.parser.MarkupParser;
 import net.java.textilej.parser.builder.HtmlDocumentBuilder;
 import net.java.textilej.parser.markup.textile.TextileDialect;
 import org.apache.commons.io.FilenameUtils;
-import org.opoo.press.Converter;
+import org.opoo.press.FileExtensionConverter;
 import org.opoo.press.Source;
 
 import java.io.StringWriter;
@@ -28,8 +28,28 @@ import java.io.StringWriter;
  * @author Alex Lin
  *
  */
-public class TextilejConverter implements Converter {
-	private MarkupParser parser = new MarkupParser(new TextileDialect());
+public class TextilejConverter implements FileExtensionConverter {
+	/**
+	 * The textile-j parser of each converting thread.
+	 */
+	private final ThreadLocalMarkupParser<MarkupParser> parsers = new ThreadLocalMarkupParser<MarkupParser>(){
+		@Override
+		protected MarkupParser createParser() {
+			return new MarkupParser(new TextileDialect());
+		}
+
+		@Override
+		protected void parse(MarkupParser parser, String content, StringWriter out) {
+			HtmlDocumentBuilder builder = new HtmlDocumentBuilder(out);
+			builder.setEmitAsDocument(false);
+			parser.setBuilder(builder);
+			try {
+				parser.parse(content);
+			} finally {
+				parser.setBuilder(null);
+			}
+		}
+	};
 	
 	/* (non-Javadoc)
 	 * @see org.opoo.press.Ordered#getOrder()
@@ -44,14 +64,7 @@ public class TextilejConverter implements Converter {
 	 */
 	@Override
 	public String convert(String content) {
-		StringWriter writer = new StringWriter();
-		HtmlDocumentBuilder builder = new HtmlDocumentBuilder(writer);
-		builder.setEmitAsDocument(false);
-		parser.setBuilder(builder);
-		
-		parser.parse(content);
-		parser.setBuilder(null);
-		return writer.toString();
+		return parsers.convert(content);
 	}
 
 	/* (non-Javadoc)
@@ -62,6 +75,14 @@ public class TextilejConverter implements Converter {
 		return ".html";
 	}
 
+	/* (non-Javadoc)
+	 * @see org.opoo.press.FileExtensionConverter#getInputFileExtensions()
+	 */
+	@Override
+	public String[] getInputFileExtensions() {
+		return new String[]{"textile"};
+	}
+
 	/* (non-Javadoc)
 	 * @see org.opoo.press.Converter#matches(org.opoo.press.Source)
 	 */
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2013 Alex Lin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opoo.press.converter;
+
+import java.io.StringWriter;
+
+/**
+ * Holds a markup parser and an output buffer for each converting thread, the markup
+ * parsers are not thread safe.
+ *
+ * @param <P> the type of markup parser
+ * @author Alex Lin
+ * @see AbstractWikiTextConverter
+ * @see TextilejConverter
+ */
+abstract class ThreadLocalMarkupParser<P> {
+	private static final int MAX_BUFFER_CAPACITY = 1024 * 1024;
+
+	private final ThreadLocal<Holder<P>> holders = new ThreadLocal<Holder<P>>(){
+		@Override
+		protected Holder<P> initialValue() {
+			return new Holder<P>(createParser());
+		}
+	};
+
+	/**
+	 * Create a new parser for a converting thread.
+	 * @return the markup parser
+	 */
+	protected abstract P createParser();
+
+	/**
+	 * Parse the content to html.
+	 * @param parser the markup parser of current thread
+	 * @param content the content to parse
+	 * @param out the output of html
+	 */
+	protected abstract void parse(P parser, String content, StringWriter out);
+
+	/**
+	 * @return the markup parser of current thread
+	 */
+	P get(){
+		return holders.get().parser;
+	}
+
+	/**
+	 * Parse the content by the parser and buffer of current thread.
+	 * @param content the content to parse
+	 * @return the html
+	 */
+	String convert(String content){
+		Holder<P> holder = holders.get();
+		StringBuffer buffer = holder.writer.getBuffer();
+		buffer.setLength(0);
+
+		parse(holder.parser, content, holder.writer);
+
+		String html = buffer.toString();
+		//do not hold too large buffer
+		if(buffer.capacity() > MAX_BUFFER_CAPACITY){
+			holder.writer = new StringWriter();
+		}
+		return html;
+	}
+
+	private static class Holder<P> {
+		private final P parser;
+		private StringWriter writer = new StringWriter();
+
+		private Holder(P parser) {
+			this.parser = parser;
+		}
+	}
+}
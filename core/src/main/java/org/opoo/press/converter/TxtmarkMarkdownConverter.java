@@ -19,11 +19,12 @@ import com.github.rjeschke.txtmark.BlockEmitter;
 import com.github.rjeschke.txtmark.Configuration;
 import com.github.rjeschke.txtmark.Processor;
 import org.apache.commons.io.FilenameUtils;
-import org.opoo.press.Converter;
+import org.opoo.press.FileExtensionConverter;
 import org.opoo.press.Highlighter;
 import org.opoo.press.Site;
 import org.opoo.press.SiteAware;
 import org.opoo.press.Source;
+import org.opoo.press.highlighter.HighlightTracker;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -33,7 +34,7 @@ import java.util.List;
  * A <code>txtmark</code> implemented converter.
  * @author Alex Lin
  */
-public class TxtmarkMarkdownConverter implements Converter, SiteAware {
+public class TxtmarkMarkdownConverter implements FileExtensionConverter, SiteAware {
 	private static final Logger log = LoggerFactory.getLogger(TxtmarkMarkdownConverter.class);
 	private Configuration config;
 	private Highlighter highlighter;
@@ -63,6 +64,14 @@ public class TxtmarkMarkdownConverter implements Converter, SiteAware {
 		return 100;
 	}
 
+	/* (non-Javadoc)
+	 * @see org.opoo.press.FileExtensionConverter#getInputFileExtensions()
+	 */
+	@Override
+	public String[] getInputFileExtensions() {
+		return new String[]{"markdown", "md", "txt"};
+	}
+
 	/* (non-Javadoc)
 	 * @see org.opoo.press.Converter#matches(org.opoo.press.Source)
 	 */
@@ -112,7 +121,11 @@ public class TxtmarkMarkdownConverter implements Converter, SiteAware {
 		 */
 		@Override
 		public void emitBlock(StringBuilder out, List<String> lines, String meta) {
+			int start = out.length();
 			highlighter.highlight(out, lines, meta);
+			if(highlighter.containsHighlightCodeBlock(out.substring(start))){
+				HighlightTracker.emitted();
+			}
 		}
 	}
 }
@@ -16,14 +16,13 @@
 package org.opoo.press.converter;
 
 import org.eclipse.mylyn.wikitext.confluence.core.ConfluenceLanguage;
-import org.eclipse.mylyn.wikitext.core.parser.MarkupParser;
+import org.eclipse.mylyn.wikitext.core.parser.markup.MarkupLanguage;
 
 /**
  * WikiText confluence converter. <code>*.confluence</code>
  * @author Alex Lin
  */
 public class WikiTextConfluenceConverter extends AbstractWikiTextConverter {
-	private MarkupParser parser = new MarkupParser(new ConfluenceLanguage());
 	/* (non-Javadoc)
 	 * @see org.opoo.press.Ordered#getOrder()
 	 */
@@ -33,18 +32,18 @@ public class WikiTextConfluenceConverter extends AbstractWikiTextConverter {
 	}
 
 	/* (non-Javadoc)
-	 * @see org.opoo.press.converter.AbstractWikiTextConverter#getMarkupParser()
+	 * @see org.opoo.press.converter.AbstractWikiTextConverter#createMarkupLanguage()
 	 */
 	@Override
-	protected MarkupParser getMarkupParser() {
-		return parser;
+	protected MarkupLanguage createMarkupLanguage() {
+		return new ConfluenceLanguage();
 	}
 
 	/* (non-Javadoc)
-	 * @see org.opoo.press.converter.AbstractWikiTextConverter#getInputFileExtensions()
+	 * @see org.opoo.press.FileExtensionConverter#getInputFileExtensions()
 	 */
 	@Override
-	protected String[] getInputFileExtensions() {
+	public String[] getInputFileExtensions() {
 		return new String[]{"confluence"};
 	}
 }
@@ -15,7 +15,7 @@
  */
 package org.opoo.press.converter;
 
-import org.eclipse.mylyn.wikitext.core.parser.MarkupParser;
+import org.eclipse.mylyn.wikitext.core.parser.markup.MarkupLanguage;
 import org.eclipse.mylyn.wikitext.mediawiki.core.MediaWikiLanguage;
 
 /**
@@ -23,7 +23,6 @@ import org.eclipse.mylyn.wikitext.mediawiki.core.MediaWikiLanguage;
  * @author Alex Lin
  */
 public class WikiTextMediaWikiConverter extends AbstractWikiTextConverter {
-	private MarkupParser parser = new MarkupParser(new MediaWikiLanguage());
 	/* (non-Javadoc)
 	 * @see org.opoo.press.Ordered#getOrder()
 	 */
@@ -33,18 +32,18 @@ public class WikiTextMediaWikiConverter extends AbstractWikiTextConverter {
 	}
 
 	/* (non-Javadoc)
-	 * @see org.opoo.press.converter.AbstractWikiTextConverter#getMarkupParser()
+	 * @see org.opoo.press.converter.AbstractWikiTextConverter#createMarkupLanguage()
 	 */
 	@Override
-	protected MarkupParser getMarkupParser() {
-		return parser;
+	protected MarkupLanguage createMarkupLanguage() {
+		return new MediaWikiLanguage();
 	}
 
 	/* (non-Javadoc)
-	 * @see org.opoo.press.converter.AbstractWikiTextConverter#getInputFileExtensions()
+	 * @see org.opoo.press.FileExtensionConverter#getInputFileExtensions()
 	 */
 	@Override
-	protected String[] getInputFileExtensions() {
+	public String[] getInputFileExtensions() {
 		return new String[]{"mediawiki"};
 	}
 }
@@ -0,0 +1,281 @@
+/*
+ * Copyright 2013-2015 Alex Lin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opoo.press.file;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches directories recursively by one {@link WatchService}, instead of walking
+ * the directory trees on every check.
+ * <p>Requires Java 7, check <code>java.nio.file.WatchService</code> is available before
+ * loading this class, it cannot be loaded on Java 6.</p>
+ * <pre>
+ *     DirectoryWatcher watcher = new DirectoryWatcher();
+ *     Watchable watchable = watcher.watch(directory, fileFilter);
+ *     watchable.initialize();
+ *     while(...){
+ *         // block until files changed and no more change in a short period
+ *         watcher.await(timeout);
+ *         Result result = watchable.check();
+ *     }
+ *     watchable.destroy();
+ *     watcher.close();
+ * </pre>
+ *
+ * @author Alex Lin
+ */
+public class DirectoryWatcher {
+    private static final Logger log = LoggerFactory.getLogger(DirectoryWatcher.class);
+    /** The time in milliseconds without new event which ends a burst of changes. */
+    private static final long QUIET_PERIOD = 100;
+    /** The max time in milliseconds to coalesce a burst of changes. */
+    private static final long MAX_COALESCE_TIME = 2000;
+
+    private final WatchService watchService;
+    private final WatchEvent.Modifier[] modifiers;
+    private final Map<WatchKey, WatchedDirectory> keys = new HashMap<WatchKey, WatchedDirectory>();
+
+    public DirectoryWatcher() throws IOException {
+        this.watchService = FileSystems.getDefault().newWatchService();
+        this.modifiers = createModifiers();
+    }
+
+    /**
+     * The polling implementation of WatchService (e.g. on Mac OS X) checks every 10
+     * seconds by default, use the high sensitivity if available.
+     */
+    private static WatchEvent.Modifier[] createModifiers() {
+        try {
+            Class<?> clazz = Class.forName("com.sun.nio.file.SensitivityWatchEventModifier");
+            for (Object constant : clazz.getEnumConstants()) {
+                Enum<?> modifier = (Enum<?>) constant;
+                if ("HIGH".equals(modifier.name())) {
+                    return new WatchEvent.Modifier[]{(WatchEvent.Modifier) modifier};
+                }
+            }
+        } catch (Exception e) {
+            //not available
+        }
+        return new WatchEvent.Modifier[0];
+    }
+
+    /**
+     * @param directory the directory to watch, including sub directories
+     * @param fileFilter the file filter or null if none
+     * @return the watchable, must be initialized before checking
+     */
+    public Watchable watch(File directory, FileFilter fileFilter) {
+        return new WatchedDirectory(directory, fileFilter);
+    }
+
+    /**
+     * Blocks until some files changed and no more change in a short period, or the
+     * timeout elapsed.
+     *
+     * @param timeout the max time to wait in milliseconds
+     * @return true if files changed
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean await(long timeout) throws InterruptedException {
+        WatchKey key;
+        try {
+            key = watchService.poll(timeout, TimeUnit.MILLISECONDS);
+        } catch (ClosedWatchServiceException e) {
+            return false;
+        }
+        if (key == null) {
+            return false;
+        }
+
+        long deadline = System.currentTimeMillis() + MAX_COALESCE_TIME;
+        while (key != null) {
+            process(key);
+            if (System.currentTimeMillis() > deadline) {
+                break;
+            }
+            key = watchService.poll(QUIET_PERIOD, TimeUnit.MILLISECONDS);
+        }
+        return true;
+    }
+
+    /**
+     * Process all pending events without blocking.
+     */
+    private void drain() {
+        try {
+            WatchKey key;
+            while ((key = watchService.poll()) != null) {
+                process(key);
+            }
+        } catch (ClosedWatchServiceException e) {
+            //ignore
+        }
+    }
+
+    private void process(WatchKey key) {
+        WatchedDirectory watched = keys.get(key);
+        if (watched != null) {
+            Path dir = (Path) key.watchable();
+            for (WatchEvent<?> event : key.pollEvents()) {
+                watched.onEvent(dir, event);
+            }
+        } else {
+            key.pollEvents();
+        }
+        if (!key.reset()) {
+            keys.remove(key);
+        }
+    }
+
+    public void close() {
+        keys.clear();
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            log.warn("Close watch service failed: " + e.getMessage());
+        }
+    }
+
+    private class WatchedDirectory implements Watchable {
+        private final File directory;
+        private final FileFilter fileFilter;
+        private final Map<File, WatchEvent.Kind<?>> changes = new LinkedHashMap<File, WatchEvent.Kind<?>>();
+
+        private WatchedDirectory(File directory, FileFilter fileFilter) {
+            this.directory = directory;
+            this.fileFilter = fileFilter;
+        }
+
+        @Override
+        public void initialize() {
+            if (directory.isDirectory()) {
+                register(directory, false);
+            }
+        }
+
+        @Override
+        public Result check() {
+            drain();
+            Result result = Result.newResult();
+            for (Map.Entry<File, WatchEvent.Kind<?>> en : changes.entrySet()) {
+                WatchEvent.Kind<?> kind = en.getValue();
+                if (kind == StandardWatchEventKinds.ENTRY_CREATE) {
+                    result.addCreatedFile(en.getKey());
+                } else if (kind == StandardWatchEventKinds.ENTRY_DELETE) {
+                    result.addDeletedFile(en.getKey());
+                } else {
+                    result.addUpdatedFile(en.getKey());
+                }
+            }
+            changes.clear();
+            return result;
+        }
+
+        @Override
+        public void destroy() {
+            for (Map.Entry<WatchKey, WatchedDirectory> en : new HashMap<WatchKey, WatchedDirectory>(keys).entrySet()) {
+                if (en.getValue() == this) {
+                    en.getKey().cancel();
+                    keys.remove(en.getKey());
+                }
+            }
+            changes.clear();
+        }
+
+        /**
+         * @param dir the directory
+         * @param created the directory is created after watching, report its files as created
+         */
+        private void register(File dir, boolean created) {
+            try {
+                WatchKey key = dir.toPath().register(watchService, new WatchEvent.Kind<?>[]{
+                        StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_DELETE,
+                        StandardWatchEventKinds.ENTRY_MODIFY}, modifiers);
+                keys.put(key, this);
+            } catch (IOException e) {
+                log.warn("Unable to watch directory {}: {}", dir, e.getMessage());
+                return;
+            }
+
+            File[] files = dir.listFiles(fileFilter);
+            if (files == null) {
+                return;
+            }
+            for (File file : files) {
+                if (file.isDirectory()) {
+                    register(file, created);
+                } else if (created) {
+                    change(file, StandardWatchEventKinds.ENTRY_CREATE);
+                }
+            }
+        }
+
+        private void onEvent(Path dir, WatchEvent<?> event) {
+            WatchEvent.Kind<?> kind = event.kind();
+            if (kind == StandardWatchEventKinds.OVERFLOW) {
+                //events lost, treat the whole directory as changed
+                log.debug("Watch events overflow: {}", dir);
+                change(directory, StandardWatchEventKinds.ENTRY_MODIFY);
+                return;
+            }
+
+            File file = dir.resolve((Path) event.context()).toFile();
+            if (fileFilter != null && !fileFilter.accept(file)) {
+                return;
+            }
+            if (file.isDirectory()) {
+                if (kind == StandardWatchEventKinds.ENTRY_CREATE) {
+                    register(file, true);
+                }
+                return;
+            }
+            change(file, kind);
+        }
+
+        private void change(File file, WatchEvent.Kind<?> kind) {
+            WatchEvent.Kind<?> previous = changes.get(file);
+            if (previous == StandardWatchEventKinds.ENTRY_CREATE) {
+                //created and then deleted in this period
+                if (kind == StandardWatchEventKinds.ENTRY_DELETE) {
+                    changes.remove(file);
+                }
+                return;
+            }
+            if (previous == StandardWatchEventKinds.ENTRY_DELETE && kind == StandardWatchEventKinds.ENTRY_CREATE) {
+                //replaced, e.g. editors save to a temp file and rename it
+                kind = StandardWatchEventKinds.ENTRY_MODIFY;
+            }
+            changes.put(file, kind);
+        }
+    }
+}
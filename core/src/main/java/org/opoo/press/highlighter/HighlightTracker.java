@@ -0,0 +1,53 @@
+/*
+ * Copyright 2013-2015 Alex Lin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opoo.press.highlighter;
+
+/**
+ * Records whether a converter emitted highlight code block while converting
+ * content in current thread.
+ *
+ * @author Alex Lin
+ * @see org.opoo.press.converter.TxtmarkMarkdownConverter
+ */
+public abstract class HighlightTracker {
+    private static final ThreadLocal<boolean[]> EMITTED = new ThreadLocal<boolean[]>() {
+        @Override
+        protected boolean[] initialValue() {
+            return new boolean[1];
+        }
+    };
+
+    /**
+     * Call before converting content.
+     */
+    public static void reset() {
+        EMITTED.get()[0] = false;
+    }
+
+    /**
+     * Call by converter when a highlight code block emitted.
+     */
+    public static void emitted() {
+        EMITTED.get()[0] = true;
+    }
+
+    /**
+     * @return true if highlight code block emitted since last reset
+     */
+    public static boolean isEmitted() {
+        return EMITTED.get()[0];
+    }
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright 2013-2015 Alex Lin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opoo.press.highlighter;
+
+import org.opoo.press.Highlighter;
+import org.opoo.press.ProcessorAdapter;
+import org.opoo.press.Site;
+
+/**
+ * Saves the cache of {@link ServerSideHighlighter} after all pages written.
+ *
+ * @author Alex Lin
+ */
+public class HighlighterCacheProcessor extends ProcessorAdapter {
+
+    @Override
+    public void postWrite(Site site) {
+        Highlighter highlighter = site.getFactory().getHighlighter();
+        if(highlighter instanceof ServerSideHighlighter){
+            ((ServerSideHighlighter) highlighter).saveCache();
+        }
+    }
+}
@@ -0,0 +1,436 @@
+/*
+ * Copyright 2013-2015 Alex Lin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opoo.press.highlighter;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A simple lexer for common languages, writes code as HTML with
+ * <a href="http://pygments.org/">Pygments</a> compatible css classes.
+ *
+ * <ul>
+ *     <li><code>k</code> - keyword</li>
+ *     <li><code>s</code> - string</li>
+ *     <li><code>m</code> - number</li>
+ *     <li><code>c1</code>, <code>cm</code>, <code>cp</code> - comment, multiline comment, preprocessor</li>
+ *     <li><code>nd</code> - annotation, decorator or at-rule</li>
+ *     <li><code>nv</code> - variable</li>
+ *     <li><code>nt</code>, <code>na</code>, <code>ni</code> - tag, attribute and entity of markup</li>
+ * </ul>
+ *
+ * @author Alex Lin
+ * @see ServerSideHighlighter
+ */
+class Lexer {
+    private static final Map<String, Lexer> LEXERS = new HashMap<String, Lexer>();
+
+    private static final String C_KEYWORDS = "auto break case char const continue default do double else enum extern "
+            + "float for goto if inline int long register return short signed sizeof static struct switch typedef "
+            + "union unsigned void volatile while";
+    private static final String JAVA_KEYWORDS = "abstract assert boolean break byte case catch char class const "
+            + "continue default do double else enum extends final finally float for goto if implements import "
+            + "instanceof int interface long native new package private protected public return short static "
+            + "strictfp super switch synchronized this throw throws transient try void volatile while true false null";
+
+    static {
+        register(new Lexer("java", JAVA_KEYWORDS, "\"'").comments("//", "/*", "*/").annotation('@'), "java");
+        register(new Lexer("groovy", JAVA_KEYWORDS + " def as in trait", "\"'").comments("//", "/*", "*/")
+                .annotation('@').tripleQuotes(), "groovy", "gradle");
+        register(new Lexer("scala", "abstract case catch class def do else extends false final finally for "
+                + "forSome if implicit import lazy match new null object override package private protected return "
+                + "sealed super this throw trait true try type val var while with yield", "\"'")
+                .comments("//", "/*", "*/").annotation('@').tripleQuotes(), "scala");
+        register(new Lexer("javascript", "break case catch class const continue debugger default delete do else "
+                + "export extends finally for function if import in instanceof let new return super switch this "
+                + "throw try typeof var void while with yield async await of true false null undefined", "\"'`")
+                .comments("//", "/*", "*/"), "js", "javascript", "jscript", "json", "ts", "typescript");
+        register(new Lexer("c", C_KEYWORDS, "\"'").comments("//", "/*", "*/").preprocessor(), "c", "h");
+        register(new Lexer("cpp", C_KEYWORDS + " bool catch class delete false friend namespace new nullptr "
+                + "operator private protected public template this throw true try typename using virtual", "\"'")
+                .comments("//", "/*", "*/").preprocessor(), "cpp", "c++", "cc", "hpp");
+        register(new Lexer("csharp", "abstract as base bool break byte case catch char checked class const "
+                + "continue decimal default delegate do double else enum event explicit extern false finally fixed "
+                + "float for foreach goto if implicit in int interface internal is lock long namespace new null "
+                + "object operator out override params private protected public readonly ref return sbyte sealed "
+                + "short sizeof stackalloc static string struct switch this throw true try typeof uint ulong "
+                + "unchecked unsafe ushort using var virtual void volatile while", "\"'")
+                .comments("//", "/*", "*/").preprocessor(), "cs", "csharp", "c#");
+        register(new Lexer("go", "break case chan const continue default defer else fallthrough for func go "
+                + "goto if import interface map package range return select struct switch type var true false nil",
+                "\"'`").comments("//", "/*", "*/"), "go", "golang");
+        register(new Lexer("python", "and as assert async await break class continue def del elif else except "
+                + "finally for from global if import in is lambda nonlocal not or pass print raise return try while "
+                + "with yield True False None", "\"'").comments("#", null, null).annotation('@').tripleQuotes(),
+                "py", "python");
+        register(new Lexer("ruby", "alias and begin break case class def defined? do else elsif end ensure false "
+                + "for if in module next nil not or redo rescue retry return self super then true undef unless "
+                + "until when while yield require", "\"'").comments("#", null, null).variable('@'),
+                "rb", "ruby");
+        register(new Lexer("bash", "if then else elif fi case esac for while until do done in function return "
+                + "exit export local echo", "\"'").comments("#", null, null).variable('$'),
+                "sh", "bash", "shell", "zsh");
+        register(new Lexer("php", "abstract and array as break case catch class clone const continue declare "
+                + "default do echo else elseif empty extends final finally for foreach function global if "
+                + "implements include instanceof interface isset list namespace new null or print private "
+                + "protected public require return static switch throw trait try unset use var while true false",
+                "\"'").comments("//", "/*", "*/").variable('$'), "php");
+        register(new Lexer("sql", "select from where and or not insert into values update set delete create "
+                + "table drop alter index view join inner left right outer full on as group by order having limit "
+                + "offset union all distinct null is in like between exists case when then else end primary key "
+                + "foreign references default unique asc desc", "\"'").comments("--", "/*", "*/").ignoreCase(),
+                "sql");
+        register(new Lexer("css", "", "\"'").comments(null, "/*", "*/").annotation('@'),
+                "css", "scss", "less");
+        register(new Lexer("xml", "", "\"'").markup(), "xml", "html", "htm", "xhtml", "svg");
+    }
+
+    private final String name;
+    private final Set<String> keywords;
+    private final String quotes;
+    private String lineComment;
+    private String blockCommentStart;
+    private String blockCommentEnd;
+    private char annotation;
+    private char variable;
+    private boolean tripleQuotes;
+    private boolean preprocessor;
+    private boolean ignoreCase;
+    private boolean markup;
+
+    private Lexer(String name, String keywords, String quotes) {
+        this.name = name;
+        this.keywords = new HashSet<String>(Arrays.asList(keywords.split(" ")));
+        this.quotes = quotes;
+    }
+
+    private static void register(Lexer lexer, String... aliases) {
+        for (String alias : aliases) {
+            LEXERS.put(alias, lexer);
+        }
+    }
+
+    /**
+     * @param language language name or alias, such as 'java', 'js'
+     * @return the lexer, or null if the language is not supported
+     */
+    static Lexer get(String language) {
+        return LEXERS.get(language.toLowerCase(Locale.ENGLISH));
+    }
+
+    String getName() {
+        return name;
+    }
+
+    private Lexer comments(String line, String blockStart, String blockEnd) {
+        this.lineComment = line;
+        this.blockCommentStart = blockStart;
+        this.blockCommentEnd = blockEnd;
+        return this;
+    }
+
+    private Lexer annotation(char c) {
+        this.annotation = c;
+        return this;
+    }
+
+    private Lexer variable(char c) {
+        this.variable = c;
+        return this;
+    }
+
+    private Lexer tripleQuotes() {
+        this.tripleQuotes = true;
+        return this;
+    }
+
+    private Lexer preprocessor() {
+        this.preprocessor = true;
+        return this;
+    }
+
+    private Lexer ignoreCase() {
+        this.ignoreCase = true;
+        return this;
+    }
+
+    private Lexer markup() {
+        this.markup = true;
+        return this;
+    }
+
+    /**
+     * @param out the output
+     * @param code the source code
+     */
+    void highlight(StringBuilder out, String code) {
+        if (markup) {
+            highlightMarkup(out, code);
+            return;
+        }
+
+        int length = code.length();
+        int i = 0;
+        boolean lineStart = true;
+        while (i < length) {
+            char c = code.charAt(i);
+            int end;
+            if (c == '\n') {
+                out.append(c);
+                lineStart = true;
+                i++;
+                continue;
+            }
+            if (c == ' ' || c == '\t' || c == '\r') {
+                out.append(c);
+                i++;
+                continue;
+            }
+
+            if (lineComment != null && code.startsWith(lineComment, i)) {
+                end = lineEnd(code, i);
+                span(out, "c1", code, i, end);
+            } else if (blockCommentStart != null && code.startsWith(blockCommentStart, i)) {
+                end = code.indexOf(blockCommentEnd, i + blockCommentStart.length());
+                end = end == -1 ? length : end + blockCommentEnd.length();
+                span(out, "cm", code, i, end);
+            } else if (preprocessor && lineStart && c == '#') {
+                end = lineEnd(code, i);
+                span(out, "cp", code, i, end);
+            } else if (quotes.indexOf(c) != -1) {
+                end = stringEnd(code, i, c);
+                span(out, "s", code, i, end);
+            } else if (isDigit(c) || (c == '.' && i + 1 < length && isDigit(code.charAt(i + 1)))) {
+                end = i + 1;
+                while (end < length && (isIdentifierPart(code.charAt(end)) || code.charAt(end) == '.')) {
+                    end++;
+                }
+                span(out, "m", code, i, end);
+            } else if (c == annotation && i + 1 < length && isIdentifierStart(code.charAt(i + 1))) {
+                end = identifierEnd(code, i + 1);
+                span(out, "nd", code, i, end);
+            } else if (c == variable && i + 1 < length) {
+                end = variableEnd(code, i + 1);
+                if (end > i + 1) {
+                    span(out, "nv", code, i, end);
+                } else {
+                    escape(out, c);
+                    end = i + 1;
+                }
+            } else if (isIdentifierStart(c)) {
+                end = identifierEnd(code, i);
+                String word = code.substring(i, end);
+                if (ignoreCase) {
+                    word = word.toLowerCase(Locale.ENGLISH);
+                }
+                if (keywords.contains(word)) {
+                    span(out, "k", code, i, end);
+                } else {
+                    escape(out, code, i, end);
+                }
+            } else {
+                escape(out, c);
+                end = i + 1;
+            }
+            lineStart = false;
+            i = end;
+        }
+    }
+
+    private void highlightMarkup(StringBuilder out, String code) {
+        int length = code.length();
+        int i = 0;
+        while (i < length) {
+            char c = code.charAt(i);
+            int end;
+            if (code.startsWith("<!--", i)) {
+                end = code.indexOf("-->", i + 4);
+                end = end == -1 ? length : end + 3;
+                span(out, "c", code, i, end);
+            } else if (c == '<' && i + 1 < length && isTagNameStart(code.charAt(i + 1))) {
+                end = i + 2;
+                while (end < length && isTagNamePart(code.charAt(end))) {
+                    end++;
+                }
+                span(out, "nt", code, i, end);
+                end = highlightAttributes(out, code, end);
+            } else if (c == '&') {
+                end = i + 1;
+                if (end < length && code.charAt(end) == '#') {
+                    end++;
+                }
+                while (end < length && end - i < 10 && Character.isLetterOrDigit(code.charAt(end))) {
+                    end++;
+                }
+                if (end < length && end > i + 1 && code.charAt(end) == ';') {
+                    end++;
+                    span(out, "ni", code, i, end);
+                } else {
+                    escape(out, c);
+                    end = i + 1;
+                }
+            } else {
+                escape(out, c);
+                end = i + 1;
+            }
+            i = end;
+        }
+    }
+
+    /**
+     * @return the index after the tag end
+     */
+    private int highlightAttributes(StringBuilder out, String code, int i) {
+        int length = code.length();
+        while (i < length) {
+            char c = code.charAt(i);
+            int end;
+            if (c == '>') {
+                span(out, "nt", code, i, i + 1);
+                return i + 1;
+            } else if ((c == '/' || c == '?') && i + 1 < length && code.charAt(i + 1) == '>') {
+                span(out, "nt", code, i, i + 2);
+                return i + 2;
+            } else if (c == '"' || c == '\'') {
+                end = code.indexOf(c, i + 1);
+                end = end == -1 ? length : end + 1;
+                span(out, "s", code, i, end);
+            } else if (isTagNameStart(c)) {
+                end = i + 1;
+                while (end < length && isTagNamePart(code.charAt(end))) {
+                    end++;
+                }
+                span(out, "na", code, i, end);
+            } else {
+                escape(out, c);
+                end = i + 1;
+            }
+            i = end;
+        }
+        return i;
+    }
+
+    private int stringEnd(String code, int start, char quote) {
+        int length = code.length();
+        if (tripleQuotes && code.startsWith(tripleQuote(quote), start)) {
+            int end = code.indexOf(tripleQuote(quote), start + 3);
+            return end == -1 ? length : end + 3;
+        }
+        //strings can not span lines except template strings
+        boolean multiline = quote == '`';
+        int i = start + 1;
+        while (i < length) {
+            char c = code.charAt(i);
+            if (c == '\\') {
+                i += 2;
+                continue;
+            }
+            if (c == quote) {
+                return i + 1;
+            }
+            if (c == '\n' && !multiline) {
+                return i;
+            }
+            i++;
+        }
+        return length;
+    }
+
+    private static String tripleQuote(char quote) {
+        return new String(new char[]{quote, quote, quote});
+    }
+
+    private static int lineEnd(String code, int start) {
+        int end = code.indexOf('\n', start);
+        return end == -1 ? code.length() : end;
+    }
+
+    private int identifierEnd(String code, int start) {
+        int end = start + 1;
+        while (end < code.length() && isIdentifierPart(code.charAt(end))) {
+            end++;
+        }
+        //ruby method names such as 'defined?'
+        if (end < code.length() && code.charAt(end) == '?' && keywords.contains(code.substring(start, end + 1))) {
+            end++;
+        }
+        return end;
+    }
+
+    private int variableEnd(String code, int start) {
+        if (code.charAt(start) == '{') {
+            int end = code.indexOf('}', start);
+            return end == -1 || code.lastIndexOf('\n', end) >= start ? start : end + 1;
+        }
+        if (!isIdentifierStart(code.charAt(start)) && !isDigit(code.charAt(start)) && code.charAt(start) != variable) {
+            return start;
+        }
+        return identifierEnd(code, start);
+    }
+
+    private boolean isIdentifierStart(char c) {
+        return Character.isLetter(c) || c == '_' || (c == '$' && variable == 0);
+    }
+
+    private boolean isIdentifierPart(char c) {
+        return isIdentifierStart(c) || isDigit(c);
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isTagNameStart(char c) {
+        return Character.isLetter(c) || c == '/' || c == '?' || c == '!' || c == '_';
+    }
+
+    private static boolean isTagNamePart(char c) {
+        return Character.isLetterOrDigit(c) || c == '-' || c == ':' || c == '_' || c == '.';
+    }
+
+    private static void span(StringBuilder out, String cssClass, String code, int start, int end) {
+        out.append("<span class=\"").append(cssClass).append("\">");
+        escape(out, code, start, end);
+        out.append("</span>");
+    }
+
+    private static void escape(StringBuilder out, String code, int start, int end) {
+        for (int i = start; i < end; i++) {
+            escape(out, code.charAt(i));
+        }
+    }
+
+    static void escape(StringBuilder out, char c) {
+        switch (c) {
+            case '&':
+                out.append("&amp;");
+                break;
+            case '<':
+                out.append("&lt;");
+                break;
+            case '>':
+                out.append("&gt;");
+                break;
+            default:
+                out.append(c);
+                break;
+        }
+    }
+}
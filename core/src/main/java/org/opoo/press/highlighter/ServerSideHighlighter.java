@@ -0,0 +1,264 @@
+/*
+ * Copyright 2013-2015 Alex Lin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opoo.press.highlighter;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
+import org.opoo.press.Highlighter;
+import org.opoo.press.Site;
+import org.opoo.press.SiteAware;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Highlights code blocks at build time, the pages need not a highlighting script.
+ * <p>The highlighted html of each code block is cached by language and code hash, and
+ * saved in the working directory by {@link HighlighterCacheProcessor} after build. The
+ * code blocks not highlighted in the last <code>highlight_cache_max_age</code> builds
+ * (10 by default) are removed from cache, the pages not converted in a build, e.g. in
+ * preview, still find their code blocks in cache.
+ * Configuration in <code>factory.yml</code>:</p>
+ * <pre>
+ * org.opoo.press.Highlighter: org.opoo.press.highlighter.ServerSideHighlighter
+ * </pre>
+ * <p>The output uses Pygments compatible css classes, see {@link Lexer}.</p>
+ *
+ * @author Alex Lin
+ */
+public class ServerSideHighlighter implements Highlighter, SiteAware {
+    private static final Logger log = LoggerFactory.getLogger(ServerSideHighlighter.class);
+    public static final String NAME = "ServerSideHighlighter";
+    private static final String CACHE_FILE = ".highlight-cache";
+    //change it when the output of lexer changed
+    private static final int CACHE_VERSION = 2;
+    private static final int DEFAULT_MAX_AGE = 10;
+    private static final String PRE = "<pre class=\"highlight\">";
+
+    private Site site;
+    private final Map<String, String> cache = new ConcurrentHashMap<String, String>();
+    private final Map<String, String> used = new ConcurrentHashMap<String, String>();
+    /** The number of builds since the code block highlighted last time. */
+    private final Map<String, Integer> ages = new ConcurrentHashMap<String, Integer>();
+    private volatile boolean cacheLoaded = false;
+    private volatile boolean cacheModified = false;
+
+    @Override
+    public void setSite(Site site) {
+        this.site = site;
+    }
+
+    @Override
+    public boolean containsHighlightCodeBlock(String content) {
+        return StringUtils.contains(content, PRE);
+    }
+
+    @Override
+    public String getHighlighterName() {
+        return NAME;
+    }
+
+    @Override
+    public void highlight(StringBuilder out, List<String> lines, String meta) {
+        String language = getLanguage(meta);
+        if(language == null){
+            out.append("<pre><code>");
+            for(String line: lines){
+                escape(out, line);
+                out.append('\n');
+            }
+            out.append("</code></pre>");
+            return;
+        }
+
+        StringBuilder code = new StringBuilder();
+        for(String line: lines){
+            code.append(line).append('\n');
+        }
+        Lexer lexer = Lexer.get(language);
+        String key = (lexer != null ? lexer.getName() : language) + ":" + hash(code);
+
+        loadCache();
+        String html = cache.get(key);
+        if(html == null){
+            StringBuilder sb = new StringBuilder(code.length() * 2);
+            sb.append(PRE).append("<code class=\"language-").append(language).append("\">");
+            if(lexer != null){
+                lexer.highlight(sb, code.toString());
+            }else{
+                escape(sb, code);
+            }
+            sb.append("</code></pre>");
+            html = sb.toString();
+            cache.put(key, html);
+            cacheModified = true;
+        }
+        used.put(key, html);
+        out.append(html);
+    }
+
+    /**
+     * @param meta the code block meta, such as 'java', 'js; gutter: false'
+     * @return the language name, or null
+     */
+    private String getLanguage(String meta) {
+        if(StringUtils.isBlank(meta)){
+            return null;
+        }
+        meta = meta.trim();
+        int end = 0;
+        while(end < meta.length()){
+            char c = meta.charAt(end);
+            if(!Character.isLetterOrDigit(c) && c != '+' && c != '#' && c != '-' && c != '_'){
+                break;
+            }
+            end++;
+        }
+        return end > 0 ? meta.substring(0, end) : null;
+    }
+
+    private static void escape(StringBuilder out, CharSequence text) {
+        for(int i = 0 ; i < text.length() ; i++){
+            Lexer.escape(out, text.charAt(i));
+        }
+    }
+
+    private static String hash(CharSequence code) {
+        try {
+            byte[] bytes = MessageDigest.getInstance("SHA-1").digest(code.toString().getBytes("UTF-8"));
+            StringBuilder sb = new StringBuilder(bytes.length * 2);
+            for(byte b: bytes){
+                sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private File getCacheFile() {
+        return new File(site.getWorking(), CACHE_FILE);
+    }
+
+    private void loadCache() {
+        if(cacheLoaded){
+            return;
+        }
+        synchronized (this){
+            if(cacheLoaded || site == null){
+                return;
+            }
+            File file = getCacheFile();
+            if(file.exists()){
+                ObjectInputStream ois = null;
+                try {
+                    ois = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)));
+                    if(ois.readInt() == CACHE_VERSION){
+                        int count = ois.readInt();
+                        for(int i = 0; i < count; i++){
+                            String key = ois.readUTF();
+                            String html = (String) ois.readObject();
+                            ages.put(key, ois.readInt());
+                            cache.put(key, html);
+                        }
+                        log.debug("Loaded {} highlighted code blocks from cache.", cache.size());
+                    }
+                } catch (IOException e) {
+                    log.warn("Unable to load highlighter cache: " + e.getMessage());
+                    cache.clear();
+                    ages.clear();
+                } catch (ClassNotFoundException e) {
+                    log.warn("Unable to load highlighter cache: " + e.getMessage());
+                    cache.clear();
+                    ages.clear();
+                } finally {
+                    IOUtils.closeQuietly(ois);
+                }
+            }
+            cacheLoaded = true;
+        }
+    }
+
+    /**
+     * Saves the code blocks highlighted in this build, and the others not highlighted in
+     * the last <code>highlight_cache_max_age</code> builds.
+     */
+    public synchronized void saveCache() {
+        if(site == null || !cacheLoaded){
+            used.clear();
+            return;
+        }
+
+        int maxAge = site.getConfig().get("highlight_cache_max_age", DEFAULT_MAX_AGE);
+        boolean modified = cacheModified;
+        for(String key: cache.keySet()){
+            Integer last = ages.get(key);
+            int age = used.containsKey(key) ? 0 : (last != null ? last + 1 : 0);
+            if(age > maxAge){
+                cache.remove(key);
+                ages.remove(key);
+            }else{
+                ages.put(key, age);
+            }
+            modified = modified || last == null || last != age;
+        }
+        used.clear();
+        cacheModified = false;
+        if(!modified){
+            return;
+        }
+
+        Map<String, String> map = new HashMap<String, String>(cache);
+        ObjectOutputStream oos = null;
+        try {
+            oos = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(getCacheFile())));
+            oos.writeInt(CACHE_VERSION);
+            oos.writeInt(map.size());
+            for(Map.Entry<String, String> en: map.entrySet()){
+                Integer age = ages.get(en.getKey());
+                oos.writeUTF(en.getKey());
+                oos.writeObject(en.getValue());
+                oos.writeInt(age != null ? age : 0);
+            }
+            oos.flush();
+        } catch (IOException e) {
+            //highlighting all code blocks in next build
+            log.warn("Unable to save highlighter cache: " + e.getMessage());
+            IOUtils.closeQuietly(oos);
+            FileUtils.deleteQuietly(getCacheFile());
+        } finally {
+            IOUtils.closeQuietly(oos);
+        }
+    }
+}
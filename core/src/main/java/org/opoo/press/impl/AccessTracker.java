@@ -0,0 +1,106 @@
+/*
+ * Copyright 2013-2015 Alex Lin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opoo.press.impl;
+
+import org.opoo.press.Page;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Records the site-wide pages and data accessed while rendering a page in current
+ * thread, e.g. <code>site.posts</code> in a sidebar, <code>site.tags</code> and
+ * <code>site.query</code>. The page is rebuilt in preview only if the accessed ones
+ * changed.
+ * <p>The keys recorded:</p>
+ * <ul>
+ *     <li><code>pages</code> - all pages of site;</li>
+ *     <li><code>collections</code> - all collections;</li>
+ *     <li><code>collection:post</code> - the pages of a collection;</li>
+ *     <li><code>static_files</code> - the static files;</li>
+ *     <li><code>data:tags</code> - the site variable set by processors or generators;</li>
+ *     <li><code>content:/2015/01/hello/index.html</code> - the content or excerpt of
+ *     another page, by output path.</li>
+ * </ul>
+ *
+ * @author Alex Lin
+ * @see RebuildIndex
+ */
+public abstract class AccessTracker {
+    static final String PAGES = "pages";
+    static final String COLLECTIONS = "collections";
+    static final String COLLECTION = "collection:";
+    static final String STATIC_FILES = "static_files";
+    static final String DATA = "data:";
+    static final String CONTENT = "content:";
+
+    private static final ThreadLocal<Recording> RECORDING = new ThreadLocal<Recording>();
+
+    /**
+     * The site variables recording their accesses in detail, e.g. the collections
+     * queried, not recorded as a whole.
+     */
+    public interface Tracked {
+    }
+
+    /**
+     * Call before rendering the page.
+     */
+    static void start(Page page) {
+        RECORDING.set(new Recording(page));
+    }
+
+    /**
+     * Call after rendering the page.
+     *
+     * @return the keys accessed since started
+     */
+    static Set<String> stop() {
+        Recording recording = RECORDING.get();
+        RECORDING.remove();
+        return recording != null ? recording.keys : new HashSet<String>();
+    }
+
+    /**
+     * @param name the name of collection accessed, e.g. 'post'
+     */
+    public static void collectionAccessed(String name) {
+        accessed(COLLECTION + name);
+    }
+
+    static void accessed(String key) {
+        Recording recording = RECORDING.get();
+        if (recording != null) {
+            recording.keys.add(key);
+        }
+    }
+
+    static void contentAccessed(SimplePage page) {
+        Recording recording = RECORDING.get();
+        if (recording != null && recording.page != page) {
+            recording.keys.add(CONTENT + page.getOutputPath());
+        }
+    }
+
+    private static class Recording {
+        private final Page page;
+        private final Set<String> keys = new HashSet<String>();
+
+        private Recording(Page page) {
+            this.page = page;
+        }
+    }
+}
@@ -0,0 +1,312 @@
+/*
+ * Copyright 2013-2015 Alex Lin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opoo.press.impl;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.io.IOUtils;
+import org.opoo.press.SourceEntry;
+import org.opoo.press.StaticFile;
+import org.opoo.press.task.RunnableTask;
+import org.opoo.press.task.TaskExecutor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Fingerprints the static files by content hash, e.g. '/stylesheets/screen.css' is
+ * also written as '/stylesheets/screen.1a2b3c4d5e.css', which can be cached forever.
+ * Enabled by <code>asset_fingerprint: true</code> in site configuration, the extensions
+ * can be changed by <code>asset_fingerprint_extensions</code>.
+ * <p>Available as <code>assets</code> in templates:</p>
+ * <pre>
+ *     &lt;link href="${root_url}${assets.path('/stylesheets/screen.css')}" rel="stylesheet"&gt;
+ * </pre>
+ * <p>The references in CSS files are rewritten to the fingerprinted names, so the
+ * fingerprint of a CSS file changes with the images it references. The original files
+ * are kept for the templates still referencing them literally.</p>
+ * <p>The hashes of other files are cached by size and last modified time, and saved
+ * in the working directory, an unchanged file is not read again.</p>
+ *
+ * @author Alex Lin
+ */
+public class AssetFingerprints {
+    private static final Logger log = LoggerFactory.getLogger(AssetFingerprints.class);
+    private static final Pattern CSS_URL_PATTERN = Pattern.compile("url\\(\\s*(['\"]?)([^'\")]+)\\1\\s*\\)");
+    private static final int HASH_LENGTH = 10;
+    static final String FILE_NAME = ".fingerprints";
+
+    private final Map<String, String> paths = new ConcurrentHashMap<String, String>();
+    private final File file;
+    private Map<String, Hash> hashes;
+
+    /**
+     * @param working the working directory of site, the hashes are saved in
+     */
+    AssetFingerprints(File working) {
+        this.file = new File(working, FILE_NAME);
+    }
+
+    /**
+     * @param path the path of static file, e.g. '/stylesheets/screen.css'
+     * @return the fingerprinted path of the file, or the path itself if not fingerprinted
+     */
+    public String path(String path) {
+        String fingerprinted = paths.get(path.startsWith("/") ? path : "/" + path);
+        return fingerprinted != null ? fingerprinted : path;
+    }
+
+    /**
+     * @return all fingerprinted paths, keyed by the original paths
+     */
+    public Map<String, String> getPaths() {
+        return paths;
+    }
+
+    /**
+     * Computes the fingerprints of static files. The CSS files are computed after
+     * others, because the references in them are rewritten.
+     *
+     * @param taskExecutor the executor to hash the files in parallel, or null
+     */
+    void fingerprint(List<StaticFile> staticFiles, List<String> extensions, TaskExecutor taskExecutor) {
+        Set<String> set = new HashSet<String>(extensions);
+        List<StaticFileImpl> files = new ArrayList<StaticFileImpl>();
+        List<StaticFileImpl> cssFiles = new ArrayList<StaticFileImpl>();
+        paths.clear();
+        if (hashes == null) {
+            hashes = load();
+        }
+
+        for (StaticFile staticFile : staticFiles) {
+            if (!(staticFile instanceof StaticFileImpl)) {
+                continue;
+            }
+            StaticFileImpl file = (StaticFileImpl) staticFile;
+            String extension = FilenameUtils.getExtension(file.getSourceEntry().getName()).toLowerCase();
+            if (!set.contains(extension)) {
+                continue;
+            }
+            if ("css".equals(extension)) {
+                cssFiles.add(file);
+            } else {
+                files.add(file);
+            }
+        }
+
+        final Map<String, Hash> newHashes = new ConcurrentHashMap<String, Hash>();
+        RunnableTask<StaticFileImpl> task = new RunnableTask<StaticFileImpl>() {
+            @Override
+            public void run(StaticFileImpl file) {
+                SourceEntry sourceEntry = file.getSourceEntry();
+                String key = sourceEntry.getFile().getPath();
+                Hash hash = hashes.get(key);
+                if (hash == null || hash.length != sourceEntry.getLength()
+                        || hash.lastModified != sourceEntry.getLastModified()) {
+                    try {
+                        hash = new Hash(sourceEntry.getLength(), sourceEntry.getLastModified(),
+                                hash(FileUtils.readFileToByteArray(sourceEntry.getFile())));
+                    } catch (IOException e) {
+                        throw new RuntimeException("Read static file failed: " + sourceEntry.getFile(), e);
+                    }
+                }
+                newHashes.put(key, hash);
+                fingerprint(file, hash.hash, null);
+            }
+        };
+        if (taskExecutor != null) {
+            taskExecutor.run(files, task);
+        } else {
+            for (StaticFileImpl file : files) {
+                task.run(file);
+            }
+        }
+        if (!newHashes.equals(hashes)) {
+            hashes = newHashes;
+            save();
+        }
+
+        //in order, a CSS file may reference the CSS files before it
+        for (StaticFileImpl file : cssFiles) {
+            try {
+                String css = FileUtils.readFileToString(file.getSourceEntry().getFile(), "UTF-8");
+                String rewritten = rewrite(css, getOutputPath(file));
+                byte[] content = rewritten.getBytes("UTF-8");
+                fingerprint(file, hash(content), rewritten.equals(css) ? null : content);
+            } catch (IOException e) {
+                throw new RuntimeException("Read static file failed: " + file.getSourceEntry().getFile(), e);
+            }
+        }
+        log.debug("Fingerprinted {} static files.", paths.size());
+    }
+
+    private void fingerprint(StaticFileImpl file, String hash, byte[] content) {
+        String name = file.getSourceEntry().getName();
+        String baseName = FilenameUtils.getBaseName(name);
+        String fingerprintName = baseName + "." + hash + name.substring(baseName.length());
+        file.setFingerprint(fingerprintName, content);
+        paths.put(getOutputPath(file), file.getSourceEntry().getPath() + "/" + fingerprintName);
+    }
+
+    /**
+     * Rewrites the <code>url()</code> references of fingerprinted files in CSS.
+     *
+     * @param css the CSS content
+     * @param cssPath the path of CSS file, the relative references resolved against
+     * @return the rewritten CSS content
+     */
+    String rewrite(String css, String cssPath) {
+        Matcher matcher = CSS_URL_PATTERN.matcher(css);
+        StringBuffer sb = new StringBuffer(css.length());
+        String dir = cssPath.substring(0, cssPath.lastIndexOf('/') + 1);
+        while (matcher.find()) {
+            String url = matcher.group(2).trim();
+            //data:, http:, //host/
+            if (url.indexOf(':') != -1 || url.startsWith("//")) {
+                continue;
+            }
+            int end = indexOfAny(url, '?', '#');
+            String urlPath = end == -1 ? url : url.substring(0, end);
+            String path = FilenameUtils.normalize(urlPath.startsWith("/") ? urlPath : dir + urlPath, true);
+            String fingerprinted = path != null ? paths.get(path) : null;
+            if (fingerprinted == null) {
+                continue;
+            }
+
+            String fingerprintName = fingerprinted.substring(fingerprinted.lastIndexOf('/') + 1);
+            String rewritten = urlPath.substring(0, urlPath.lastIndexOf('/') + 1) + fingerprintName
+                    + (end == -1 ? "" : url.substring(end));
+            String quote = matcher.group(1);
+            matcher.appendReplacement(sb, Matcher.quoteReplacement("url(" + quote + rewritten + quote + ")"));
+        }
+        matcher.appendTail(sb);
+        return sb.toString();
+    }
+
+    private static int indexOfAny(String str, char c1, char c2) {
+        int i1 = str.indexOf(c1);
+        int i2 = str.indexOf(c2);
+        return i1 == -1 ? i2 : (i2 == -1 ? i1 : Math.min(i1, i2));
+    }
+
+    private static String getOutputPath(StaticFileImpl file) {
+        return file.getSourceEntry().getPath() + "/" + file.getSourceEntry().getName();
+    }
+
+    private static String hash(byte[] data) {
+        try {
+            byte[] bytes = MessageDigest.getInstance("MD5").digest(data);
+            StringBuilder sb = new StringBuilder(HASH_LENGTH);
+            for (int i = 0; sb.length() < HASH_LENGTH; i++) {
+                sb.append(Character.forDigit((bytes[i] >> 4) & 0xf, 16)).append(Character.forDigit(bytes[i] & 0xf, 16));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private Map<String, Hash> load() {
+        Map<String, Hash> map = new HashMap<String, Hash>();
+        if (!file.exists()) {
+            return map;
+        }
+        ObjectInputStream ois = null;
+        try {
+            ois = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)));
+            int count = ois.readInt();
+            for (int i = 0; i < count; i++) {
+                String path = ois.readUTF();
+                map.put(path, new Hash(ois.readLong(), ois.readLong(), ois.readUTF()));
+            }
+        } catch (IOException e) {
+            log.warn("Unable to load asset fingerprints, hashing all assets: " + e.getMessage());
+            map.clear();
+        } finally {
+            IOUtils.closeQuietly(ois);
+        }
+        return map;
+    }
+
+    private void save() {
+        ObjectOutputStream oos = null;
+        try {
+            file.getParentFile().mkdirs();
+            oos = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+            oos.writeInt(hashes.size());
+            for (Map.Entry<String, Hash> en : hashes.entrySet()) {
+                Hash hash = en.getValue();
+                oos.writeUTF(en.getKey());
+                oos.writeLong(hash.length);
+                oos.writeLong(hash.lastModified);
+                oos.writeUTF(hash.hash);
+            }
+            oos.flush();
+        } catch (IOException e) {
+            //hashing all assets in next build
+            log.warn("Unable to save asset fingerprints: " + e.getMessage());
+            IOUtils.closeQuietly(oos);
+            FileUtils.deleteQuietly(file);
+        } finally {
+            IOUtils.closeQuietly(oos);
+        }
+    }
+
+    private static class Hash {
+        private final long length;
+        private final long lastModified;
+        private final String hash;
+
+        private Hash(long length, long lastModified, String hash) {
+            this.length = length;
+            this.lastModified = lastModified;
+            this.hash = hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Hash)) {
+                return false;
+            }
+            Hash other = (Hash) o;
+            return length == other.length && lastModified == other.lastModified && hash.equals(other.hash);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash.hashCode();
+        }
+    }
+}
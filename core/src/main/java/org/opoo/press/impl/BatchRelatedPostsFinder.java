@@ -0,0 +1,40 @@
+/*
+ * Copyright 2013-2015 Alex Lin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opoo.press.impl;
+
+import org.opoo.press.Post;
+import org.opoo.press.RelatedPostsFinder;
+import org.opoo.press.task.TaskExecutor;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The {@link RelatedPostsFinder} which can find related posts of all posts at once,
+ * sharing one index between all posts.
+ *
+ * @author Alex Lin
+ * @see RelatedPostsProcessor
+ */
+public interface BatchRelatedPostsFinder extends RelatedPostsFinder {
+
+    /**
+     * @param posts all posts
+     * @param taskExecutor executor for parallel processing, may be null
+     * @return related posts of each post, posts without related posts may be absent
+     */
+    Map<Post, List<Post>> findRelatedPosts(List<Post> posts, TaskExecutor taskExecutor);
+}
@@ -15,23 +15,28 @@
  */
 package org.opoo.press.impl;
 
+import com.google.common.base.MoreObjects;
+import com.google.common.collect.Lists;
+import org.opoo.press.Collection;
 import org.opoo.press.Config;
 import org.opoo.press.ConfigAware;
 import org.opoo.press.MetaTag;
 import org.opoo.press.Page;
 import org.opoo.press.Post;
-import org.opoo.press.RelatedPostsFinder;
 import org.opoo.press.SiteConfig;
+import org.opoo.press.task.CallableTask;
+import org.opoo.press.task.TaskExecutor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.Comparator;
-import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
+import java.util.Set;
 
 /**
  * Cosine similarity related posts algorithm.
@@ -39,11 +44,14 @@ import java.util.Map.Entry;
  * <li><a href="http://zh.wikipedia.org/wiki/%E4%BD%99%E5%BC%A6%E7%9B%B8%E4%BC%BC%E6%80%A7">余弦相似性</a></li> 
  * <li><a href="http://en.wikipedia.org/wiki/Cosine_similarity">Cosine Similarity</a></li>
  * </ul>
+ * Posts are indexed by dense int ids with inverted postings of categories and tags,
+ * scores are accumulated in primitive arrays and the top posts are selected by a bounded heap.
  * @author Alex Lin
  * @since 1.0.2
  */
-public class CosineSimilarityRelatedPostsFinder implements RelatedPostsFinder, ConfigAware {
+public class CosineSimilarityRelatedPostsFinder implements BatchRelatedPostsFinder, ConfigAware {
 	private static final Logger log = LoggerFactory.getLogger(CosineSimilarityRelatedPostsFinder.class);
+	private static final int CHUNK_SIZE = 256;
 	
 	private int size = 5;
 	private double categoriesFactor = 1.0;
@@ -71,89 +79,92 @@ public class CosineSimilarityRelatedPostsFinder implements RelatedPostsFinder, C
 		if(size <= 0 || (post.getCategories().isEmpty() && post.getTags().isEmpty())){
 			return null;
 		}
-		
-		// n = n(a, b);
-		// x = n / (sqrt(a.count) * sqrt(b.count))	
-		Map<Post, Integer> categoriesCountMap = calculatePostsCount(post, post.getCategories());
-		Map<Post, Integer> tagsCountMap = calculatePostsCount(post, post.getTags());
-		
-		Map<Post, Double> scoreMap = new HashMap<Post, Double>();
-		//categories
-		for(Map.Entry<Post, Integer> en: categoriesCountMap.entrySet()){
-			double score = calculate(en.getValue(), post.getCategories().size(), en.getKey().getCategories().size());
-			score = score * categoriesFactor;
-			scoreMap.put(en.getKey(), score);
-		}
-		
-		//tags
-		for(Map.Entry<Post, Integer> en: tagsCountMap.entrySet()){
-			double score = calculate(en.getValue(), post.getTags().size(), en.getKey().getTags().size());
-			Double val = scoreMap.get(en.getKey());
-			if(val == null){
-				val = 0.0;
+
+		//index the post and all posts sharing categories or tags with it
+		Set<Post> posts = new LinkedHashSet<Post>();
+		posts.add(post);
+		collectPosts(posts, post.getCategories());
+		collectPosts(posts, post.getTags());
+
+		//same ids as the batch index, the ties are broken in same order
+		List<Post> list = inCollectionOrder(post, posts);
+		Index index = new Index(list);
+		return index.find(list.indexOf(post), size);
+	}
+
+	/**
+	 * @return the posts in the order of post collection if available
+	 */
+	private static List<Post> inCollectionOrder(Post post, Set<Post> posts){
+		Collection collection = (post instanceof SimplePage)
+				? ((SimplePage) post).getSite().getCollections().get("post") : null;
+		if(collection != null){
+			List<Post> list = new ArrayList<Post>(posts.size());
+			for(Page page: collection.getPages()){
+				if(posts.contains(page)){
+					list.add((Post) page);
+				}
+			}
+			if(list.size() == posts.size()){
+				return list;
 			}
-			score = score * tagsFactor + val.doubleValue();
-			scoreMap.put(en.getKey(), score);
 		}
-		
-		final long time = post.getDate().getTime();
-		List<Entry<Post,Double>> list = new ArrayList<Entry<Post,Double>>(scoreMap.entrySet());
-		Collections.sort(list, new Comparator<Entry<Post,Double>>() {
-			@Override
-			public int compare(Entry<Post, Double> o1, Entry<Post, Double> o2) {
-				double x = o1.getValue().doubleValue() - o2.getValue().doubleValue();
-				int compare = (int)(x * 100000000.0);
-				if(x == 0){
-					//most near
-					long a = Math.abs(o1.getKey().getDate().getTime() - time);
-					long b = Math.abs(o2.getKey().getDate().getTime() - time);
-					return (a < b ? 1 : (a == b ? 0 : -1));
-					//most recent
-					//return o1.getKey().compareTo(o2.getKey()); 
-				}
-				return compare;
-			}
-		});
-		
-		Collections.reverse(list);
-		
-		if(size > list.size()){
-			size =  list.size();
+		return new ArrayList<Post>(posts);
+	}
+
+	/* (non-Javadoc)
+	 * @see org.opoo.press.impl.BatchRelatedPostsFinder#findRelatedPosts(java.util.List, org.opoo.press.task.TaskExecutor)
+	 */
+	@Override
+	public Map<Post, List<Post>> findRelatedPosts(List<Post> posts, TaskExecutor taskExecutor) {
+		final Index index = new Index(posts);
+		Map<Post, List<Post>> result = new IdentityHashMap<Post, List<Post>>();
+		if(size <= 0){
+			return result;
 		}
-		
-		List<Entry<Post,Double>> subList = list.subList(0, size);
-		
-		ArrayList<Post> result = new ArrayList<Post>();
-		for(Entry<Post, Double> en: subList){
-			result.add(en.getKey());
+
+		List<Integer> ids = new ArrayList<Integer>(posts.size());
+		for(int i = 0 ; i < posts.size() ; i++){
+			ids.add(i);
+		}
+
+		CallableTask<List<Integer>, Map<Post, List<Post>>> task = new CallableTask<List<Integer>, Map<Post, List<Post>>>() {
+			@Override
+			public Map<Post, List<Post>> call(List<Integer> chunk) {
+				Map<Post, List<Post>> map = new IdentityHashMap<Post, List<Post>>();
+				for(Integer id: chunk){
+					List<Post> relatedPosts = index.find(id, size);
+					if(relatedPosts != null && !relatedPosts.isEmpty()){
+						map.put(index.posts[id], relatedPosts);
+					}
+				}
+				return map;
+			}
+		};
+
+		List<List<Integer>> chunks = Lists.partition(ids, CHUNK_SIZE);
+		if(taskExecutor != null){
+			for(Map<Post, List<Post>> map: taskExecutor.call(chunks, task)){
+				result.putAll(map);
+			}
+		}else{
+			for(List<Integer> chunk: chunks){
+				result.putAll(task.call(chunk));
+			}
 		}
-			
 		return result;
 	}
-	
-	
-	static Map<Post, Integer> calculatePostsCount(Post post, List<? extends MetaTag> tags){
-		Map<Post, Integer> countMap = new HashMap<Post, Integer>();
+
+	private static void collectPosts(Set<Post> posts, List<? extends MetaTag> tags){
 		for(MetaTag tag: tags){
-			List<Page> posts = tag.getPages();
-			for_01: for(Page p: posts){
-				if(p instanceof Post) {
-					if (p.equals(post)) {
-						continue for_01;
-					}
-					Integer count = countMap.get(p);
-					if (count == null) {
-						countMap.put((Post) p, 1);
-					} else {
-						countMap.put((Post) p, count.intValue() + 1);
-					}
+			for(Page p: tag.getPages()){
+				if(p instanceof Post){
+					posts.add((Post) p);
 				}
 			}
 		}
-			
-		return countMap;
 	}
-	
+
 	static double calculate(int n, int a, int b){
 		double x = n * 1.0 / (Math.sqrt(a) * Math.sqrt(b));
 		return x;
@@ -175,4 +186,296 @@ public class CosineSimilarityRelatedPostsFinder implements RelatedPostsFinder, C
 		log.debug("Set {}: {}", categoriesFactorKey, categoriesFactor);
 		log.debug("Set {}: {}", tagsFactorKey, tagsFactor);
 	}
+
+	/**
+	 * Identifies the algorithm and its settings, used by {@link RelatedPostsIndex}.
+	 */
+	@Override
+	public String toString() {
+		return MoreObjects.toStringHelper(this)
+				.add("size", size)
+				.add("categoriesFactor", categoriesFactor)
+				.add("tagsFactor", tagsFactor)
+				.toString();
+	}
+
+	/**
+	 * Inverted index of categories and tags, posts are identified by dense int ids.
+	 */
+	class Index {
+		private final Post[] posts;
+		private final long[] times;
+		private final int[] ranks;
+		private final int[] categoriesCount;
+		private final int[] tagsCount;
+		private final int[][] postCategories;
+		private final int[][] postTags;
+		private final int[][] categoryPostings;
+		private final int[][] tagPostings;
+		private final ThreadLocal<Accumulator> accumulators = new ThreadLocal<Accumulator>();
+
+		Index(List<Post> list){
+			int n = list.size();
+			posts = list.toArray(new Post[n]);
+			times = new long[n];
+			categoriesCount = new int[n];
+			tagsCount = new int[n];
+			postCategories = new int[n][];
+			postTags = new int[n][];
+
+			Map<MetaTag,Integer> categoryIds = new IdentityHashMap<MetaTag, Integer>();
+			Map<MetaTag,Integer> tagIds = new IdentityHashMap<MetaTag, Integer>();
+			for(int i = 0 ; i < n ; i++){
+				Post post = posts[i];
+				times[i] = post.getDate() != null ? post.getDate().getTime() : 0;
+				categoriesCount[i] = post.getCategories().size();
+				tagsCount[i] = post.getTags().size();
+				postCategories[i] = termIds(categoryIds, post.getCategories());
+				postTags[i] = termIds(tagIds, post.getTags());
+			}
+			categoryPostings = invert(postCategories, categoryIds.size());
+			tagPostings = invert(postTags, tagIds.size());
+			ranks = rank(posts);
+		}
+
+		/**
+		 * Ranks of posts by id, the ties are broken by post id instead of position, so
+		 * the results do not depend on the order of posts with same date.
+		 */
+		private int[] rank(Post[] posts){
+			Integer[] order = new Integer[posts.length];
+			for(int i = 0 ; i < order.length ; i++){
+				order[i] = i;
+			}
+			final Post[] p = posts;
+			Arrays.sort(order, new Comparator<Integer>() {
+				@Override
+				public int compare(Integer a, Integer b) {
+					String idA = p[a].getId();
+					String idB = p[b].getId();
+					if(idA == null || idB == null){
+						return idA == null ? (idB == null ? a.compareTo(b) : -1) : 1;
+					}
+					int c = idA.compareTo(idB);
+					return c != 0 ? c : a.compareTo(b);
+				}
+			});
+			int[] result = new int[posts.length];
+			for(int i = 0 ; i < order.length ; i++){
+				result[order[i]] = i;
+			}
+			return result;
+		}
+
+		private int[] termIds(Map<MetaTag,Integer> ids, List<? extends MetaTag> tags){
+			int[] result = new int[tags.size()];
+			int count = 0;
+			for(MetaTag tag: tags){
+				Integer id = ids.get(tag);
+				if(id == null){
+					id = ids.size();
+					ids.put(tag, id);
+				}
+				if(!contains(result, count, id)){
+					result[count++] = id;
+				}
+			}
+			return count == result.length ? result : Arrays.copyOf(result, count);
+		}
+
+		private boolean contains(int[] array, int length, int value){
+			for(int i = 0 ; i < length ; i++){
+				if(array[i] == value){
+					return true;
+				}
+			}
+			return false;
+		}
+
+		private int[][] invert(int[][] postTerms, int termsCount){
+			int[] lengths = new int[termsCount];
+			for(int[] terms: postTerms){
+				for(int term: terms){
+					lengths[term]++;
+				}
+			}
+			int[][] postings = new int[termsCount][];
+			for(int term = 0 ; term < termsCount ; term++){
+				postings[term] = new int[lengths[term]];
+				lengths[term] = 0;
+			}
+			for(int id = 0 ; id < postTerms.length ; id++){
+				for(int term: postTerms[id]){
+					postings[term][lengths[term]++] = id;
+				}
+			}
+			return postings;
+		}
+
+		List<Post> find(int id, int size){
+			if(size <= 0 || (categoriesCount[id] == 0 && tagsCount[id] == 0)){
+				return null;
+			}
+
+			Accumulator acc = accumulators.get();
+			if(acc == null){
+				acc = new Accumulator(posts.length);
+				accumulators.set(acc);
+			}
+
+			// n = n(a, b);
+			// x = n / (sqrt(a.count) * sqrt(b.count))
+			acc.collect(id, postCategories[id], categoryPostings, acc.categories);
+			acc.collect(id, postTags[id], tagPostings, acc.tags);
+
+			TopK top = new TopK(size, times, ranks, times[id]);
+			for(int i = 0 ; i < acc.touchedSize ; i++){
+				int p = acc.touched[i];
+				double score = 0;
+				if(acc.categories[p] > 0){
+					score += calculate(acc.categories[p], categoriesCount[id], categoriesCount[p]) * categoriesFactor;
+				}
+				if(acc.tags[p] > 0){
+					score += calculate(acc.tags[p], tagsCount[id], tagsCount[p]) * tagsFactor;
+				}
+				top.offer(p, score);
+				acc.categories[p] = 0;
+				acc.tags[p] = 0;
+			}
+			acc.touchedSize = 0;
+
+			int[] ids = top.toSortedArray();
+			List<Post> result = new ArrayList<Post>(ids.length);
+			for(int p: ids){
+				result.add(posts[p]);
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * Per thread score accumulators, reset after each post.
+	 */
+	private static class Accumulator {
+		private final int[] categories;
+		private final int[] tags;
+		private final int[] touched;
+		private int touchedSize;
+
+		private Accumulator(int n){
+			categories = new int[n];
+			tags = new int[n];
+			touched = new int[n];
+		}
+
+		private void collect(int id, int[] terms, int[][] postings, int[] counts){
+			for(int term: terms){
+				for(int p: postings[term]){
+					if(p == id){
+						continue;
+					}
+					if(categories[p] == 0 && tags[p] == 0){
+						touched[touchedSize++] = p;
+					}
+					counts[p]++;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Bounded heap of the best posts, the worst one at the root.
+	 * Higher score is better, then the post nearest in time, then the lower rank of post id.
+	 */
+	private static class TopK {
+		private final int[] ids;
+		private final double[] scores;
+		private final long[] times;
+		private final int[] ranks;
+		private final long time;
+		private int size;
+
+		private TopK(int capacity, long[] times, int[] ranks, long time){
+			this.ids = new int[capacity];
+			this.scores = new double[capacity];
+			this.times = times;
+			this.ranks = ranks;
+			this.time = time;
+		}
+
+		private void offer(int id, double score){
+			if(size < ids.length){
+				ids[size] = id;
+				scores[size] = score;
+				siftUp(size++);
+			}else if(better(id, score, ids[0], scores[0])){
+				ids[0] = id;
+				scores[0] = score;
+				siftDown(0);
+			}
+		}
+
+		private int[] toSortedArray(){
+			int[] result = new int[size];
+			while(size > 0){
+				result[size - 1] = ids[0];
+				size--;
+				ids[0] = ids[size];
+				scores[0] = scores[size];
+				siftDown(0);
+			}
+			return result;
+		}
+
+		private boolean better(int a, double scoreA, int b, double scoreB){
+			if(scoreA != scoreB){
+				return scoreA > scoreB;
+			}
+			long distanceA = Math.abs(times[a] - time);
+			long distanceB = Math.abs(times[b] - time);
+			if(distanceA != distanceB){
+				return distanceA < distanceB;
+			}
+			return ranks[a] < ranks[b];
+		}
+
+		private void siftUp(int i){
+			while(i > 0){
+				int parent = (i - 1) >>> 1;
+				if(!better(ids[parent], scores[parent], ids[i], scores[i])){
+					break;
+				}
+				swap(i, parent);
+				i = parent;
+			}
+		}
+
+		private void siftDown(int i){
+			while(true){
+				int worst = i;
+				int left = 2 * i + 1;
+				int right = left + 1;
+				if(left < size && better(ids[worst], scores[worst], ids[left], scores[left])){
+					worst = left;
+				}
+				if(right < size && better(ids[worst], scores[worst], ids[right], scores[right])){
+					worst = right;
+				}
+				if(worst == i){
+					break;
+				}
+				swap(i, worst);
+				i = worst;
+			}
+		}
+
+		private void swap(int i, int j){
+			int id = ids[i];
+			ids[i] = ids[j];
+			ids[j] = id;
+			double score = scores[i];
+			scores[i] = scores[j];
+			scores[j] = score;
+		}
+	}
 }
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2013-2015 Alex Lin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opoo.press.impl;
+
+import org.opoo.press.Page;
+import org.opoo.press.Pager;
+import org.opoo.press.ProcessorsProcessor;
+import org.opoo.press.output.MemoryOutputStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Renders a page when its output is requested from the {@link MemoryOutputStore},
+ * the rendered output is kept in store until the page source changed.
+ * <p>The pages listed by the requested page are converted before rendering. If the page
+ * accesses the site-wide pages or data when rendered, all pages are converted and the page is
+ * rendered again.</p>
+ * <p>The loader is closed before the site rebuilt, the pages of a half-built site are
+ * never rendered, and the stale outputs are not put into store after invalidation.</p>
+ *
+ * @author Alex Lin
+ * @see SiteImpl#rebuild(org.opoo.press.file.Result)
+ */
+class LazyPageLoader implements MemoryOutputStore.Loader {
+    private static final Logger log = LoggerFactory.getLogger(LazyPageLoader.class);
+
+    private final SiteImpl site;
+    private final ProcessorsProcessor processors;
+    private final Map<String, SimplePage> pages = new HashMap<String, SimplePage>();
+    private final Set<Page> converted = Collections.newSetFromMap(new IdentityHashMap<Page, Boolean>());
+    private boolean allConverted;
+    private boolean closed;
+    private final Map<String, Object> rootMap;
+
+    LazyPageLoader(SiteImpl site, ProcessorsProcessor processors) {
+        this.site = site;
+        this.processors = processors;
+        this.rootMap = site.buildRootMap();
+
+        for (Page page : site.getAllPages()) {
+            if (page instanceof SimplePage) {
+                SimplePage simplePage = (SimplePage) page;
+                pages.put(MemoryOutputStore.normalize(simplePage.getOutputPath()), simplePage);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void load(String path) {
+        SimplePage page = pages.get(path);
+        if (page == null || closed) {
+            return;
+        }
+
+        long start = System.currentTimeMillis();
+        convert(page);
+        Pager pager = page.getPager();
+        if (pager != null && pager.getItems() != null) {
+            for (Object item : pager.getItems()) {
+                if (item instanceof Page) {
+                    convert((Page) item);
+                }
+            }
+        }
+        //the listed pages are unknown until rendered
+        if (site.renderPage(page, rootMap) && !allConverted) {
+            log.debug("Page accesses site-wide pages, converting all pages: {}", page.getUrl());
+            for (Page p : site.getAllPages()) {
+                convert(p);
+            }
+            allConverted = true;
+            if (page.resetContent()) {
+                converted.remove(page);
+                convert(page);
+                site.renderPage(page, rootMap);
+            }
+        }
+        processors.postRender(site, page);
+        page.write(site.getDestination());
+        log.info("Rendered on demand: {} ({}ms)", page.getUrl(), System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Stops loading pages, waits for the page being rendered.
+     */
+    synchronized void close() {
+        closed = true;
+    }
+
+    private void convert(Page page) {
+        if (!converted.add(page)) {
+            return;
+        }
+        if (page instanceof SimplePage) {
+            //may be marked by incremental pagination
+            ((SimplePage) page).setUpToDate(false);
+        }
+        site.convertPage(page);
+    }
+}
@@ -0,0 +1,482 @@
+/*
+ * Copyright 2013-2015 Alex Lin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opoo.press.impl;
+
+import com.google.common.collect.Lists;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.opoo.press.Collection;
+import org.opoo.press.Post;
+import org.opoo.press.Site;
+import org.opoo.press.SiteAware;
+import org.opoo.press.task.CallableTask;
+import org.opoo.press.task.TaskExecutor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * Content based related posts finder.
+ * <p>The converted text of each post is split into character shingles, the MinHash signature
+ * of the shingles estimates the Jaccard similarity of two posts, and the locality-sensitive
+ * hashing bands of the signatures find candidate posts without comparing all pairs.</p>
+ * <p>Signatures are saved in the working directory by the hash of the post text, only new
+ * or changed posts are signed again in next build.</p>
+ * <p>To use this finder, add the following line to <code>factory.yml</code> of the site:</p>
+ * <pre>
+ * org.opoo.press.RelatedPostsFinder: org.opoo.press.impl.MinHashRelatedPostsFinder
+ * </pre>
+ * Configuration: <code>related_posts</code> (size), <code>minhash_shingle_size</code> (default 5),
+ * <code>minhash_hashes</code> (default 128), <code>minhash_bands</code> (default 32).
+ *
+ * @author Alex Lin
+ * @see CosineSimilarityRelatedPostsFinder
+ */
+public class MinHashRelatedPostsFinder implements BatchRelatedPostsFinder, SiteAware {
+    private static final Logger log = LoggerFactory.getLogger(MinHashRelatedPostsFinder.class);
+    private static final Pattern TAG_PATTERN = Pattern.compile("<[^>]*>");
+    private static final Pattern SPACE_PATTERN = Pattern.compile("\\s+");
+    private static final String SIGNATURES_FILE = ".minhash-signatures";
+    private static final int CHUNK_SIZE = 64;
+
+    private Site site;
+    private int size = 5;
+    private int shingleSize = 5;
+    private int hashes = 128;
+    private int bands = 32;
+    private int[] seeds;
+
+    private final Map<Long, int[]> signatures = new ConcurrentHashMap<Long, int[]>();
+    private boolean signaturesLoaded;
+    private volatile Index index;
+
+    @Override
+    public void setSite(Site site) {
+        this.site = site;
+        this.size = site.getConfig().get("related_posts", size);
+        this.shingleSize = site.getConfig().get("minhash_shingle_size", shingleSize);
+        this.hashes = site.getConfig().get("minhash_hashes", hashes);
+        this.bands = site.getConfig().get("minhash_bands", bands);
+
+        if (shingleSize <= 0 || hashes <= 0 || bands <= 0 || hashes % bands != 0) {
+            throw new IllegalArgumentException("Invalid MinHash configuration: shingle size " + shingleSize
+                    + ", hashes " + hashes + ", bands " + bands);
+        }
+
+        seeds = new int[hashes];
+        for (int i = 0; i < hashes; i++) {
+            seeds[i] = mix(0x9E3779B9 * (i + 1));
+        }
+    }
+
+    @Override
+    public List<Post> findRelatedPosts(Post post) {
+        return findRelatedPosts(post, size);
+    }
+
+    @Override
+    public List<Post> findRelatedPosts(Post post, int size) {
+        Collection collection = site.getCollections().get("post");
+        if (collection == null || size <= 0) {
+            return null;
+        }
+
+        List<Post> posts = new ArrayList<Post>(collection.getPages().size());
+        for (Object page : collection.getPages()) {
+            if (page instanceof Post) {
+                posts.add((Post) page);
+            }
+        }
+
+        Index current = getIndex(posts);
+        Integer id = current.ids.get(post);
+        return id != null ? current.find(id, size) : null;
+    }
+
+    /**
+     * Signs and indexes the posts once, the index is reused by the following calls
+     * until the posts or their content changed.
+     */
+    private synchronized Index getIndex(List<Post> posts) {
+        Index current = index;
+        if (current == null || !current.isIndexed(posts)) {
+            long[] textHashes = new long[posts.size()];
+            //may be called in the tasks of executor, sign in current thread
+            current = new Index(posts, sign(posts, textHashes, null));
+            saveSignatures(textHashes, current.signatures);
+            index = current;
+        }
+        return current;
+    }
+
+    @Override
+    public Map<Post, List<Post>> findRelatedPosts(List<Post> posts, TaskExecutor taskExecutor) {
+        Map<Post, List<Post>> result = new IdentityHashMap<Post, List<Post>>();
+        if (size <= 0) {
+            return result;
+        }
+
+        long[] textHashes = new long[posts.size()];
+        final Index index = new Index(posts, sign(posts, textHashes, taskExecutor));
+        saveSignatures(textHashes, index.signatures);
+        this.index = index;
+
+        List<Integer> ids = new ArrayList<Integer>(posts.size());
+        for (int i = 0; i < posts.size(); i++) {
+            ids.add(i);
+        }
+
+        CallableTask<List<Integer>, Map<Post, List<Post>>> task = new CallableTask<List<Integer>, Map<Post, List<Post>>>() {
+            @Override
+            public Map<Post, List<Post>> call(List<Integer> chunk) {
+                Map<Post, List<Post>> map = new IdentityHashMap<Post, List<Post>>();
+                for (Integer id : chunk) {
+                    List<Post> relatedPosts = index.find(id, size);
+                    if (relatedPosts != null && !relatedPosts.isEmpty()) {
+                        map.put(index.posts.get(id), relatedPosts);
+                    }
+                }
+                return map;
+            }
+        };
+
+        for (Map<Post, List<Post>> map : call(Lists.partition(ids, CHUNK_SIZE), task, taskExecutor)) {
+            result.putAll(map);
+        }
+        return result;
+    }
+
+    /**
+     * @param posts posts
+     * @param textHashes hashes of post text, filled by this method
+     * @param taskExecutor executor, may be null
+     * @return signatures of posts, null for the post without enough text
+     */
+    private int[][] sign(final List<Post> posts, final long[] textHashes, TaskExecutor taskExecutor) {
+        loadSignatures();
+
+        List<Integer> ids = new ArrayList<Integer>(posts.size());
+        for (int i = 0; i < posts.size(); i++) {
+            ids.add(i);
+        }
+
+        final int[][] result = new int[posts.size()][];
+        CallableTask<List<Integer>, Integer> task = new CallableTask<List<Integer>, Integer>() {
+            @Override
+            public Integer call(List<Integer> chunk) {
+                int signed = 0;
+                for (Integer id : chunk) {
+                    String text = getText(posts.get(id));
+                    if (text.length() < shingleSize) {
+                        continue;
+                    }
+                    long hash = hash(text);
+                    textHashes[id] = hash;
+                    int[] signature = signatures.get(hash);
+                    if (signature == null) {
+                        signature = minHash(text);
+                        signatures.put(hash, signature);
+                        signed++;
+                    }
+                    result[id] = signature;
+                }
+                return signed;
+            }
+        };
+
+        int signed = 0;
+        for (Integer count : call(Lists.partition(ids, CHUNK_SIZE), task, taskExecutor)) {
+            signed += count;
+        }
+        log.debug("MinHash signatures: {} signed, {} reused.", signed, posts.size() - signed);
+        return result;
+    }
+
+    private static <V> List<V> call(List<List<Integer>> chunks, CallableTask<List<Integer>, V> task,
+                                    TaskExecutor taskExecutor) {
+        if (taskExecutor != null) {
+            return taskExecutor.call(chunks, task);
+        }
+        List<V> list = new ArrayList<V>();
+        for (List<Integer> chunk : chunks) {
+            list.add(task.call(chunk));
+        }
+        return list;
+    }
+
+    private String getText(Post post) {
+        String content = post.getContent();
+        if (content == null) {
+            return "";
+        }
+        String text = TAG_PATTERN.matcher(content).replaceAll(" ");
+        return SPACE_PATTERN.matcher(text).replaceAll(" ").trim().toLowerCase(Locale.ENGLISH);
+    }
+
+    int[] minHash(String text) {
+        int[] signature = new int[hashes];
+        for (int i = 0; i < hashes; i++) {
+            signature[i] = Integer.MAX_VALUE;
+        }
+
+        int last = text.length() - shingleSize;
+        for (int start = 0; start <= last; start++) {
+            int shingle = 0;
+            for (int i = start; i < start + shingleSize; i++) {
+                shingle = 31 * shingle + text.charAt(i);
+            }
+            for (int i = 0; i < hashes; i++) {
+                int h = mix(shingle ^ seeds[i]);
+                if (h < signature[i]) {
+                    signature[i] = h;
+                }
+            }
+        }
+        return signature;
+    }
+
+    /**
+     * MurmurHash3 finalizer.
+     */
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    /**
+     * FNV-1a hash of the text.
+     */
+    private static long hash(String text) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < text.length(); i++) {
+            h ^= text.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return h;
+    }
+
+    private File getSignaturesFile() {
+        return new File(site.getWorking(), SIGNATURES_FILE);
+    }
+
+    private void loadSignatures() {
+        if (signaturesLoaded) {
+            return;
+        }
+        signaturesLoaded = true;
+
+        File file = getSignaturesFile();
+        if (!file.exists()) {
+            return;
+        }
+
+        ObjectInputStream ois = null;
+        try {
+            ois = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)));
+            if (ois.readInt() != shingleSize || ois.readInt() != hashes) {
+                log.info("MinHash configuration changed, signing all posts.");
+                return;
+            }
+            int count = ois.readInt();
+            for (int i = 0; i < count; i++) {
+                long hash = ois.readLong();
+                int[] signature = new int[hashes];
+                for (int j = 0; j < hashes; j++) {
+                    signature[j] = ois.readInt();
+                }
+                signatures.put(hash, signature);
+            }
+            log.debug("Loaded {} MinHash signatures.", count);
+        } catch (IOException e) {
+            log.warn("Unable to load MinHash signatures, signing all posts: " + e.getMessage());
+            signatures.clear();
+        } finally {
+            IOUtils.closeQuietly(ois);
+        }
+    }
+
+    private void saveSignatures(long[] textHashes, int[][] postSignatures) {
+        //only keep signatures of current posts
+        Map<Long, int[]> current = new HashMap<Long, int[]>();
+        for (int i = 0; i < textHashes.length; i++) {
+            if (postSignatures[i] != null) {
+                current.put(textHashes[i], postSignatures[i]);
+            }
+        }
+        signatures.keySet().retainAll(current.keySet());
+
+        ObjectOutputStream oos = null;
+        try {
+            oos = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(getSignaturesFile())));
+            oos.writeInt(shingleSize);
+            oos.writeInt(hashes);
+            oos.writeInt(current.size());
+            for (Map.Entry<Long, int[]> entry : current.entrySet()) {
+                oos.writeLong(entry.getKey());
+                for (int h : entry.getValue()) {
+                    oos.writeInt(h);
+                }
+            }
+            oos.flush();
+        } catch (IOException e) {
+            //signing all posts in next build
+            log.warn("Unable to save MinHash signatures: " + e.getMessage());
+            IOUtils.closeQuietly(oos);
+            FileUtils.deleteQuietly(getSignaturesFile());
+        } finally {
+            IOUtils.closeQuietly(oos);
+        }
+    }
+
+    /**
+     * LSH buckets of the signatures.
+     */
+    private class Index {
+        private final List<Post> posts;
+        private final String[] contents;
+        private final Map<Post, Integer> ids;
+        private final int[][] signatures;
+        private final List<Map<Long, List<Integer>>> buckets;
+
+        private Index(List<Post> posts, int[][] signatures) {
+            this.posts = new ArrayList<Post>(posts);
+            this.signatures = signatures;
+            this.contents = new String[posts.size()];
+            this.ids = new IdentityHashMap<Post, Integer>();
+            for (int id = 0; id < posts.size(); id++) {
+                contents[id] = posts.get(id).getContent();
+                ids.put(posts.get(id), id);
+            }
+            this.buckets = new ArrayList<Map<Long, List<Integer>>>(bands);
+            for (int band = 0; band < bands; band++) {
+                buckets.add(new HashMap<Long, List<Integer>>());
+            }
+
+            for (int id = 0; id < signatures.length; id++) {
+                if (signatures[id] == null) {
+                    continue;
+                }
+                for (int band = 0; band < bands; band++) {
+                    long key = bandKey(signatures[id], band);
+                    List<Integer> list = buckets.get(band).get(key);
+                    if (list == null) {
+                        list = new ArrayList<Integer>(2);
+                        buckets.get(band).put(key, list);
+                    }
+                    list.add(id);
+                }
+            }
+        }
+
+        /**
+         * @return true if the same posts indexed in same order, and their content not changed
+         */
+        private boolean isIndexed(List<Post> list) {
+            if (list.size() != posts.size()) {
+                return false;
+            }
+            for (int id = 0; id < contents.length; id++) {
+                Post post = list.get(id);
+                if (post != posts.get(id) || post.getContent() != contents[id]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private long bandKey(int[] signature, int band) {
+            int rows = hashes / bands;
+            long key = band;
+            for (int i = band * rows; i < (band + 1) * rows; i++) {
+                key = key * 0x100000001b3L + signature[i];
+            }
+            return key;
+        }
+
+        private List<Post> find(final int id, int size) {
+            final int[] signature = signatures[id];
+            if (signature == null) {
+                return null;
+            }
+
+            Set<Integer> candidates = new LinkedHashSet<Integer>();
+            for (int band = 0; band < bands; band++) {
+                List<Integer> list = buckets.get(band).get(bandKey(signature, band));
+                if (list != null) {
+                    candidates.addAll(list);
+                }
+            }
+            candidates.remove(id);
+            if (candidates.isEmpty()) {
+                return null;
+            }
+
+            final Map<Integer, Double> scores = new HashMap<Integer, Double>();
+            for (Integer candidate : candidates) {
+                scores.put(candidate, similarity(signature, signatures[candidate]));
+            }
+
+            List<Integer> list = new ArrayList<Integer>(candidates);
+            Collections.sort(list, new Comparator<Integer>() {
+                @Override
+                public int compare(Integer o1, Integer o2) {
+                    int c = scores.get(o2).compareTo(scores.get(o1));
+                    return c != 0 ? c : o1.compareTo(o2);
+                }
+            });
+
+            List<Post> result = new ArrayList<Post>(Math.min(size, list.size()));
+            for (int i = 0; i < size && i < list.size(); i++) {
+                result.add(posts.get(list.get(i)));
+            }
+            return result;
+        }
+
+        private double similarity(int[] a, int[] b) {
+            int same = 0;
+            for (int i = 0; i < a.length; i++) {
+                if (a[i] == b[i]) {
+                    same++;
+                }
+            }
+            return (double) same / a.length;
+        }
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright 2013-2015 Alex Lin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opoo.press.impl;
+
+import org.opoo.press.Category;
+import org.opoo.press.Converter;
+import org.opoo.press.ListHolder;
+import org.opoo.press.Page;
+import org.opoo.press.Pager;
+import org.opoo.press.Site;
+import org.opoo.press.Source;
+import org.opoo.press.Tag;
+
+import java.util.Date;
+
+/**
+ * The page 2, 3, ... of a paginated page.
+ * <p>Shares title, date, source, tags, categories and data of the first page, only holds
+ * its own pager, url, data set on it and content after converted. The content before
+ * converted is read from the source of the first page when required, so the content of
+ * source cache is not copied.</p>
+ *
+ * @author Alex Lin
+ * @see org.opoo.press.pagination.PaginationUtils
+ */
+public class PagerPage extends SimplePage {
+    private final Page page;
+    /**
+     * Content of first page without source only, others read from the source of first page.
+     */
+    private String sharedContent;
+    private boolean contentChanged;
+
+    /**
+     * @param site the site
+     * @param page the first page
+     * @param pager pager of this page
+     */
+    public PagerPage(Site site, Page page, Pager pager) {
+        super(site);
+        this.page = page;
+        this.sharedContent = page.getSource() == null ? page.getContent() : null;
+        setPager(pager);
+        copyUrl(page);
+    }
+
+    /**
+     * @return the first page
+     */
+    public Page getFirstPage() {
+        return page;
+    }
+
+    @Override
+    public String getContent() {
+        if (contentChanged) {
+            return super.getContent();
+        }
+        //the first page may be converted already
+        Source source = page.getSource();
+        return source != null ? source.getContent() : sharedContent;
+    }
+
+    @Override
+    public void setContent(String content) {
+        contentChanged = true;
+        sharedContent = null;
+        super.setContent(content);
+    }
+
+    @Override
+    public <T> T get(String name) {
+        T value = super.get(name);
+        return value != null ? value : page.<T>get(name);
+    }
+
+    @Override
+    public Source getSource() {
+        return page.getSource();
+    }
+
+    @Override
+    public String getTitle() {
+        return page.getTitle();
+    }
+
+    @Override
+    public String getPath() {
+        return page.getPath();
+    }
+
+    @Override
+    public String getLayout() {
+        return page.getLayout();
+    }
+
+    @Override
+    public String getPermalink() {
+        return page.getPermalink();
+    }
+
+    @Override
+    public Date getDate() {
+        return page.getDate();
+    }
+
+    @Override
+    public Date getUpdated() {
+        return page.getUpdated();
+    }
+
+    @Override
+    public String getDateFormatted() {
+        return page.getDateFormatted();
+    }
+
+    @Override
+    public String getUpdatedFormatted() {
+        return page.getUpdatedFormatted();
+    }
+
+    @Override
+    public boolean isPublished() {
+        return page.isPublished();
+    }
+
+    @Override
+    public Page getNext() {
+        return page.getNext();
+    }
+
+    @Override
+    public Page getPrevious() {
+        return page.getPrevious();
+    }
+
+    @Override
+    public ListHolder<Tag> getTagsHolder() {
+        return page.getTagsHolder();
+    }
+
+    @Override
+    public ListHolder<Category> getCategoriesHolder() {
+        return page.getCategoriesHolder();
+    }
+
+    @Override
+    protected Converter getConverter() {
+        if (page instanceof SimplePage) {
+            return ((SimplePage) page).getConverter();
+        }
+        return page.getSource() != null ? getSite().getConverter(page.getSource()) : null;
+    }
+
+    @Override
+    protected String getOutputFileExtension() {
+        if (page instanceof SimplePage) {
+            return ((SimplePage) page).getOutputFileExtension();
+        }
+        Converter converter = getConverter();
+        return converter != null ? converter.getOutputFileExtension(page.getSource()) : super.getOutputFileExtension();
+    }
+}
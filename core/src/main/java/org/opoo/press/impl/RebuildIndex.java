@@ -0,0 +1,475 @@
+/*
+ * Copyright 2013-2015 Alex Lin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opoo.press.impl;
+
+import org.apache.commons.io.FileUtils;
+import org.opoo.press.Collection;
+import org.opoo.press.MetaTag;
+import org.opoo.press.NoFrontMatterException;
+import org.opoo.press.Page;
+import org.opoo.press.Pager;
+import org.opoo.press.Source;
+import org.opoo.press.SourceEntry;
+import org.opoo.press.SourceParser;
+import org.opoo.press.StaticFile;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+/**
+ * The pages of a build in memory, compared with the pages of next build to find the
+ * pages to rebuild in preview. A page is rebuilt if:
+ * <ul>
+ *     <li>it is new, or its source file changed;</li>
+ *     <li>the pages it lists changed, added or removed: the pager items, the previous and
+ *     next pages, the related posts and the pages of its tag or category;</li>
+ *     <li>the site-wide pages or data it accessed when rendered last time changed, see
+ *     {@link AccessTracker}, or it was never rendered. The collections, tags and queries
+ *     change with the front matter of their pages, the content of a page is compared
+ *     only if accessed;</li>
+ *     <li>the outputs of <code>pre_render</code> templates changed.</li>
+ * </ul>
+ * <p>The sources not changed are not parsed again, and the pages read from them take
+ * over the converted content of last build.</p>
+ *
+ * @author Alex Lin
+ * @see SiteImpl#rebuild(org.opoo.press.file.Result)
+ */
+class RebuildIndex {
+    private static final Logger log = LoggerFactory.getLogger(RebuildIndex.class);
+    /** The version of unknown site variables, never equals. */
+    private static final String UNKNOWN = "";
+
+    private final SiteImpl site;
+    private RebuildIndex last;
+    private final Set<File> changed;
+
+    /** Output path to signature of page. */
+    private final Map<String, String> signatures = new HashMap<String, String>();
+    /** Output path to the keys of site-wide pages and data accessed when rendered. */
+    private final Map<String, Set<String>> dependencies = new ConcurrentHashMap<String, Set<String>>();
+    /** Key of site-wide pages or data to its version in this build. */
+    private final Map<String, String> versions = new ConcurrentHashMap<String, String>();
+    private volatile Map<String, Page> pagesByPath;
+    /** Source file to the source parsed, or the source entry if no front matter. */
+    private final Map<File, Source> sources = new ConcurrentHashMap<File, Source>();
+    private final Map<File, SourceEntry> staticSources = new ConcurrentHashMap<File, SourceEntry>();
+    /** Output path to the converted content of page. */
+    private final Map<String, SimplePage.Converted> conversions = new ConcurrentHashMap<String, SimplePage.Converted>();
+    private String preRendered;
+
+    /**
+     * @param site the site
+     */
+    RebuildIndex(SiteImpl site) {
+        this(site, null, Collections.<File>emptySet());
+    }
+
+    /**
+     * @param site the site
+     * @param last the index of last build
+     * @param changed the changed files since last build
+     */
+    RebuildIndex(SiteImpl site, RebuildIndex last, java.util.Collection<File> changed) {
+        this.site = site;
+        this.last = last;
+        this.changed = new HashSet<File>();
+        for (File file : changed) {
+            this.changed.add(file.getAbsoluteFile());
+        }
+    }
+
+    /**
+     * @param parser the parser of site
+     * @return the parser takes the sources not changed since last build
+     */
+    SourceParser wrap(final SourceParser parser) {
+        return new SourceParser() {
+            @Override
+            public Source parse(SourceEntry sourceEntry) throws NoFrontMatterException {
+                File file = sourceEntry.getFile().getAbsoluteFile();
+                RebuildIndex lastBuild = last;
+                if (lastBuild != null && !changed.contains(file)) {
+                    if (sourceEntry.equals(lastBuild.staticSources.get(file))) {
+                        staticSources.put(file, sourceEntry);
+                        throw new NoFrontMatterException(sourceEntry);
+                    }
+                    Source source = lastBuild.sources.get(file);
+                    if (source != null && sourceEntry.equals(source.getSourceEntry())) {
+                        sources.put(file, source);
+                        return source;
+                    }
+                }
+                try {
+                    Source source = parser.parse(sourceEntry);
+                    sources.put(file, source);
+                    return source;
+                } catch (NoFrontMatterException e) {
+                    staticSources.put(file, sourceEntry);
+                    throw e;
+                }
+            }
+        };
+    }
+
+    /**
+     * Converts the page, or restores the converted content of last build if the page
+     * is read from the same source.
+     *
+     * @param page the page to convert
+     */
+    void convert(SimplePage page) {
+        if (page.isUpToDate() || !page.isSourceContent()) {
+            page.convert();
+            return;
+        }
+        String path = page.getOutputPath();
+        SimplePage.Converted converted = conversions.get(path);
+        RebuildIndex lastBuild = last;
+        if (converted == null && lastBuild != null) {
+            converted = lastBuild.conversions.get(path);
+        }
+        if (converted == null || !page.restoreConverted(converted)) {
+            page.convert();
+            converted = page.getConverted();
+        }
+        conversions.put(path, converted);
+    }
+
+    /**
+     * Takes over the converted content of last build for the pages not converted yet,
+     * e.g. rendered on demand, and releases the index of last build.
+     *
+     * @param pages all pages of site
+     */
+    void releaseLastBuild(List<Page> pages) {
+        RebuildIndex lastBuild = last;
+        if (lastBuild == null) {
+            return;
+        }
+        for (Page page : pages) {
+            if (page instanceof SimplePage) {
+                String path = ((SimplePage) page).getOutputPath();
+                SimplePage.Converted converted = lastBuild.conversions.get(path);
+                if (converted != null && !conversions.containsKey(path)) {
+                    conversions.put(path, converted);
+                }
+            }
+        }
+        last = null;
+    }
+
+    /**
+     * Records the rendering of a page.
+     *
+     * @param page the rendered page
+     * @param keys the keys of site-wide pages and data accessed
+     */
+    void rendered(SimplePage page, Set<String> keys) {
+        dependencies.put(page.getOutputPath(), keys);
+        for (String key : keys) {
+            version(key);
+        }
+    }
+
+    /**
+     * Computes the signatures of pages, after the site-level processors, e.g. related posts.
+     *
+     * @param pages all pages of site
+     */
+    void record(List<Page> pages) {
+        for (Page page : pages) {
+            if (page instanceof SimplePage) {
+                signatures.put(((SimplePage) page).getOutputPath(), signature((SimplePage) page));
+            }
+        }
+        preRendered = preRenderedSignature(site);
+    }
+
+    /**
+     * Compares with the index of last build, the render records of unaffected pages are
+     * taken over.
+     *
+     * @param pages all pages of site
+     * @return the pages to rebuild
+     */
+    List<Page> findAffected(List<Page> pages) {
+        boolean all = preRendered != null ? !preRendered.equals(last.preRendered) : last.preRendered != null;
+        if (all) {
+            log.info("Pre-rendered templates changed, all pages will be rebuilt.");
+        }
+
+        List<Page> affected = new ArrayList<Page>();
+        for (Page page : pages) {
+            if (!(page instanceof SimplePage)) {
+                affected.add(page);
+                continue;
+            }
+            String path = ((SimplePage) page).getOutputPath();
+            Set<String> keys = last.dependencies.get(path);
+            if (all || keys == null || !signatures.get(path).equals(last.signatures.get(path)) || isChanged(keys)) {
+                affected.add(page);
+            } else {
+                dependencies.put(path, keys);
+            }
+        }
+        return affected;
+    }
+
+    /**
+     * @return the output paths of pages removed since last build
+     */
+    List<String> findRemoved() {
+        List<String> removed = new ArrayList<String>();
+        for (String path : last.signatures.keySet()) {
+            if (!signatures.containsKey(path)) {
+                removed.add(path);
+            }
+        }
+        return removed;
+    }
+
+    private boolean isChanged(Set<String> keys) {
+        for (String key : keys) {
+            String version = last.versions.get(key);
+            if (version == null || UNKNOWN.equals(version) || !version.equals(version(key))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private String version(String key) {
+        String version = versions.get(key);
+        if (version == null) {
+            version = computeVersion(key);
+            versions.put(key, version);
+        }
+        return version;
+    }
+
+    /**
+     * The version of site-wide pages or data, computed outside rendering so the
+     * accesses are not recorded.
+     */
+    private String computeVersion(String key) {
+        StringBuilder sb = new StringBuilder();
+        if (AccessTracker.PAGES.equals(key)) {
+            appendMetaAll(sb, site.getAllPages());
+        } else if (AccessTracker.COLLECTIONS.equals(key)) {
+            for (Map.Entry<String, Collection> entry : site.getCollections().entrySet()) {
+                sb.append('|').append(entry.getKey());
+                appendMetaAll(sb, entry.getValue().getPages());
+            }
+        } else if (key.startsWith(AccessTracker.COLLECTION)) {
+            Collection collection = site.getCollections().get(key.substring(AccessTracker.COLLECTION.length()));
+            if (collection != null) {
+                appendMetaAll(sb, collection.getPages());
+            }
+        } else if (AccessTracker.STATIC_FILES.equals(key)) {
+            for (StaticFile staticFile : site.getStaticFiles()) {
+                sb.append('|').append(staticFile.getOutputFile(site.getDestination()).getPath());
+                if (staticFile instanceof StaticFileImpl) {
+                    appendStamp(sb, ((StaticFileImpl) staticFile).getSourceEntry());
+                }
+            }
+        } else if (key.startsWith(AccessTracker.DATA)) {
+            if (!appendData(sb, site.get(key.substring(AccessTracker.DATA.length())))) {
+                return UNKNOWN;
+            }
+        } else if (key.startsWith(AccessTracker.CONTENT)) {
+            Page page = getPagesByPath().get(key.substring(AccessTracker.CONTENT.length()));
+            if (page == null || page.getSource() == null) {
+                return UNKNOWN;
+            }
+            sb.append(page.getClass().getName());
+            appendStamp(sb, page.getSource().getSourceEntry());
+        } else {
+            return UNKNOWN;
+        }
+        return digest(sb.toString());
+    }
+
+    private Map<String, Page> getPagesByPath() {
+        Map<String, Page> map = pagesByPath;
+        if (map == null) {
+            map = new HashMap<String, Page>();
+            for (Page page : site.getAllPages()) {
+                if (page instanceof SimplePage) {
+                    map.put(((SimplePage) page).getOutputPath(), page);
+                }
+            }
+            pagesByPath = map;
+        }
+        return map;
+    }
+
+    /**
+     * @return false if the value is unknown
+     */
+    private static boolean appendData(StringBuilder sb, Object value) {
+        sb.append('|');
+        if (value == null || value instanceof String || value instanceof Number
+                || value instanceof Boolean || value instanceof Date) {
+            sb.append(value);
+        } else if (value instanceof Page) {
+            appendMeta(sb, (Page) value);
+        } else if (value instanceof MetaTag) {
+            MetaTag metaTag = (MetaTag) value;
+            sb.append(metaTag.getName()).append('/').append(metaTag.getSlug());
+            appendMetaAll(sb, metaTag.getPages());
+        } else if (value instanceof List) {
+            for (Object item : (List<?>) value) {
+                if (!appendData(sb, item)) {
+                    return false;
+                }
+            }
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * The listed pages with their front matter, the content is not included.
+     */
+    private static void appendMetaAll(StringBuilder sb, List<? extends Page> pages) {
+        sb.append("|[");
+        for (Page page : pages) {
+            appendMeta(sb, page);
+        }
+        sb.append(']');
+    }
+
+    private static void appendMeta(StringBuilder sb, Page page) {
+        sb.append('|').append(page.getClass().getName()).append('@').append(page.getUrl())
+                .append('@').append(page.getTitle()).append('@').append(page.getDate());
+        Source source = page.getSource();
+        if (source != null) {
+            sb.append('@').append(new TreeMap<String, Object>(source.getMeta()));
+        }
+    }
+
+    private static void appendStamp(StringBuilder sb, SourceEntry sourceEntry) {
+        sb.append('@').append(sourceEntry.getFile().getPath()).append(':')
+                .append(sourceEntry.getLastModified()).append(':').append(sourceEntry.getLength());
+    }
+
+    private static String signature(SimplePage page) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(page.getClass().getName()).append('|').append(page.getLayout());
+        append(sb, page);
+        Pager pager = page.getPager();
+        if (pager != null) {
+            sb.append("|pager:").append(pager.getPageNumber()).append('/').append(pager.getTotalPages())
+                    .append('/').append(pager.getTotalItems());
+            append(sb, pager.getPrevious());
+            append(sb, pager.getNext());
+            appendAll(sb, pager.getItems());
+        } else {
+            //paginated tag pages list the pager items only
+            Object metaTag = page.get("metaTag");
+            if (metaTag instanceof MetaTag) {
+                appendAll(sb, ((MetaTag) metaTag).getPages());
+            }
+        }
+        append(sb, page.getPrevious());
+        append(sb, page.getNext());
+        Object relatedPosts = page.get("related_posts");
+        if (relatedPosts instanceof List) {
+            appendAll(sb, (List<?>) relatedPosts);
+        }
+        return digest(sb.toString());
+    }
+
+    private static void appendAll(StringBuilder sb, List<?> items) {
+        sb.append("|[");
+        if (items != null) {
+            for (Object item : items) {
+                append(sb, item);
+            }
+        }
+        sb.append(']');
+    }
+
+    /**
+     * The url and the source file of the page, the listing pages change with them.
+     */
+    private static void append(StringBuilder sb, Object item) {
+        sb.append('|');
+        if (!(item instanceof Page)) {
+            sb.append(item);
+            return;
+        }
+        Page page = (Page) item;
+        sb.append(page.getUrl());
+        Source source = page.getSource();
+        if (source != null) {
+            appendStamp(sb, source.getSourceEntry());
+        }
+    }
+
+    /**
+     * @return the checksum of pre-rendered templates, or null if no <code>pre_render</code>
+     * @see PreRenderProcessor
+     */
+    private static String preRenderedSignature(SiteImpl site) {
+        Object preRender = site.get("pre_render");
+        File dir = new File(site.getWorking(), "templates");
+        if (!(preRender instanceof List) || ((List<?>) preRender).isEmpty() || !dir.isDirectory()) {
+            return null;
+        }
+        Map<String, Long> checksums = new TreeMap<String, Long>();
+        for (File file : FileUtils.listFiles(dir, null, true)) {
+            CRC32 crc = new CRC32();
+            try {
+                crc.update(FileUtils.readFileToByteArray(file));
+            } catch (IOException e) {
+                log.debug("Read pre-rendered template failed: " + file, e);
+            }
+            checksums.put(file.getPath(), crc.getValue());
+        }
+        return checksums.toString();
+    }
+
+    private static String digest(String signature) {
+        try {
+            byte[] bytes = MessageDigest.getInstance("MD5").digest(signature.getBytes("UTF-8"));
+            return new BigInteger(1, bytes).toString(16);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
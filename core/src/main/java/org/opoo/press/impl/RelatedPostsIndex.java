@@ -0,0 +1,280 @@
+/*
+ * Copyright 2013-2015 Alex Lin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opoo.press.impl;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.opoo.press.MetaTag;
+import org.opoo.press.Post;
+import org.opoo.press.RelatedPostsFinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Related posts of last build and the categories and tags they were computed from,
+ * saved in the working directory.
+ * <p>Only works for finders based on categories and tags: the related posts of a post
+ * can only change if a post sharing a category or tag with it changed.</p>
+ *
+ * @author Alex Lin
+ * @see RelatedPostsProcessor
+ */
+public class RelatedPostsIndex {
+    private static final Logger log = LoggerFactory.getLogger(RelatedPostsIndex.class);
+    static final String FILE_NAME = ".related-posts";
+
+    private final File file;
+    private final String fingerprint;
+    private Map<String, Entry> entries = new HashMap<String, Entry>();
+    private final Map<String, Post> posts = new HashMap<String, Post>();
+
+    private RelatedPostsIndex(File file, String fingerprint) {
+        this.file = file;
+        this.fingerprint = fingerprint;
+    }
+
+    /**
+     * @param finder related posts finder
+     * @return true if the results of the finder only depend on categories, tags and dates
+     */
+    public static boolean supports(RelatedPostsFinder finder) {
+        return finder instanceof CosineSimilarityRelatedPostsFinder
+                || finder instanceof SimpleRelatedPostsFinder;
+    }
+
+    /**
+     * @param working working directory of site
+     * @param finder the finder, its string representation identifies the algorithm and its settings
+     * @return index of last build, empty if not exists or the finder changed
+     */
+    public static RelatedPostsIndex load(File working, RelatedPostsFinder finder) {
+        RelatedPostsIndex index = new RelatedPostsIndex(new File(working, FILE_NAME), finder.toString());
+        if (!index.file.exists()) {
+            return index;
+        }
+
+        ObjectInputStream ois = null;
+        try {
+            ois = new ObjectInputStream(new BufferedInputStream(new FileInputStream(index.file)));
+            if (!index.fingerprint.equals(ois.readUTF())) {
+                log.info("Related posts finder changed, processing all posts.");
+                return index;
+            }
+            int count = ois.readInt();
+            for (int i = 0; i < count; i++) {
+                Entry entry = new Entry();
+                String id = ois.readUTF();
+                entry.time = ois.readLong();
+                entry.categories = readStrings(ois);
+                entry.tags = readStrings(ois);
+                entry.relatedPosts = readStrings(ois);
+                index.entries.put(id, entry);
+            }
+        } catch (IOException e) {
+            log.warn("Unable to load related posts index, processing all posts: " + e.getMessage());
+            index.entries.clear();
+        } finally {
+            IOUtils.closeQuietly(ois);
+        }
+        return index;
+    }
+
+    /**
+     * Compare current posts with last build.
+     *
+     * @param currentPosts all posts of current build
+     * @return posts whose related posts need to be found again
+     */
+    public Set<Post> update(List<Post> currentPosts) {
+        Map<String, Entry> previous = entries;
+        entries = new HashMap<String, Entry>();
+        posts.clear();
+
+        Set<Post> affected = Collections.newSetFromMap(new IdentityHashMap<Post, Boolean>());
+        Set<String> changedTerms = new HashSet<String>();
+        for (Post post : currentPosts) {
+            String id = post.getId();
+            Entry entry = new Entry();
+            entry.time = post.getDate() != null ? post.getDate().getTime() : 0;
+            entry.categories = slugs(post.getCategories());
+            entry.tags = slugs(post.getTags());
+
+            Entry old = previous.remove(id);
+            if (old == null || !entry.sameInputs(old)) {
+                affected.add(post);
+                entry.addTerms(changedTerms);
+                if (old != null) {
+                    old.addTerms(changedTerms);
+                }
+            } else {
+                entry.relatedPosts = old.relatedPosts;
+            }
+            entries.put(id, entry);
+            posts.put(id, post);
+        }
+
+        //removed posts
+        for (Entry old : previous.values()) {
+            old.addTerms(changedTerms);
+        }
+
+        if (!changedTerms.isEmpty()) {
+            for (Post post : currentPosts) {
+                if (!affected.contains(post) && entries.get(post.getId()).hasAnyTerm(changedTerms)) {
+                    affected.add(post);
+                }
+            }
+        }
+        return affected;
+    }
+
+    /**
+     * @param post post not affected by changes
+     * @return related posts of last build, or null if not available
+     */
+    public List<Post> getRelatedPosts(Post post) {
+        Entry entry = entries.get(post.getId());
+        if (entry == null || entry.relatedPosts == null) {
+            return null;
+        }
+        List<Post> list = new ArrayList<Post>(entry.relatedPosts.length);
+        for (String id : entry.relatedPosts) {
+            Post relatedPost = posts.get(id);
+            if (relatedPost == null) {
+                return null;
+            }
+            list.add(relatedPost);
+        }
+        return list;
+    }
+
+    public void setRelatedPosts(Post post, List<Post> relatedPosts) {
+        Entry entry = entries.get(post.getId());
+        if (entry == null) {
+            return;
+        }
+        if (relatedPosts == null) {
+            entry.relatedPosts = new String[0];
+            return;
+        }
+        entry.relatedPosts = new String[relatedPosts.size()];
+        for (int i = 0; i < relatedPosts.size(); i++) {
+            entry.relatedPosts[i] = relatedPosts.get(i).getId();
+        }
+    }
+
+    public void save() {
+        ObjectOutputStream oos = null;
+        try {
+            oos = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+            oos.writeUTF(fingerprint);
+            oos.writeInt(entries.size());
+            for (Map.Entry<String, Entry> en : entries.entrySet()) {
+                Entry entry = en.getValue();
+                oos.writeUTF(en.getKey());
+                oos.writeLong(entry.time);
+                writeStrings(oos, entry.categories);
+                writeStrings(oos, entry.tags);
+                writeStrings(oos, entry.relatedPosts != null ? entry.relatedPosts : new String[0]);
+            }
+            oos.flush();
+        } catch (IOException e) {
+            //processing all posts in next build
+            log.warn("Unable to save related posts index: " + e.getMessage());
+            IOUtils.closeQuietly(oos);
+            FileUtils.deleteQuietly(file);
+        } finally {
+            IOUtils.closeQuietly(oos);
+        }
+    }
+
+    private static String[] slugs(List<? extends MetaTag> metaTags) {
+        String[] slugs = new String[metaTags.size()];
+        for (int i = 0; i < slugs.length; i++) {
+            slugs[i] = metaTags.get(i).getSlug();
+        }
+        return slugs;
+    }
+
+    private static String[] readStrings(ObjectInputStream ois) throws IOException {
+        String[] strings = new String[ois.readInt()];
+        for (int i = 0; i < strings.length; i++) {
+            strings[i] = ois.readUTF();
+        }
+        return strings;
+    }
+
+    private static void writeStrings(ObjectOutputStream oos, String[] strings) throws IOException {
+        oos.writeInt(strings.length);
+        for (String string : strings) {
+            oos.writeUTF(string);
+        }
+    }
+
+    private static class Entry {
+        private long time;
+        private String[] categories;
+        private String[] tags;
+        private String[] relatedPosts;
+
+        private boolean sameInputs(Entry other) {
+            return time == other.time
+                    && Arrays.equals(categories, other.categories)
+                    && Arrays.equals(tags, other.tags);
+        }
+
+        private void addTerms(Set<String> terms) {
+            for (String category : categories) {
+                terms.add("c:" + category);
+            }
+            for (String tag : tags) {
+                terms.add("t:" + tag);
+            }
+        }
+
+        private boolean hasAnyTerm(Set<String> terms) {
+            for (String category : categories) {
+                if (terms.contains("c:" + category)) {
+                    return true;
+                }
+            }
+            for (String tag : tags) {
+                if (terms.contains("t:" + tag)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -15,21 +15,29 @@
  */
 package org.opoo.press.impl;
 
+import com.google.common.collect.Lists;
 import org.opoo.press.Collection;
 import org.opoo.press.Post;
 import org.opoo.press.ProcessorAdapter;
 import org.opoo.press.RelatedPostsFinder;
 import org.opoo.press.Site;
+import org.opoo.press.task.CallableTask;
+import org.opoo.press.task.TaskExecutor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * @author Alex Lin
  */
 public class RelatedPostsProcessor extends ProcessorAdapter{
     private static final Logger log = LoggerFactory.getLogger(RelatedPostsProcessor.class);
+    private static final int CHUNK_SIZE = 64;
 
     @Override
     public void preRender(Site site) {
@@ -43,6 +51,23 @@ public class RelatedPostsProcessor extends ProcessorAdapter{
             log.info("Processing related posts by '{}'.", postsFinder.getClass().getName());
 
             List<Post> posts = (List<Post>) collection.getPages();
+            if(RelatedPostsIndex.supports(postsFinder)){
+                processIncrementally(site, postsFinder, posts);
+                return;
+            }
+
+            if(postsFinder instanceof BatchRelatedPostsFinder){
+                TaskExecutor taskExecutor = TaskExecutor.forSite(site);
+                Map<Post, List<Post>> map = ((BatchRelatedPostsFinder) postsFinder).findRelatedPosts(posts, taskExecutor);
+                for(Post post: posts){
+                    List<Post> relatedPosts = map.get(post);
+                    if(relatedPosts != null && !relatedPosts.isEmpty()){
+                        post.set("related_posts", relatedPosts);
+                    }
+                }
+                return;
+            }
+
             for(Post post: posts){
                 List<Post> relatedPosts = postsFinder.findRelatedPosts(post);
                 if(relatedPosts != null && !relatedPosts.isEmpty()){
@@ -51,4 +76,61 @@ public class RelatedPostsProcessor extends ProcessorAdapter{
             }
         }
     }
+
+    /**
+     * Only find related posts of the posts affected by changed categories and tags,
+     * reuse the results of last build for others.
+     */
+    private void processIncrementally(Site site, final RelatedPostsFinder postsFinder, List<Post> posts){
+        RelatedPostsIndex index = RelatedPostsIndex.load(site.getWorking(), postsFinder);
+        Set<Post> affected = index.update(posts);
+        log.info("Finding related posts for {} of {} posts.", affected.size(), posts.size());
+
+        TaskExecutor taskExecutor = TaskExecutor.forSite(site);
+        Map<Post, List<Post>> map;
+        if(affected.size() == posts.size() && postsFinder instanceof BatchRelatedPostsFinder){
+            map = ((BatchRelatedPostsFinder) postsFinder).findRelatedPosts(posts, taskExecutor);
+        }else{
+            map = new IdentityHashMap<Post, List<Post>>();
+            CallableTask<List<Post>, Map<Post, List<Post>>> task = new CallableTask<List<Post>, Map<Post, List<Post>>>() {
+                @Override
+                public Map<Post, List<Post>> call(List<Post> chunk) {
+                    Map<Post, List<Post>> result = new IdentityHashMap<Post, List<Post>>();
+                    for(Post post: chunk){
+                        result.put(post, postsFinder.findRelatedPosts(post));
+                    }
+                    return result;
+                }
+            };
+
+            List<List<Post>> chunks = Lists.partition(new ArrayList<Post>(affected), CHUNK_SIZE);
+            if(taskExecutor != null){
+                for(Map<Post, List<Post>> result: taskExecutor.call(chunks, task)){
+                    map.putAll(result);
+                }
+            }else{
+                for(List<Post> chunk: chunks){
+                    map.putAll(task.call(chunk));
+                }
+            }
+        }
+
+        for(Post post: posts){
+            List<Post> relatedPosts;
+            if(affected.contains(post)){
+                relatedPosts = map.get(post);
+            }else{
+                relatedPosts = index.getRelatedPosts(post);
+                if(relatedPosts == null){
+                    relatedPosts = postsFinder.findRelatedPosts(post);
+                }
+            }
+
+            index.setRelatedPosts(post, relatedPosts);
+            if(relatedPosts != null && !relatedPosts.isEmpty()){
+                post.set("related_posts", relatedPosts);
+            }
+        }
+        index.save();
+    }
 }
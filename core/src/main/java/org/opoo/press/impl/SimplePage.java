@@ -29,6 +29,8 @@ import org.opoo.press.Pager;
 import org.opoo.press.Site;
 import org.opoo.press.Source;
 import org.opoo.press.Tag;
+import org.opoo.press.highlighter.HighlightTracker;
+import org.opoo.press.output.MemoryOutputStore;
 import org.opoo.util.MapUtils;
 import org.opoo.util.URLUtils;
 import org.slf4j.Logger;
@@ -37,6 +39,7 @@ import org.slf4j.LoggerFactory;
 import javax.cache.Cache;
 import java.io.File;
 import java.io.IOException;
+import java.io.UnsupportedEncodingException;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
@@ -74,6 +77,8 @@ public class SimplePage implements Page{
     private boolean renderSkip;
     private boolean urlEncode;
     private boolean urlDecode;
+    private boolean upToDate;
+    private Boolean highlightCodeBlock;
     private Converter converter;
 
     private final ContentHolder contentHolder;
@@ -112,6 +117,17 @@ public class SimplePage implements Page{
         if(SimplePage.class.equals(page.getClass())){
             SimplePage sp = (SimplePage)page;
             this.data = new LinkedHashMap<String, Object>(sp.data);
+        }
+        copyUrl(page);
+    }
+
+    /**
+     * Copy url from the specified page.
+     * @param page the page
+     */
+    protected void copyUrl(Page page){
+        if(SimplePage.class.equals(page.getClass())){
+            SimplePage sp = (SimplePage)page;
             this.originalUrl = sp.originalUrl;
             this.url = sp.url;
         }else{
@@ -130,6 +146,7 @@ public class SimplePage implements Page{
 
     @Override
     public String getContent(){
+        AccessTracker.contentAccessed(this);
         return contentHolder.getContent();
     }
 
@@ -208,10 +225,45 @@ public class SimplePage implements Page{
 
     @Override
     public void convert() {
+        if(upToDate){
+            return;
+        }
         Converter c = getConverter();
         if(c != null){
+            HighlightTracker.reset();
             setContent(c.convert(getContent()));
         }
+        highlightCodeBlock = detectHighlightCodeBlock(getContent(), c != null && HighlightTracker.isEmitted());
+    }
+
+    /**
+     * Determine the converted content contains highlight code block or not, called
+     * in converting stage so rendering need not to scan the content again.
+     *
+     * @param content the converted content
+     * @param emitted the converter has emitted highlight code block while converting
+     * @return true if the content contains highlight code block
+     */
+    protected boolean detectHighlightCodeBlock(String content, boolean emitted){
+        if(emitted){
+            return true;
+        }
+        Highlighter highlighter = getSite().getFactory().getHighlighter();
+        return highlighter != null && highlighter.containsHighlightCodeBlock(content);
+    }
+
+    /**
+     * @return the converted content contains highlight code block or not, null if unknown
+     */
+    protected Boolean getContentHighlightCodeBlock(){
+        return highlightCodeBlock;
+    }
+
+    /**
+     * @return the excerpt contains highlight code block or not, null if unknown
+     */
+    protected Boolean getExcerptHighlightCodeBlock(){
+        return null;
     }
 
     public SimplePage encodeUrl(){
@@ -229,6 +281,75 @@ public class SimplePage implements Page{
         return this;
     }
 
+    /**
+     * Marks the output file of last build is still valid, converting, rendering and
+     * writing of this page will be skipped. Ignored if the output file not exists, or
+     * the pages are written to {@link MemoryOutputStore}, which keeps the pages written
+     * in each build only.
+     *
+     * @param upToDate output file is up to date or not
+     * @return this page
+     */
+    public SimplePage setUpToDate(boolean upToDate){
+        this.upToDate = upToDate && site.get(MemoryOutputStore.NAME) == null
+                && getOutputFile(site.getDestination()).exists();
+        return this;
+    }
+
+    public boolean isUpToDate(){
+        return upToDate;
+    }
+
+    /**
+     * Restores the content from source, so the page can be converted and rendered
+     * again.
+     *
+     * @return false if the page has no source content
+     * @see LazyPageLoader
+     */
+    boolean resetContent(){
+        Source source = getSource();
+        if(source == null || source.getContent() == null){
+            return false;
+        }
+        upToDate = false;
+        highlightCodeBlock = null;
+        setContent(source.getContent());
+        return true;
+    }
+
+    /**
+     * @return true if the content not changed since read from source, can be converted
+     * to the same content
+     */
+    boolean isSourceContent(){
+        Source source = getSource();
+        return source != null && source.getContent() != null && source.getContent().equals(getContent());
+    }
+
+    /**
+     * @return the state of this page after converted
+     * @see RebuildIndex
+     */
+    Converted getConverted(){
+        return new Converted(getSource(), getClass(), getContent(), highlightCodeBlock);
+    }
+
+    /**
+     * Restores the state after converted in last build, instead of converting again.
+     *
+     * @param converted the state of the page with same output path in last build
+     * @return false if the page not read from the same source
+     */
+    boolean restoreConverted(Converted converted){
+        if(converted.source != getSource() || converted.pageClass != getClass()){
+            return false;
+        }
+        setContent(converted.content);
+        highlightCodeBlock = converted.highlightCodeBlock;
+        return true;
+    }
+
     protected Converter getConverter(){
         return converter;
     }
@@ -247,7 +368,7 @@ public class SimplePage implements Page{
 
     @Override
     public void render(Map<String, Object> rootMap) {
-        if(renderSkip){
+        if(renderSkip || upToDate){
             return;
         }
 
@@ -288,7 +409,8 @@ public class SimplePage implements Page{
      * @param highlighter the Highlighter
      */
     protected boolean containsHighlightCodeBlock(Highlighter highlighter) {
-        boolean contains = highlighter.containsHighlightCodeBlock(getContent());
+        boolean contains = highlightCodeBlock != null ? highlightCodeBlock
+                : highlighter.containsHighlightCodeBlock(getContent());
         if(contains){
             return true;
         }
@@ -300,8 +422,10 @@ public class SimplePage implements Page{
             if (items != null) {
                 for (Object p : items) {
                     if (p instanceof Excerptable) {
-                        String excerpt = ((Excerptable) p).getExcerpt();
-                        if (highlighter.containsHighlightCodeBlock(excerpt)) {
+                        //converted post knows it already
+                        Boolean flag = (p instanceof SimplePage) ? ((SimplePage) p).getExcerptHighlightCodeBlock() : null;
+                        if (flag != null ? flag
+                                : highlighter.containsHighlightCodeBlock(((Excerptable) p).getExcerpt())) {
                             if(log.isDebugEnabled() && p instanceof Base){
                                 log.debug("Found highlighter code block in post excerpt: " + ((Base) p).getUrl());
                             }
@@ -318,6 +442,22 @@ public class SimplePage implements Page{
 
     @Override
     public void write(File dest) {
+        if(upToDate){
+            log.debug("Output file is up to date, skip writing: {}", getUrl());
+            return;
+        }
+        MemoryOutputStore outputStore = site.get(MemoryOutputStore.NAME);
+        if(outputStore != null){
+            log.debug("Writing to memory [{}]", getUrl());
+            String content = getContent();
+            try {
+                outputStore.put(getOutputPath(), content != null ? content.getBytes("UTF-8") : new byte[0]);
+            } catch (UnsupportedEncodingException e) {
+                throw new IllegalStateException(e);
+            }
+            return;
+        }
+
         File file = getOutputFile(dest);
         try {
             file.getParentFile().mkdirs();
@@ -330,12 +470,23 @@ public class SimplePage implements Page{
         }
     }
 
-    protected File getOutputFile(File dest) {
+    /**
+     * @param dest the destination directory
+     * @return the output file of this page
+     */
+    public File getOutputFile(File dest) {
+        return new File(dest, getOutputPath());
+    }
+
+    /**
+     * @return the path of output file relative to destination directory
+     */
+    protected String getOutputPath() {
         String url = getUrlForOutputFile();
         if(url.endsWith("/")){
             url += "index" + getOutputFileExtension();
         }
-        return new File(dest, url);
+        return url;
     }
 
     protected String getUrlForOutputFile(){
@@ -496,6 +647,25 @@ public class SimplePage implements Page{
         return getPage(this, targetPageNumber);
     }
 
+    /**
+     * The converted content of a page.
+     */
+    static class Converted {
+        private final Source source;
+        private final Class<?> pageClass;
+        private final String content;
+        private final Boolean highlightCodeBlock;
+        String excerpt;
+        Boolean excerptHighlightCodeBlock;
+
+        Converted(Source source, Class<?> pageClass, String content, Boolean highlightCodeBlock) {
+            this.source = source;
+            this.pageClass = pageClass;
+            this.content = content;
+            this.highlightCodeBlock = highlightCodeBlock;
+        }
+    }
+
     public interface ContentHolder {
         String getContent();
         void setContent(String content);
@@ -15,6 +15,7 @@
  */
 package org.opoo.press.impl;
 
+import com.google.common.base.MoreObjects;
 import org.opoo.press.Category;
 import org.opoo.press.Config;
 import org.opoo.press.ConfigAware;
@@ -113,4 +114,14 @@ public class SimpleRelatedPostsFinder implements RelatedPostsFinder, ConfigAware
 			}
 		}
 	}
+
+	/**
+	 * Identifies the algorithm and its settings, used by {@link RelatedPostsIndex}.
+	 */
+	@Override
+	public String toString() {
+		return MoreObjects.toStringHelper(this)
+				.add("size", size)
+				.toString();
+	}
 }
@@ -41,9 +41,13 @@ import org.opoo.press.StaticFile;
 import org.opoo.press.Theme;
 import org.opoo.press.ThemeCompiler;
 import org.opoo.press.Writable;
+import org.opoo.press.file.Result;
+import org.opoo.press.output.FilePublisher;
+import org.opoo.press.output.MemoryOutputStore;
 import org.opoo.press.source.CachedSourceParserWrapper;
 import org.opoo.press.task.RunnableTask;
 import org.opoo.press.task.TaskExecutor;
+import org.opoo.press.task.TaskExecutorProvider;
 import org.opoo.press.util.StaleUtils;
 import org.opoo.util.PathUtils;
 import org.slf4j.Logger;
@@ -54,7 +58,6 @@ import javax.cache.CacheManager;
 import javax.cache.Caching;
 import java.io.File;
 import java.io.FileFilter;
-import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLClassLoader;
@@ -64,18 +67,24 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 
 
 /**
  * @author Alex Lin
  *
  */
-public class SiteImpl implements Site, SiteBuilder{
+public class SiteImpl implements Site, SiteBuilder, TaskExecutorProvider{
 	private static final Logger log = LoggerFactory.getLogger(SiteImpl.class);
+	private static final List<String> DEFAULT_FINGERPRINT_EXTENSIONS = Arrays.asList(
+			"css", "js", "png", "jpg", "jpeg", "gif", "svg", "webp", "woff", "woff2", "ttf", "eot");
 
 	private SiteConfigImpl config;
 	private Map<String, Object> data;
@@ -92,6 +101,7 @@ public class SiteImpl implements Site, SiteBuilder{
 	private Renderer renderer;
 	private Locale locale;
 	private TaskExecutor taskExecutor;
+	private FilePublisher filePublisher;
 	private Theme theme;
 //	private boolean setup = false;
 	private ProcessorsProcessor processors;
@@ -100,6 +110,10 @@ public class SiteImpl implements Site, SiteBuilder{
 	private String dateFormatPattern;
 	private Map<String,Collection> collections;
 	private List<Page> allPages;
+	private boolean built = false;
+	private LazyPageLoader lazyPageLoader;
+	private AssetFingerprints assetFingerprints;
+	private volatile RebuildIndex rebuildIndex;
 
     private CacheManager cacheManager;
     private Cache<String,Source> sourceCache;
@@ -207,18 +221,26 @@ public class SiteImpl implements Site, SiteBuilder{
 
 		// only asset file(s) changed.
 		List<File> staleAssets = StaleUtils.getStaleAssets(this);
+		if(staleAssets != null && config.get("asset_fingerprint", false)){
+			//fingerprints changed, the pages referencing them too
+			buildInternal();
+			return;
+		}
 		if(staleAssets != null){
+			//publish the files of asset directory to destination directory, a hard linked
+			//file must not be overwritten in place
+			SourceEntryVisitor visitor = new SourceEntryVisitor() {
+				@Override
+				public void visit(SourceEntry sourceEntry) {
+					new StaticFileImpl(SiteImpl.this, sourceEntry).write(dest);
+				}
+			};
 			for(File staleAsset: staleAssets){
-				//copy asset directory to destination directory
 				log.info("Copying stale asset: {}...", staleAsset);
-				try {
-					FileUtils.copyDirectory(staleAsset, dest, buildFilter());
-					StaleUtils.saveLastBuildInfo(this);
-					return;
-				} catch (IOException e) {
-					throw new RuntimeException("Copy stale asset exception: " + staleAsset, e);
-				}
+				factory.getSourceEntryLoader().walkSourceTree(staleAsset, buildFilter(), visitor);
 			}
+			StaleUtils.saveLastBuildInfo(this);
+			return;
 		}
 
 		log.info("Nothing to build - all site output files are up to date.");
@@ -239,21 +261,287 @@ public class SiteImpl implements Site, SiteBuilder{
 //			setup();
 //		}
 
+		//pages in memory are not valid until this build finished
+		built = false;
+		MemoryOutputStore outputStore = config.get(MemoryOutputStore.NAME);
+		closeLazyPageLoader(outputStore);
+		if(isLazyRender()){
+			buildLazily(outputStore);
+			return;
+		}
+		rebuildIndex = newRebuildIndex();
+
 		reset();
         prepare();
-        read();
+		try {
+			read(rebuildIndex);
+			taskExecutor.checkCancelled();
+			generate();
+			taskExecutor.checkCancelled();
+			convert();
+			taskExecutor.checkCancelled();
+			render();
+			taskExecutor.checkCancelled();
+			cleanup();
+			write();
+		} finally {
+			close();
+		}
+		if(rebuildIndex != null){
+			rebuildIndex.record(allPages);
+		}
+
+		if(outputStore != null){
+			//pages are not written to destination directory
+			StaleUtils.deleteLastBuildInfo(this);
+		}else{
+			StaleUtils.saveLastBuildInfo(this);
+		}
+		built = true;
+	}
+
+	/**
+	 * Reads the sources and generates the pages only, the pages are rendered when
+	 * requested from the output store. Static files are copied as usual.
+	 * <p>The <code>cache</code> option is not supported, the cached contents are cleared
+	 * after each build, but the pages are rendered later.</p>
+	 *
+	 * @see LazyPageLoader
+	 */
+	private void buildLazily(MemoryOutputStore outputStore){
+		if(config.get("cache", false)){
+			log.warn("Option 'cache' is not supported by lazy rendering, ignored.");
+		}
+		rebuildIndex = newRebuildIndex();
+		reset();
+		read(rebuildIndex);
+		taskExecutor.checkCancelled();
 		generate();
-		convert();
-		render();
+		taskExecutor.checkCancelled();
+		processors.preRender(this);
+		renderer.prepare();
+		if(rebuildIndex != null){
+			rebuildIndex.record(allPages);
+		}
+
 		cleanup();
-		write();
-        close();
+		writeStaticFiles();
+
+		outputStore.clear();
+		lazyPageLoader = new LazyPageLoader(this, processors);
+		outputStore.setLoader(lazyPageLoader);
+		log.info("{} pages will be rendered on demand.", allPages.size());
+
+		StaleUtils.deleteLastBuildInfo(this);
+		built = true;
+	}
+
+	/**
+	 * Detaches the loader of last build before the pages are rebuilt, and waits for
+	 * the page it is rendering. The pages are not loaded until the build finished.
+	 */
+	private void closeLazyPageLoader(MemoryOutputStore outputStore){
+		if(lazyPageLoader != null){
+			outputStore.setLoader(null);
+			lazyPageLoader.close();
+			lazyPageLoader = null;
+		}
+	}
+
+	private void writeStaticFiles(){
+		dest.mkdirs();
+		log.info("Writing {} static files to {}...", staticFiles.size(), dest);
+		taskExecutor.run(staticFiles, new RunnableTask<StaticFile>() {
+			public void run(StaticFile staticFile) {
+				staticFile.write(dest);
+			}
+		});
+	}
 
-		StaleUtils.saveLastBuildInfo(this);
+	private RebuildIndex newRebuildIndex(){
+		if(config.get("incremental_preview", true)){
+			return new RebuildIndex(this);
+		}
+		return null;
 	}
 
+	/**
+	 * Rebuilds the site in preview incrementally. Only the changed sources are parsed and
+	 * converted again, the other pages take over the sources and the converted contents
+	 * of last build. The pages are generated again and the site-level processors run as
+	 * in a full build, e.g. related posts and pagination. Only the pages affected by the
+	 * changes are rendered and written, see {@link RebuildIndex}.
+	 * <p>Changed templates or files outside source directories require a full build.</p>
+	 * <p>The affected pages are invalidated only if they are rendered on demand.</p>
+	 *
+	 * @param result the changed files
+	 * @return false if the changes can not be rebuilt incrementally
+	 */
+	boolean rebuild(Result result){
+		RebuildIndex lastBuild = rebuildIndex;
+		if(!built || lastBuild == null){
+			return false;
+		}
+		for(File file: getChangedFiles(result)){
+			if(!isInSources(file)){
+				log.debug("Not a source file, full build required: {}", file);
+				return false;
+			}
+		}
+
+		MemoryOutputStore outputStore = config.get(MemoryOutputStore.NAME);
+		boolean lazy = lazyPageLoader != null;
+		built = false;
+		RebuildIndex index = new RebuildIndex(this, lastBuild, getChangedFiles(result));
+		rebuildIndex = index;
+		closeLazyPageLoader(outputStore);
+
+		reset();
+		prepare();
+		try {
+			rebuild(index, lastBuild, outputStore, lazy);
+		} finally {
+			close();
+			index.releaseLastBuild(allPages);
+		}
+		built = true;
+		return true;
+	}
+
+	private void rebuild(RebuildIndex index, RebuildIndex lastBuild, MemoryOutputStore outputStore, boolean lazy){
+		read(index);
+		taskExecutor.checkCancelled();
+		generate();
+		taskExecutor.checkCancelled();
+		for(Page page: allPages){
+			if(page instanceof SimplePage){
+				//may be marked by incremental pagination, affected pages are found below
+				((SimplePage) page).setUpToDate(false);
+			}
+		}
+		if(!lazy){
+			convert();
+			taskExecutor.checkCancelled();
+		}
+		processors.preRender(this);
+
+		index.record(allPages);
+		List<Page> affected = index.findAffected(allPages);
+		List<String> removed = index.findRemoved();
+
+		if(lazy){
+			for(Page page: affected){
+				if(page instanceof SimplePage){
+					outputStore.remove(((SimplePage) page).getOutputPath());
+				}
+			}
+			for(String path: removed){
+				outputStore.remove(path);
+			}
+			renderer.prepare();
+			cleanup();
+			writeStaticFiles();
+			lazyPageLoader = new LazyPageLoader(this, processors);
+			outputStore.setLoader(lazyPageLoader);
+			log.info("Invalidated {} of {} pages, will be rendered on demand.", affected.size(), allPages.size());
+			return;
+		}
+
+		//the outputs of other pages are still valid
+		Set<Page> set = Collections.newSetFromMap(new IdentityHashMap<Page, Boolean>());
+		set.addAll(affected);
+		for(Page page: allPages){
+			if(set.contains(page) || !(page instanceof SimplePage)){
+				continue;
+			}
+			SimplePage simplePage = (SimplePage) page;
+			boolean exists;
+			if(outputStore != null){
+				exists = outputStore.contains(simplePage.getOutputPath());
+			}else{
+				exists = simplePage.setUpToDate(true).isUpToDate();
+			}
+			if(!exists){
+				affected.add(page);
+			}
+		}
+
+		render(affected);
+		taskExecutor.checkCancelled();
+		if(outputStore != null){
+			for(String path: removed){
+				outputStore.remove(path);
+			}
+			write(affected, false);
+		}else{
+			cleanup();
+			write();
+			StaleUtils.saveLastBuildInfo(this);
+		}
+
+		log.info("Rebuilt {} of {} pages.", affected.size(), allPages.size());
+	}
+
+	private List<File> getChangedFiles(Result result){
+		List<File> files = new ArrayList<File>(result.getCreatedFiles());
+		files.addAll(result.getUpdatedFiles());
+		files.addAll(result.getDeletedFiles());
+		return files;
+	}
+
+	private boolean isInSources(File file){
+		String path = file.getAbsolutePath();
+		for(File source: sources){
+			if(path.startsWith(source.getAbsolutePath() + File.separator)){
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Renders the page and records the site-wide pages and data it accesses, for
+	 * incremental rebuilding.
+	 *
+	 * @return true if the page accessed the site-wide pages or data
+	 * @see AccessTracker
+	 * @see RebuildIndex
+	 */
+	boolean renderPage(Page page, Map<String, Object> rootMap){
+		Set<String> keys;
+		AccessTracker.start(page);
+		try{
+			page.render(rootMap);
+		}finally{
+			keys = AccessTracker.stop();
+		}
+		RebuildIndex index = rebuildIndex;
+		if(index != null && page instanceof SimplePage && !((SimplePage) page).isUpToDate()){
+			index.rendered((SimplePage) page, keys);
+		}
+		return !keys.isEmpty();
+	}
+
+	/**
+	 * Converts the page, the converted content of last build is taken over in
+	 * incremental rebuilding if the source not changed.
+	 */
+	void convertPage(Page page){
+		RebuildIndex index = rebuildIndex;
+		if(index != null && page instanceof SimplePage){
+			index.convert((SimplePage) page);
+		}else{
+			page.convert();
+		}
+		processors.postConvert(this, page);
+	}
+
+    private boolean isLazyRender(){
+        return config.get(MemoryOutputStore.NAME) != null && config.get("lazy_render", false);
+    }
+
     void prepare() {
-        boolean cache = config.get("cache", false);
+        boolean cache = config.get("cache", false) && !isLazyRender();
         if(cache){
             cacheManager = Caching.getCachingProvider().getCacheManager();
             sourceCache = cacheManager.getCache("sources");
@@ -322,6 +610,7 @@ public class SiteImpl implements Site, SiteBuilder{
 		//object instances
 		classLoader = createClassLoader(config, theme);
 		taskExecutor = new TaskExecutor(config);
+		filePublisher = new FilePublisher(config);
 		factory = FactoryImpl.createInstance(this);
 
 		processors = new ProcessorsProcessor(factory.getPluginManager().getProcessors());
@@ -397,11 +686,15 @@ public class SiteImpl implements Site, SiteBuilder{
 	}
 
 	void read(){
+		read(null);
+	}
+
+	private void read(RebuildIndex index){
 		log.info("Reading sources...");
 
         final FileFilter fileFilter = buildFilter();
         final SourceEntryLoader sourceEntryLoader = factory.getSourceEntryLoader();
-        final SourceParser sourceParser = getSourceParser();//factory.getSourceParser();
+        final SourceParser sourceParser = index != null ? index.wrap(getSourceParser()) : getSourceParser();
 
         final SourceEntryVisitor sourceVisitor = new SourceEntryVisitor() {
             @Override
@@ -442,6 +735,12 @@ public class SiteImpl implements Site, SiteBuilder{
 
         taskExecutor.run(tasks);
 
+		//before processors, the fingerprints are checked by incremental pagination
+		if(config.get("asset_fingerprint", false)){
+			fingerprintAssets();
+		}else{
+			assetFingerprints = null;
+		}
 		processors.postRead(this);
 
         log.debug("Read {} pages.", allPages.size());
@@ -537,14 +836,24 @@ public class SiteImpl implements Site, SiteBuilder{
 		processors.postGenerate(this);
 	}
 
+	/**
+	 * @see AssetFingerprints
+	 */
+	private void fingerprintAssets(){
+		if(assetFingerprints == null){
+			assetFingerprints = new AssetFingerprints(working);
+		}
+		List<String> extensions = config.get("asset_fingerprint_extensions", DEFAULT_FINGERPRINT_EXTENSIONS);
+		assetFingerprints.fingerprint(staticFiles, extensions, taskExecutor);
+	}
+
 
 	void convert(){
 		log.info("Converting {} pages...", allPages.size());
 		taskExecutor.run(allPages, new RunnableTask<Page>() {
 			public void run(Page page) {
 				log.debug("Converting page: {}", page.getUrl());
-				page.convert();
-				processors.postConvert(SiteImpl.this, page);
+				convertPage(page);
 			}
 		});
 		processors.postConvert(this);
@@ -552,15 +861,19 @@ public class SiteImpl implements Site, SiteBuilder{
 
 	void render(){
 		processors.preRender(this);
+		render(allPages);
+	}
+
+	private void render(List<Page> pages){
 		final Map<String, Object> rootMap = buildRootMap();
 		renderer.prepare();
 
-		log.info("Rendering {} pages...", allPages.size());
-		taskExecutor.run(allPages, new RunnableTask<Page>() {
+		log.info("Rendering {} pages...", pages.size());
+		taskExecutor.run(pages, new RunnableTask<Page>() {
             public void run(Page page) {
                 log.debug("Rendering page: {}", page.getUrl());
 
-                page.render(rootMap);
+                renderPage(page, rootMap);
                 processors.postRender(SiteImpl.this, page);
             }
         });
@@ -576,6 +889,9 @@ public class SiteImpl implements Site, SiteBuilder{
 		map.put("opoopress", config.get("opoopress"));
 		
 		map.put("theme", theme);
+		if(assetFingerprints != null){
+			map.put("assets", assetFingerprints);
+		}
 		return map;
 	}
 	
@@ -589,17 +905,30 @@ public class SiteImpl implements Site, SiteBuilder{
 
 		for(StaticFile staticFile: staticFiles){
 			files.add(staticFile.getOutputFile(dest));
+			File fingerprintFile = (staticFile instanceof StaticFileImpl)
+					? ((StaticFileImpl) staticFile).getFingerprintOutputFile(dest) : null;
+			if(fingerprintFile != null){
+				files.add(fingerprintFile);
+			}
 		}
 		
 		log.debug("Files in target: {}", destFiles.size());
 		log.debug("Assets file in src: {}", files.size());
 
-		
+		//pages not changed since last build will not be written again
+		for(Page page: allPages){
+			if(page instanceof SimplePage && ((SimplePage) page).isUpToDate()){
+				files.add(((SimplePage) page).getOutputFile(dest));
+			}
+		}
+
 		//find obsolete files
-		for(File file: files){
-			destFiles.remove(file);
+		destFiles.removeAll(new HashSet<File>(files));
+
+		//keep the compressed files of outputs, they are compressed again only if changed
+		if(config.get("precompress", false)){
+			keepCompressedFiles(destFiles, files);
 		}
-//		destFiles.removeAll(files);
 		
 		log.debug("Files in target will be deleted: {}", destFiles.size());
 
@@ -624,6 +953,25 @@ public class SiteImpl implements Site, SiteBuilder{
 		processors.postCleanup(this);
 	}
 	
+	/**
+	 * @see org.opoo.press.output.PrecompressProcessor
+	 */
+	private void keepCompressedFiles(List<File> destFiles, List<File> files) {
+		Set<File> outputFiles = new HashSet<File>(files);
+		for(Page page: allPages){
+			if(page instanceof SimplePage){
+				outputFiles.add(((SimplePage) page).getOutputFile(dest));
+			}
+		}
+		Iterator<File> it = destFiles.iterator();
+		while(it.hasNext()){
+			String path = it.next().getPath();
+			if(path.endsWith(".gz") && outputFiles.contains(new File(path.substring(0, path.length() - 3)))){
+				it.remove();
+			}
+		}
+	}
+
 	/**
 	 * @param dest
 	 * @return
@@ -649,15 +997,32 @@ public class SiteImpl implements Site, SiteBuilder{
 
 
 	void write(){
+		write(allPages, true);
+	}
+
+	/**
+	 * @param pages the pages to write
+	 * @param all true if all pages of site are written, the other pages in memory
+	 *               output store are removed
+	 */
+	private void write(List<Page> pages, boolean all){
 		dest.mkdirs();
 		
 		List<Writable> list = new ArrayList<Writable>();
-		list.addAll(allPages);
+		list.addAll(pages);
 		if(!staticFiles.isEmpty()){
 			list.addAll(staticFiles);
 		}
 
-        log.info("Writing {} files to {}...", list.size(), dest);
+		MemoryOutputStore outputStore = config.get(MemoryOutputStore.NAME);
+		if(outputStore != null){
+			log.info("Writing {} pages to memory, {} static files to {}...", pages.size(), staticFiles.size(), dest);
+			if(all){
+				outputStore.startBuild();
+			}
+		}else {
+			log.info("Writing {} files to {}...", list.size(), dest);
+		}
 		
 		taskExecutor.run(list, new RunnableTask<Writable>() {
 			public void run(Writable o) {
@@ -665,6 +1030,10 @@ public class SiteImpl implements Site, SiteBuilder{
 			}
 		});
 
+		if(outputStore != null && all){
+			outputStore.finishBuild();
+		}
+
 		processors.postWrite(this);
 	}
 
@@ -673,6 +1042,7 @@ public class SiteImpl implements Site, SiteBuilder{
 	 * @return the pages
 	 */
 	public List<Page> getPages() {
+		AccessTracker.collectionAccessed("page");
 		Collection collection = collections.get("page");
 		if(collection != null){
 			return (List<Page>) collection.getPages();
@@ -684,6 +1054,7 @@ public class SiteImpl implements Site, SiteBuilder{
 	 * @return the posts
 	 */
 	public List<Post> getPosts() {
+		AccessTracker.collectionAccessed("post");
 		Collection collection = collections.get("post");
 		if(collection != null){
 			return (List<Post>) collection.getPages();
@@ -713,11 +1084,13 @@ public class SiteImpl implements Site, SiteBuilder{
 	}
 	
 	public List<StaticFile> getStaticFiles(){
+		AccessTracker.accessed(AccessTracker.STATIC_FILES);
 		return staticFiles;
 	}
 
 	@Override
 	public List<Page> getAllPages() {
+		AccessTracker.accessed(AccessTracker.PAGES);
 		return allPages;
 	}
 
@@ -731,7 +1104,12 @@ public class SiteImpl implements Site, SiteBuilder{
 
 	public Object get(String name){
 		if(data.containsKey(name)) {
-			return data.get(name);
+			//set by processors and generators, e.g. tags and query
+			Object value = data.get(name);
+			if(!(value instanceof AccessTracker.Tracked)){
+				AccessTracker.accessed(AccessTracker.DATA + name);
+			}
+			return value;
 		}
 
 		if(config.containsKey(name)){
@@ -825,6 +1203,29 @@ public class SiteImpl implements Site, SiteBuilder{
 		return classLoader;
 	}
 
+	/**
+	 * @return the asset fingerprints of current build, or null if not enabled
+	 */
+	public AssetFingerprints getAssetFingerprints(){
+		return assetFingerprints;
+	}
+
+	/**
+	 * @return the task executor of this site, not available in templates
+	 * @see TaskExecutor#forSite(Site)
+	 */
+	@Override
+	public TaskExecutor getTaskExecutor(){
+		return taskExecutor;
+	}
+
+	/**
+	 * @return the publisher of static files, not available in templates
+	 */
+	public FilePublisher getFilePublisher(){
+		return filePublisher;
+	}
+
 	@Override
 	public Factory getFactory(){
 		return factory;
@@ -858,6 +1259,7 @@ public class SiteImpl implements Site, SiteBuilder{
 
 	@Override
 	public Map<String,Collection> getCollections(){
+		AccessTracker.accessed(AccessTracker.COLLECTIONS);
 		return collections;
 	}
 
@@ -16,24 +16,41 @@
 package org.opoo.press.impl;
 
 import org.apache.commons.io.FileUtils;
-import org.apache.commons.io.monitor.FileAlterationObserver;
 import org.opoo.press.Observer;
 import org.opoo.press.SiteConfig;
 import org.opoo.press.SourceEntry;
 import org.opoo.press.SourceEntryLoader;
+import org.opoo.press.file.DirectoryWatcher;
 import org.opoo.press.file.Result;
 import org.opoo.press.file.Watchable;
 import org.opoo.press.file.WatchableDirectory;
 import org.opoo.press.file.WatchableFiles;
+import org.opoo.press.task.CancellationToken;
+import org.opoo.press.task.TaskExecutor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.FileFilter;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
+ * Observes the site files and builds the changed pages.
+ * <p>Builds run in background, a running build is cancelled when more files changed,
+ * and a new build starts with all changes not built yet. The theme resources are
+ * compiled and the static files are copied in the same background thread, never
+ * during a build.</p>
+ *
  * @author Alex Lin
  */
 public class SiteObserver implements Observer{
@@ -42,17 +59,24 @@ public class SiteObserver implements Observer{
     private final SiteImpl site;
 
     private Observer themeObserver;
+    private DirectoryWatcher directoryWatcher;
     private List<Watchable> configWatchers = new ArrayList<Watchable>();
     private List<Watchable> otherWatchers = new ArrayList<Watchable>();
+    private List<StaticFilesWatcher> staticFilesWatchers = new ArrayList<StaticFilesWatcher>();
+    private final AtomicBoolean updatePending = new AtomicBoolean();
+    private ExecutorService buildExecutor;
+    private BuildTask buildTask;
+    private Future<?> buildFuture;
 
 
     SiteObserver(SiteImpl site){
         this.site = site;
 
         themeObserver = site.getTheme().getObserver();
+        directoryWatcher = createDirectoryWatcher();
 
         FileFilter siteConfigFilesFilter = createConfigFilesFilter();
-        Watchable siteConfigWatcher = new WatchableDirectory(site.getBasedir(), siteConfigFilesFilter);
+        Watchable siteConfigWatcher = createWatchable(site.getBasedir(), siteConfigFilesFilter);
         configWatchers.add(siteConfigWatcher);
 
         Watchable themeConfigWatcher = new WatchableFiles(site.getTheme().getConfigFile());
@@ -60,14 +84,63 @@ public class SiteObserver implements Observer{
 
         List<File> sources = site.getSources();
         for(File source: sources){
-            otherWatchers.add(new WatchableDirectory(source));
+            otherWatchers.add(createWatchable(source, null));
         }
 
-        otherWatchers.add(new WatchableDirectory(site.getTemplates()));
+        otherWatchers.add(createWatchable(site.getTemplates(), null));
 
         List<File> assets = site.getAssets();
         for(File asset: assets){
-            otherWatchers.add(new StaticFilesWatcher(asset));
+            StaticFilesWatcher watcher = new StaticFilesWatcher(asset, createWatchable(asset, null));
+            staticFilesWatchers.add(watcher);
+            otherWatchers.add(watcher);
+        }
+    }
+
+    private DirectoryWatcher createDirectoryWatcher(){
+        if(!isWatchServiceSupported()){
+            log.debug("WatchService not supported, checking files by polling.");
+            return null;
+        }
+        try {
+            return new DirectoryWatcher();
+        } catch (IOException e) {
+            log.warn("Unable to create WatchService, checking files by polling: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Checks before touching {@link DirectoryWatcher}, which cannot be loaded on Java 6.
+     */
+    private static boolean isWatchServiceSupported(){
+        try {
+            Class.forName("java.nio.file.WatchService");
+            return true;
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+
+    private Watchable createWatchable(File directory, FileFilter fileFilter){
+        if(directoryWatcher != null){
+            return directoryWatcher.watch(directory, fileFilter);
+        }
+        return new WatchableDirectory(directory, fileFilter);
+    }
+
+    /**
+     * Wait for changes of site files, or just sleep if the files are checked by polling.
+     * Theme files are always checked by polling, so the timeout should not be too long.
+     *
+     * @param timeout the max time to wait in milliseconds
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void await(long timeout) throws InterruptedException {
+        if(directoryWatcher != null){
+            directoryWatcher.await(timeout);
+        }else{
+            Thread.sleep(timeout);
         }
     }
 
@@ -114,10 +187,6 @@ public class SiteObserver implements Observer{
 
     @Override
     public void check() throws Exception {
-        if(themeObserver != null){
-            themeObserver.check();
-        }
-
         for(Watchable watcher: configWatchers){
             Result result = watcher.check();
             if(!result.isEmpty()) {
@@ -135,17 +204,92 @@ public class SiteObserver implements Observer{
         }
         if(!result.isEmpty()){
             log.info("Source file(s) changed: \n{}", result.toString());
-            long start = System.currentTimeMillis();
-            //force build
-            site.build(true);
-            log.info("Build time: {}ms", System.currentTimeMillis() - start);
+            build(result);
         }else{
             log.debug("Nothing to build - all site output files are up to date.");
         }
+        update();
+    }
+
+    /**
+     * Checks the theme resources and copies the changed static files after the
+     * running build, at most one update is queued.
+     */
+    private void update(){
+        if(!updatePending.compareAndSet(false, true)){
+            return;
+        }
+        getBuildExecutor().submit(new Runnable() {
+            @Override
+            public void run() {
+                updatePending.set(false);
+                try {
+                    if(themeObserver != null){
+                        themeObserver.check();
+                    }
+                    for(StaticFilesWatcher watcher: staticFilesWatchers){
+                        watcher.copyChangedFiles();
+                    }
+                } catch (Exception e) {
+                    log.error("Update theme resources and static files failed: " + e.getMessage(), e);
+                }
+            }
+        });
+    }
+
+    private ExecutorService getBuildExecutor(){
+        if(buildExecutor == null){
+            buildExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "opoopress-site-builder");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return buildExecutor;
+    }
+
+    private void build(Result result) throws InterruptedException {
+        if(buildFuture != null && !buildFuture.isDone()){
+            log.info("Cancelling the running build...");
+            buildTask.cancellationToken.cancel();
+        }
+        awaitBuild();
+
+        //changes of the cancelled or failed build are not built yet
+        if(buildTask != null && !buildTask.finished){
+            result = Result.newResult().addResult(buildTask.result).addResult(result);
+        }
+
+        buildTask = new BuildTask(result);
+        buildFuture = getBuildExecutor().submit(buildTask);
+    }
+
+    private void awaitBuild() throws InterruptedException {
+        if(buildFuture == null){
+            return;
+        }
+        try {
+            buildFuture.get();
+        } catch (ExecutionException e) {
+            log.error("Build failed: " + e.getMessage(), e);
+        }
     }
 
     @Override
     public void destroy() throws Exception {
+        if(buildFuture != null){
+            buildTask.cancellationToken.cancel();
+            awaitBuild();
+        }
+        if(buildExecutor != null){
+            //the queued update of theme resources and static files
+            buildExecutor.shutdown();
+            buildExecutor.awaitTermination(1, TimeUnit.MINUTES);
+        }
+
         if(themeObserver != null){
             themeObserver.destroy();
         }
@@ -157,6 +301,10 @@ public class SiteObserver implements Observer{
         for(Watchable watcher: otherWatchers){
             watcher.destroy();
         }
+
+        if(directoryWatcher != null){
+            directoryWatcher.close();
+        }
     }
 
 
@@ -172,25 +320,101 @@ public class SiteObserver implements Observer{
         }
     }
 
-    private class StaticFilesWatcher extends WatchableDirectory{
-        private File dir;
+    private class BuildTask implements Runnable{
+        private final Result result;
+        private final CancellationToken cancellationToken = new CancellationToken();
+        private volatile boolean finished = false;
 
-        public StaticFilesWatcher(File directory) {
-            super(directory);
+        private BuildTask(Result result) {
+            this.result = result;
         }
 
         @Override
-        public void onStart(FileAlterationObserver observer) {
-            this.dir = observer.getDirectory();
+        public void run() {
+            TaskExecutor taskExecutor = site.getTaskExecutor();
+            taskExecutor.setCancellationToken(cancellationToken);
+            long start = System.currentTimeMillis();
+            try {
+                //rebuild the updated pages only if possible, otherwise force build
+                if(!site.rebuild(result)) {
+                    site.build(true);
+                }
+                finished = true;
+                log.info("Build time: {}ms", System.currentTimeMillis() - start);
+            } catch (CancellationException e) {
+                log.info("Build cancelled after {}ms.", System.currentTimeMillis() - start);
+            } catch (RuntimeException e) {
+                log.error("Build failed: " + e.getMessage(), e);
+            } finally {
+                taskExecutor.setCancellationToken(null);
+            }
+        }
+    }
+
+    /**
+     * Copies the changed static files to destination directly, no build required.
+     * The changes are collected when checked, and copied in the builder thread.
+     * If <code>asset_fingerprint</code> is enabled, the changes are built instead, the
+     * fingerprints and the pages referencing them change.
+     */
+    private class StaticFilesWatcher implements Watchable{
+        private final File dir;
+        private final Watchable watchable;
+        private final Result changes = Result.newResult();
+
+        public StaticFilesWatcher(File directory, Watchable watchable) {
+            this.dir = directory;
+            this.watchable = watchable;
         }
 
         @Override
-        public void onFileCreate(File file) {
-            onFileChange(file);
+        public void initialize() {
+            watchable.initialize();
         }
 
         @Override
-        public void onFileChange(File file) {
+        public Result check() {
+            Result result = watchable.check();
+            if(site.getConfig().get("asset_fingerprint", false)){
+                return result;
+            }
+            if(!result.isEmpty()){
+                synchronized (changes){
+                    changes.addResult(result);
+                }
+            }
+            return Result.newResult();
+        }
+
+        private void copyChangedFiles() {
+            Result result;
+            synchronized (changes){
+                if(changes.isEmpty()){
+                    return;
+                }
+                result = Result.newResult().addResult(changes);
+                changes.clear();
+            }
+            for(File file: result.getCreatedFiles()){
+                onFileChange(file);
+            }
+            for(File file: result.getUpdatedFiles()){
+                onFileChange(file);
+            }
+            for(File file: result.getDeletedFiles()){
+                onFileDelete(file);
+            }
+        }
+
+        @Override
+        public void destroy() {
+            watchable.destroy();
+        }
+
+        private void onFileChange(File file) {
+            if(!file.isFile()){
+                return;
+            }
             SourceEntryLoader loader = site.getFactory().getSourceEntryLoader();
             SourceEntry sourceEntry = loader.buildSourceEntry(dir, file);
             StaticFileImpl staticFile = new StaticFileImpl(site, sourceEntry);
@@ -198,8 +422,11 @@ public class SiteObserver implements Observer{
             log.info("Copy static file: {} => {}", file, site.getDestination());
         }
 
-        @Override
-        public void onFileDelete(File file) {
+        private void onFileDelete(File file) {
+            //created again since checked
+            if(file.exists()){
+                return;
+            }
             log.info("Static file deleted: {}", file);
             String filePath = file.getAbsolutePath();
             String dirPath = dir.getAbsolutePath();
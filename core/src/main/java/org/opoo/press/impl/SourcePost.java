@@ -22,6 +22,7 @@ import org.opoo.press.Renderer;
 import org.opoo.press.Site;
 import org.opoo.press.Source;
 import org.opoo.press.Tag;
+import org.opoo.press.highlighter.HighlightTracker;
 
 import java.util.List;
 import java.util.Map;
@@ -35,6 +36,11 @@ public class SourcePost extends AbstractSourcePage implements Post, Comparable<P
     private String id;
     private boolean excerpted = false;
     private boolean excerptExtracted = false;
+    private Boolean excerptHighlightCodeBlock;
+    /** the excerpt is the whole content, not set until converted */
+    private boolean excerptIsContent = false;
+    /** the separator which can be found in converted content to cut the excerpt */
+    private String excerptSeparator;
 
     public SourcePost(Site site, Source source) {
         super(site, source, null);
@@ -86,13 +92,33 @@ public class SourcePost extends AbstractSourcePage implements Post, Comparable<P
                 excerptExtracted = true;
                 excerpted = true;
                 setExcerpt(excerpt);
+                if (isLineSeparator(content, excerptSeparator, index)) {
+                    this.excerptSeparator = excerptSeparator;
+                }
                 return;
             }
         }
 
+        //share the content, no copy
         excerptExtracted = true;
-        excerpt = content;
-        setExcerpt(excerpt);
+        excerptIsContent = true;
+    }
+
+    /**
+     * The separator in its own line after a blank line is a block boundary for most
+     * converters, which can be used to cut the converted excerpt from the converted
+     * content. Right after a paragraph or a list item it is a continuation line of that
+     * block.
+     */
+    private static boolean isLineSeparator(String content, String separator, int index) {
+        int end = index + separator.length();
+        if (content.charAt(index - 1) != '\n'
+                || (end < content.length() && content.charAt(end) != '\n' && content.charAt(end) != '\r')
+                || content.indexOf(separator, end) != -1) {
+            return false;
+        }
+        int lineStart = content.lastIndexOf('\n', index - 2) + 1;
+        return lineStart > 0 && StringUtils.isBlank(content.substring(lineStart, index - 1));
     }
 
     /* (non-Javadoc)
@@ -101,9 +127,79 @@ public class SourcePost extends AbstractSourcePage implements Post, Comparable<P
     @Override
     public void convert() {
         super.convert();
+        if (!excerptable) {
+            return;
+        }
+
+        //excerpt is the whole content
+        if (excerptIsContent) {
+            excerptIsContent = false;
+            setExcerpt(getContent());
+            excerptHighlightCodeBlock = getContentHighlightCodeBlock();
+            return;
+        }
+
+        //cut the excerpt from the converted content
+        if (excerptSeparator != null) {
+            String content = getContent();
+            int index = content.indexOf(excerptSeparator);
+            if (index > 0 && content.indexOf(excerptSeparator, index + excerptSeparator.length()) == -1) {
+                String excerpt = content.substring(0, index);
+                setExcerpt(excerpt);
+                excerptHighlightCodeBlock = Boolean.FALSE.equals(getContentHighlightCodeBlock())
+                        ? Boolean.FALSE : detectHighlightCodeBlock(excerpt, false);
+                return;
+            }
+            log.debug("Excerpt separator not found in converted content: {}", getUrl());
+        }
+
+        HighlightTracker.reset();
+        setExcerpt(getConverter().convert(getExcerpt()));
+        excerptHighlightCodeBlock = detectHighlightCodeBlock(getExcerpt(), HighlightTracker.isEmitted());
+    }
+
+    @Override
+    boolean resetContent() {
+        if (!super.resetContent()) {
+            return false;
+        }
+        excerpted = false;
+        excerptExtracted = false;
+        excerptIsContent = false;
+        excerptSeparator = null;
+        excerptHighlightCodeBlock = null;
+        initExcerpt(getSource().getMeta());
+        return true;
+    }
+
+    @Override
+    Converted getConverted() {
+        Converted converted = super.getConverted();
         if (excerptable) {
-            setExcerpt(getConverter().convert(getExcerpt()));
+            converted.excerpt = getExcerpt();
+            converted.excerptHighlightCodeBlock = excerptHighlightCodeBlock;
         }
+        return converted;
+    }
+
+    @Override
+    boolean restoreConverted(Converted converted) {
+        if (excerptable && converted.excerpt == null) {
+            return false;
+        }
+        if (!super.restoreConverted(converted)) {
+            return false;
+        }
+        if (excerptable) {
+            setExcerpt(converted.excerpt);
+            excerptHighlightCodeBlock = converted.excerptHighlightCodeBlock;
+        }
+        return true;
+    }
+
+    @Override
+    protected Boolean getExcerptHighlightCodeBlock() {
+        return excerptHighlightCodeBlock;
     }
 
     @Override
@@ -120,6 +216,7 @@ public class SourcePost extends AbstractSourcePage implements Post, Comparable<P
             if (renderer.isRenderRequired(this, excerpt)) {
                 log.debug("Rendering excerpt.");
                 setExcerpt(renderer.renderContent(excerpt, rootMap));
+                excerptHighlightCodeBlock = null;
 
                 if (log.isTraceEnabled()) {
                     log.trace("Excerpt rendered[{}]: {}", getUrl(), excerpt);
@@ -144,10 +241,15 @@ public class SourcePost extends AbstractSourcePage implements Post, Comparable<P
      */
     @Override
     public String getExcerpt() {
+        AccessTracker.contentAccessed(this);
+        if (excerptIsContent) {
+            return getContent();
+        }
         return getContentHolder().getExcerpt();
     }
 
     public void setExcerpt(String excerpt){
+        excerptIsContent = false;
         getContentHolder().setExcerpt(excerpt);
     }
 
@@ -19,6 +19,7 @@ import org.apache.commons.io.FileUtils;
 import org.opoo.press.Site;
 import org.opoo.press.SourceEntry;
 import org.opoo.press.StaticFile;
+import org.opoo.press.output.FilePublisher;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -34,6 +35,8 @@ public class StaticFileImpl implements StaticFile {
 	
 	private Site site;
 	private SourceEntry sourceEntry;
+	private String fingerprintName;
+	private byte[] fingerprintContent;
 
 	public StaticFileImpl(Site site, SourceEntry sourceEntry){
 		this.site = site;
@@ -68,6 +71,24 @@ public class StaticFileImpl implements StaticFile {
 		this.sourceEntry = sourceEntry;
 	}
 
+	/**
+	 * @param fingerprintName the file name with content hash
+	 * @param fingerprintContent the content of fingerprinted file if differs from the source file, e.g. rewritten CSS
+	 * @see AssetFingerprints
+	 */
+	void setFingerprint(String fingerprintName, byte[] fingerprintContent) {
+		this.fingerprintName = fingerprintName;
+		this.fingerprintContent = fingerprintContent;
+	}
+
+	/**
+	 * @param dest
+	 * @return the fingerprinted output file, or null if not fingerprinted
+	 */
+	public File getFingerprintOutputFile(File dest) {
+		return fingerprintName == null ? null : new File(dest, sourceEntry.getPath() + "/" + fingerprintName);
+	}
+
 	/* (non-Javadoc)
 	 * @see org.opoo.press.StaticFile#getOutputFile(java.io.File)
 	 */
@@ -82,6 +103,8 @@ public class StaticFileImpl implements StaticFile {
 	 */
 	@Override
 	public void write(File dest) {
+		writeFingerprintFile(dest);
+
 		File target = getOutputFile(dest);
 
 		if(target.exists() && target.length() == sourceEntry.getLength() 
@@ -91,16 +114,42 @@ public class StaticFileImpl implements StaticFile {
 		}
 		
 		try {
-			File parentFile = target.getParentFile();
-			if(!parentFile.exists()){
-				parentFile.mkdirs();
-			}
-			
 			log.debug("Copying static file to " + target);
-			FileUtils.copyFile(sourceEntry.getFile(), target);
+			publish(sourceEntry.getFile(), target);
 		} catch (IOException e) {
 			log.error("Copying static file error: " + target, e);
 			throw new RuntimeException(e);
 		}
 	}
+
+	private void writeFingerprintFile(File dest) {
+		File target = getFingerprintOutputFile(dest);
+		//same name, same content
+		if(target == null || target.exists()){
+			return;
+		}
+
+		try {
+			log.debug("Writing fingerprinted static file to " + target);
+			if(fingerprintContent != null){
+				//not written in place, it may be a hard link to the source file
+				FileUtils.deleteQuietly(target);
+				FileUtils.writeByteArrayToFile(target, fingerprintContent);
+			}else{
+				publish(sourceEntry.getFile(), target);
+			}
+		} catch (IOException e) {
+			log.error("Writing fingerprinted static file error: " + target, e);
+			throw new RuntimeException(e);
+		}
+	}
+
+	private void publish(File source, File target) throws IOException {
+		FilePublisher publisher = (site instanceof SiteImpl) ? ((SiteImpl) site).getFilePublisher() : null;
+		if(publisher != null){
+			publisher.publish(source, target);
+		}else{
+			FileUtils.copyFile(source, target);
+		}
+	}
 }
@@ -0,0 +1,192 @@
+/*
+ * Copyright 2013-2015 Alex Lin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opoo.press.output;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.opoo.press.SiteConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.channels.FileChannel;
+
+/**
+ * Publishes the static files to the destination directory. The mode is specified
+ * by <code>static_publish</code> in site configuration:
+ * <ul>
+ *     <li><code>copy</code> - copies the file, the default mode.</li>
+ *     <li><code>transfer</code> - copies the file by {@link FileChannel#transferTo(long, long,
+ *     java.nio.channels.WritableByteChannel)}, the bytes are not copied through the JVM heap.</li>
+ *     <li><code>hardlink</code> - creates a hard link to the source file, the destination
+ *     directory must be in the same file system. Requires Java 7 or later.</li>
+ *     <li><code>reflink</code> - creates a copy-on-write clone by <code>cp</code> command,
+ *     e.g. on Btrfs, XFS and APFS.</li>
+ * </ul>
+ * <p>If linking or cloning fails, the mode falls back to <code>transfer</code> for the
+ * rest files of the build. The existing target file is always deleted first, a hard
+ * linked file must not be written in place, or the source file changes too.</p>
+ *
+ * @author Alex Lin
+ */
+public class FilePublisher {
+    private static final Logger log = LoggerFactory.getLogger(FilePublisher.class);
+
+    private static final Method TO_PATH;
+    private static final Method CREATE_LINK;
+    static {
+        Method toPath = null;
+        Method createLink = null;
+        try {
+            toPath = File.class.getMethod("toPath");
+            Class<?> pathClass = Class.forName("java.nio.file.Path");
+            createLink = Class.forName("java.nio.file.Files").getMethod("createLink", pathClass, pathClass);
+        } catch (Exception e) {
+            //Java 6
+        }
+        TO_PATH = toPath;
+        CREATE_LINK = createLink;
+    }
+
+    public enum Mode {
+        COPY, TRANSFER, HARDLINK, REFLINK
+    }
+
+    private volatile Mode mode;
+
+    public FilePublisher(SiteConfig config) {
+        String name = config.get("static_publish", "copy");
+        try {
+            mode = Mode.valueOf(name.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown static_publish mode: " + name);
+        }
+        if (mode == Mode.HARDLINK && CREATE_LINK == null) {
+            log.warn("Hard link requires Java 7 or later, publishing static files by transfer.");
+            mode = Mode.TRANSFER;
+        }
+        if (mode != Mode.COPY) {
+            log.info("Publishing static files by {}.", mode.name().toLowerCase());
+        }
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * @param source the source file
+     * @param target the target file, replaced if exists
+     * @throws IOException
+     */
+    public void publish(File source, File target) throws IOException {
+        File parentFile = target.getParentFile();
+        if (!parentFile.exists()) {
+            parentFile.mkdirs();
+        }
+        if (target.exists() && !target.delete()) {
+            throw new IOException("Unable to delete file: " + target);
+        }
+
+        Mode m = mode;
+        if (m == Mode.HARDLINK && !link(source, target)) {
+            m = fallback("Hard link");
+        } else if (m == Mode.REFLINK && !reflink(source, target)) {
+            m = fallback("Copy-on-write clone");
+        }
+
+        if (m == Mode.COPY) {
+            FileUtils.copyFile(source, target);
+        } else if (m == Mode.TRANSFER) {
+            transfer(source, target);
+        }
+    }
+
+    private Mode fallback(String name) {
+        if (mode != Mode.TRANSFER) {
+            log.warn("{} is not supported for the destination directory, publishing static files by transfer.", name);
+            mode = Mode.TRANSFER;
+        }
+        return Mode.TRANSFER;
+    }
+
+    private boolean link(File source, File target) {
+        try {
+            CREATE_LINK.invoke(null, TO_PATH.invoke(target), TO_PATH.invoke(source));
+            return true;
+        } catch (InvocationTargetException e) {
+            //FileSystemException: different file systems, UnsupportedOperationException
+            log.debug("Create hard link failed: " + target, e.getCause());
+            return false;
+        } catch (IllegalAccessException e) {
+            log.debug("Create hard link failed: " + target, e);
+            return false;
+        }
+    }
+
+    private boolean reflink(File source, File target) {
+        boolean mac = System.getProperty("os.name", "").toLowerCase().startsWith("mac");
+        ProcessBuilder builder = mac
+                ? new ProcessBuilder("cp", "-c", source.getPath(), target.getPath())
+                : new ProcessBuilder("cp", "--reflink=always", source.getPath(), target.getPath());
+        builder.redirectErrorStream(true);
+        InputStream in = null;
+        try {
+            Process process = builder.start();
+            in = process.getInputStream();
+            String output = IOUtils.toString(in);
+            if (process.waitFor() == 0) {
+                return true;
+            }
+            log.debug("Clone file failed: {}", output);
+        } catch (IOException e) {
+            log.debug("Clone file failed: " + target, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            IOUtils.closeQuietly(in);
+        }
+        FileUtils.deleteQuietly(target);
+        return false;
+    }
+
+    private static void transfer(File source, File target) throws IOException {
+        FileInputStream in = null;
+        FileOutputStream out = null;
+        try {
+            in = new FileInputStream(source);
+            out = new FileOutputStream(target);
+            FileChannel input = in.getChannel();
+            FileChannel output = out.getChannel();
+            long size = input.size();
+            long position = 0;
+            while (position < size) {
+                position += input.transferTo(position, size - position, output);
+            }
+        } finally {
+            IOUtils.closeQuietly(out);
+            IOUtils.closeQuietly(in);
+        }
+        //same as FileUtils.copyFile(), the target is not copied again if not modified
+        target.setLastModified(source.lastModified());
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright 2013-2015 Alex Lin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opoo.press.output;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Minifies HTML in a single pass without parsing the document:
+ * <ul>
+ *     <li>Whitespace between tags and in text is collapsed to a single space, or a
+ *     single line break if it contains any.</li>
+ *     <li>Whitespace between attributes is collapsed, the attribute values are kept.</li>
+ *     <li>Comments are removed, except conditional comments (<code>&lt;!--[if IE]&gt;</code>)
+ *     and server side includes (<code>&lt;!--#include</code>).</li>
+ *     <li>The content of <code>pre</code>, <code>textarea</code>, <code>script</code> and
+ *     <code>style</code> elements is kept as is.</li>
+ * </ul>
+ *
+ * @author Alex Lin
+ */
+public class HtmlMinifier {
+    private static final Set<String> RAW_ELEMENTS = new HashSet<String>(
+            Arrays.asList("pre", "textarea", "script", "style"));
+
+    /**
+     * @param html the HTML content
+     * @return the minified content
+     */
+    public static String minify(String html) {
+        int length = html.length();
+        StringBuilder out = new StringBuilder(length);
+        int i = 0;
+        while (i < length) {
+            char c = html.charAt(i);
+            if (c == '<') {
+                if (html.startsWith("<!--", i)) {
+                    i = comment(html, i, out);
+                } else {
+                    i = tag(html, i, out);
+                }
+            } else if (isWhitespace(c)) {
+                i = whitespace(html, i, out);
+            } else {
+                out.append(c);
+                i++;
+            }
+        }
+        return out.toString();
+    }
+
+    private static int comment(String html, int start, StringBuilder out) {
+        int end = html.indexOf("-->", start + 4);
+        end = (end == -1) ? html.length() : end + 3;
+        char next = start + 4 < html.length() ? html.charAt(start + 4) : 0;
+        //<!--[if IE]>, <!--<![endif]-->, <!--#include -->
+        if (next == '[' || next == '<' || next == '#') {
+            out.append(html, start, end);
+        }
+        return end;
+    }
+
+    private static int tag(String html, int start, StringBuilder out) {
+        int length = html.length();
+        int nameStart = start + 1;
+        int nameEnd = nameStart;
+        while (nameEnd < length && Character.isLetterOrDigit(html.charAt(nameEnd))) {
+            nameEnd++;
+        }
+        //not a start tag, end tag or declaration, e.g. 'a < b'
+        if (nameEnd == nameStart && (nameEnd >= length || "/!?".indexOf(html.charAt(nameEnd)) == -1)) {
+            out.append('<');
+            return start + 1;
+        }
+
+        char quote = 0;
+        int i = nameStart;
+        out.append('<');
+        while (i < length) {
+            char c = html.charAt(i);
+            if (quote != 0) {
+                if (c == quote) {
+                    quote = 0;
+                }
+                out.append(c);
+                i++;
+            } else if ((c == '"' || c == '\'') && isValueStart(out)) {
+                quote = c;
+                out.append(c);
+                i++;
+            } else if (isWhitespace(c)) {
+                while (i < length && isWhitespace(html.charAt(i))) {
+                    i++;
+                }
+                if (i < length && html.charAt(i) != '>') {
+                    out.append(' ');
+                }
+            } else {
+                out.append(c);
+                i++;
+                if (c == '>') {
+                    break;
+                }
+            }
+        }
+
+        String name = html.substring(nameStart, nameEnd).toLowerCase();
+        //not self-closing
+        if (RAW_ELEMENTS.contains(name) && html.charAt(i - 1) == '>' && html.charAt(i - 2) != '/') {
+            return raw(html, i, name, out);
+        }
+        return i;
+    }
+
+    /**
+     * A quote starts a quoted value only after '=', it is a part of unquoted value
+     * otherwise, e.g. <code>alt=it's</code>.
+     */
+    private static boolean isValueStart(StringBuilder out) {
+        int last = out.length() - 1;
+        if (last >= 0 && out.charAt(last) == ' ') {
+            last--;
+        }
+        return last >= 0 && out.charAt(last) == '=';
+    }
+
+    /**
+     * Copies the content of element until its end tag.
+     */
+    private static int raw(String html, int start, String name, StringBuilder out) {
+        int length = html.length();
+        int end = start;
+        while (end < length) {
+            end = html.indexOf("</", end);
+            if (end == -1) {
+                end = length;
+                break;
+            }
+            if (html.regionMatches(true, end + 2, name, 0, name.length())) {
+                break;
+            }
+            end += 2;
+        }
+        out.append(html, start, end);
+        return end;
+    }
+
+    private static int whitespace(String html, int start, StringBuilder out) {
+        int length = html.length();
+        int i = start;
+        boolean newLine = false;
+        while (i < length && isWhitespace(html.charAt(i))) {
+            if (html.charAt(i) == '\n') {
+                newLine = true;
+            }
+            i++;
+        }
+        //whitespace before a removed comment
+        int last = out.length() - 1;
+        if (last >= 0 && isWhitespace(out.charAt(last))) {
+            if (newLine) {
+                out.setCharAt(last, '\n');
+            }
+        } else {
+            out.append(newLine ? '\n' : ' ');
+        }
+        return i;
+    }
+
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\n' || c == '\t' || c == '\r' || c == '\f';
+    }
+}
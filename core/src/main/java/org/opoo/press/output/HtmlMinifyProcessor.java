@@ -0,0 +1,83 @@
+/*
+ * Copyright 2013-2015 Alex Lin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opoo.press.output;
+
+import org.opoo.press.Page;
+import org.opoo.press.ProcessorAdapter;
+import org.opoo.press.Site;
+import org.opoo.press.impl.SimplePage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Minifies the rendered HTML pages by {@link HtmlMinifier}. Enabled by
+ * <code>minify_html: true</code> in site configuration.
+ *
+ * @author Alex Lin
+ */
+public class HtmlMinifyProcessor extends ProcessorAdapter {
+    private static final Logger log = LoggerFactory.getLogger(HtmlMinifyProcessor.class);
+
+    private final AtomicInteger pages = new AtomicInteger();
+    private final AtomicLong originalLength = new AtomicLong();
+    private final AtomicLong minifiedLength = new AtomicLong();
+
+    @Override
+    public void preRender(Site site) {
+        pages.set(0);
+        originalLength.set(0);
+        minifiedLength.set(0);
+    }
+
+    @Override
+    public void postRender(Site site, Page page) {
+        if (!site.getConfig().get("minify_html", false) || !isHtml(page)) {
+            return;
+        }
+        //not rendered
+        if (page instanceof SimplePage && ((SimplePage) page).isUpToDate()) {
+            return;
+        }
+        String content = page.getContent();
+        if (content == null || !(page instanceof SimplePage)) {
+            return;
+        }
+
+        String minified = HtmlMinifier.minify(content);
+        ((SimplePage) page).setContent(minified);
+        pages.incrementAndGet();
+        originalLength.addAndGet(content.length());
+        minifiedLength.addAndGet(minified.length());
+    }
+
+    @Override
+    public void postRender(Site site) {
+        if (pages.get() > 0) {
+            long original = originalLength.get();
+            long saved = original - minifiedLength.get();
+            log.info("Minified {} HTML pages, {} of {} characters saved ({}%).",
+                    pages.get(), saved, original, original > 0 ? saved * 100 / original : 0);
+        }
+    }
+
+    private boolean isHtml(Page page) {
+        String url = page.getUrl();
+        return url != null && (url.endsWith("/") || url.endsWith(".html") || url.endsWith(".htm"));
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright 2013-2015 Alex Lin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opoo.press.output;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+/**
+ * Holds the output of pages in memory instead of the destination directory, for
+ * preview server.
+ * <p>Put the store in site configuration before creating the site:</p>
+ * <pre>
+ *     config.put(MemoryOutputStore.NAME, new MemoryOutputStore());
+ * </pre>
+ * <p>Static files are still copied to the destination directory.</p>
+ *
+ * @author Alex Lin
+ */
+public class MemoryOutputStore {
+    /**
+     * Name of the store in site configuration.
+     */
+    public static final String NAME = "output.store";
+
+    private static final Map<String, String> CONTENT_TYPES = new HashMap<String, String>();
+    static {
+        CONTENT_TYPES.put("html", "text/html; charset=UTF-8");
+        CONTENT_TYPES.put("htm", "text/html; charset=UTF-8");
+        CONTENT_TYPES.put("xml", "application/xml; charset=UTF-8");
+        CONTENT_TYPES.put("json", "application/json; charset=UTF-8");
+        CONTENT_TYPES.put("txt", "text/plain; charset=UTF-8");
+        CONTENT_TYPES.put("css", "text/css; charset=UTF-8");
+        CONTENT_TYPES.put("js", "application/javascript; charset=UTF-8");
+        CONTENT_TYPES.put("svg", "image/svg+xml; charset=UTF-8");
+    }
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+    private volatile Set<String> written;
+    private volatile Loader loader;
+
+    /**
+     * @param loader the loader to put the output of path not in store yet, or null
+     */
+    public void setLoader(Loader loader) {
+        this.loader = loader;
+    }
+
+    /**
+     * @param path the path relative to destination directory, e.g. '/2015/01/hello/index.html'
+     * @param content the content
+     */
+    public void put(String path, byte[] content) {
+        path = normalize(path);
+        entries.put(path, new Entry(content, getContentType(path)));
+        Set<String> set = written;
+        if (set != null) {
+            set.add(path);
+        }
+    }
+
+    /**
+     * @param path the path relative to destination directory
+     * @return the entry, or null if not found
+     */
+    public Entry get(String path) {
+        path = normalize(path);
+        Entry entry = entries.get(path);
+        Loader l = loader;
+        if (entry == null && l != null) {
+            l.load(path);
+            entry = entries.get(path);
+        }
+        return entry;
+    }
+
+    /**
+     * @param path the path relative to destination directory
+     * @return true if the output of path is in store, not loaded on demand
+     */
+    public boolean contains(String path) {
+        return entries.containsKey(normalize(path));
+    }
+
+    public void remove(String path) {
+        entries.remove(normalize(path));
+    }
+
+    public void clear() {
+        entries.clear();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Start writing all pages of a full build.
+     */
+    public void startBuild() {
+        written = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    }
+
+    /**
+     * Removes the entries not written since {@link #startBuild()}, the pages are
+     * not in site any more.
+     */
+    public void finishBuild() {
+        Set<String> set = written;
+        if (set != null) {
+            entries.keySet().retainAll(set);
+            written = null;
+        }
+    }
+
+    /**
+     * @param path the path relative to destination directory
+     * @return the path starts with '/'
+     */
+    public static String normalize(String path) {
+        return path.startsWith("/") ? path : "/" + path;
+    }
+
+    private static String getContentType(String path) {
+        int index = path.lastIndexOf('.');
+        String contentType = null;
+        if (index != -1 && index > path.lastIndexOf('/')) {
+            contentType = CONTENT_TYPES.get(path.substring(index + 1).toLowerCase());
+        }
+        return contentType != null ? contentType : "application/octet-stream";
+    }
+
+    /**
+     * Loads the output on demand.
+     */
+    public interface Loader {
+        /**
+         * Put the output of specified path to store, if any.
+         *
+         * @param path the path starts with '/'
+         */
+        void load(String path);
+    }
+
+    public static class Entry {
+        private final byte[] content;
+        private final String contentType;
+        private final String etag;
+        private final long lastModified;
+
+        private Entry(byte[] content, String contentType) {
+            this.content = content;
+            this.contentType = contentType;
+            this.lastModified = System.currentTimeMillis();
+
+            CRC32 crc = new CRC32();
+            crc.update(content);
+            this.etag = "\"" + Long.toHexString(crc.getValue()) + "-" + Integer.toHexString(content.length) + "\"";
+        }
+
+        public byte[] getContent() {
+            return content;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+
+        public String getETag() {
+            return etag;
+        }
+
+        public long getLastModified() {
+            return lastModified;
+        }
+    }
+}
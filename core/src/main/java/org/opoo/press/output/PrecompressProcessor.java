@@ -0,0 +1,312 @@
+/*
+ * Copyright 2013-2015 Alex Lin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opoo.press.output;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.io.IOUtils;
+import org.opoo.press.Page;
+import org.opoo.press.ProcessorAdapter;
+import org.opoo.press.Site;
+import org.opoo.press.StaticFile;
+import org.opoo.press.impl.SimplePage;
+import org.opoo.press.impl.StaticFileImpl;
+import org.opoo.press.task.RunnableTask;
+import org.opoo.press.task.TaskExecutor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Writes the gzip compressed sibling ('.gz') of each compressible page and static file
+ * after all files written, for web servers serving precompressed files, e.g. nginx
+ * <code>gzip_static</code>. Enabled by <code>precompress: true</code> in site
+ * configuration, the extensions can be changed by <code>precompress_extensions</code>.
+ * <p>The size, the last modified time and the content hash of each file are saved in
+ * working directory. The file is not read again if the size and the last modified time
+ * not changed since last build, and not compressed again if the content not changed.
+ * The compressed file is always newer than the original file, an older one is stale.
+ * Only the compressed files in the index are deleted when the original ones removed.</p>
+ *
+ * @author Alex Lin
+ */
+public class PrecompressProcessor extends ProcessorAdapter {
+    private static final Logger log = LoggerFactory.getLogger(PrecompressProcessor.class);
+    private static final String INDEX_FILE = ".precompress";
+    private static final String SUFFIX = ".gz";
+    private static final List<String> DEFAULT_EXTENSIONS = Arrays.asList(
+            "html", "htm", "xml", "json", "txt", "css", "js", "svg");
+    /** Not worth compressing. */
+    private static final int MIN_SIZE = 256;
+    private static final byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0};
+
+    private static final ThreadLocal<Deflater> DEFLATER = new ThreadLocal<Deflater>() {
+        @Override
+        protected Deflater initialValue() {
+            return new Deflater(Deflater.BEST_COMPRESSION, true);
+        }
+    };
+    private static final ThreadLocal<byte[]> BUFFER = new ThreadLocal<byte[]>() {
+        @Override
+        protected byte[] initialValue() {
+            return new byte[8192];
+        }
+    };
+
+    @Override
+    public void postWrite(Site site) {
+        if (!site.getConfig().get("precompress", false)) {
+            return;
+        }
+
+        final File dest = site.getDestination();
+        Set<String> extensions = new HashSet<String>(
+                site.getConfig().get("precompress_extensions", DEFAULT_EXTENSIONS));
+        List<File> files = new ArrayList<File>();
+        Set<String> outputPaths = new HashSet<String>();
+        for (Page page : site.getAllPages()) {
+            if (page instanceof SimplePage) {
+                addFile(((SimplePage) page).getOutputFile(dest), extensions, files, outputPaths, dest);
+            }
+        }
+        for (StaticFile staticFile : site.getStaticFiles()) {
+            addFile(staticFile.getOutputFile(dest), extensions, files, outputPaths, dest);
+            if (staticFile instanceof StaticFileImpl) {
+                File fingerprintFile = ((StaticFileImpl) staticFile).getFingerprintOutputFile(dest);
+                if (fingerprintFile != null) {
+                    addFile(fingerprintFile, extensions, files, outputPaths, dest);
+                }
+            }
+        }
+
+        final Map<String, Entry> entries = load(site);
+        final Map<String, Entry> newEntries = new ConcurrentHashMap<String, Entry>();
+        final AtomicInteger count = new AtomicInteger();
+        RunnableTask<File> task = new RunnableTask<File>() {
+            @Override
+            public void run(File file) {
+                if (compress(dest, file, entries, newEntries)) {
+                    count.incrementAndGet();
+                }
+            }
+        };
+
+        TaskExecutor taskExecutor = TaskExecutor.forSite(site);
+        if (taskExecutor != null) {
+            taskExecutor.run(files, task);
+        } else {
+            for (File file : files) {
+                task.run(file);
+            }
+        }
+
+        //compressed in last build, but the original files not in the site any more;
+        //other '.gz' files in destination directory, e.g. 'foo.tar.gz', are not touched
+        for (Map.Entry<String, Entry> en : entries.entrySet()) {
+            String path = en.getKey() + SUFFIX;
+            if (en.getValue().compressed && !newEntries.containsKey(en.getKey()) && !outputPaths.contains(path)) {
+                FileUtils.deleteQuietly(new File(dest, path));
+            }
+        }
+
+        save(site, newEntries);
+        log.info("Compressed {} of {} files.", count.get(), files.size());
+    }
+
+    private static void addFile(File file, Set<String> extensions, List<File> files,
+                                Set<String> outputPaths, File dest) {
+        outputPaths.add(getPath(dest, file));
+        //not written, e.g. to the memory output store
+        if (extensions.contains(FilenameUtils.getExtension(file.getName()).toLowerCase()) && file.isFile()) {
+            files.add(file);
+        }
+    }
+
+    private static String getPath(File dest, File file) {
+        return file.getPath().substring(dest.getPath().length());
+    }
+
+    /**
+     * @return true if the file compressed
+     */
+    private boolean compress(File dest, File file, Map<String, Entry> entries, Map<String, Entry> newEntries) {
+        File compressedFile = new File(file.getPath() + SUFFIX);
+        String path = getPath(dest, file);
+        long length = file.length();
+        long lastModified = file.lastModified();
+        Entry entry = entries.get(path);
+        //not written since last build
+        if (entry != null && entry.length == length && entry.lastModified == lastModified
+                && entry.compressed == compressedFile.exists()) {
+            newEntries.put(path, entry);
+            return false;
+        }
+
+        try {
+            byte[] data = FileUtils.readFileToByteArray(file);
+            String hash = hash(data);
+            if (entry != null && hash.equals(entry.hash) && entry.compressed == compressedFile.exists()) {
+                //the file may be written again with same content, keep the compressed one newer
+                if (entry.compressed) {
+                    compressedFile.setLastModified(Math.max(lastModified, compressedFile.lastModified()));
+                }
+                newEntries.put(path, new Entry(length, lastModified, hash, entry.compressed));
+                return false;
+            }
+
+            byte[] compressed = data.length < MIN_SIZE ? null : gzip(data);
+            if (compressed == null || compressed.length >= data.length) {
+                FileUtils.deleteQuietly(compressedFile);
+                newEntries.put(path, new Entry(length, lastModified, hash, false));
+                return false;
+            }
+            FileUtils.writeByteArrayToFile(compressedFile, compressed);
+            newEntries.put(path, new Entry(length, lastModified, hash, true));
+            return true;
+        } catch (IOException e) {
+            throw new RuntimeException("Compress file failed: " + file, e);
+        }
+    }
+
+    /**
+     * Compress data in gzip format by the deflater of current thread.
+     */
+    static byte[] gzip(byte[] data) {
+        Deflater deflater = DEFLATER.get();
+        byte[] buffer = BUFFER.get();
+        deflater.reset();
+        deflater.setInput(data);
+        deflater.finish();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 3 + 32);
+        out.write(GZIP_HEADER, 0, GZIP_HEADER.length);
+        while (!deflater.finished()) {
+            int len = deflater.deflate(buffer);
+            out.write(buffer, 0, len);
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        writeInt(out, (int) crc.getValue());
+        writeInt(out, data.length);
+        return out.toByteArray();
+    }
+
+    private static void writeInt(ByteArrayOutputStream out, int i) {
+        out.write(i & 0xff);
+        out.write((i >> 8) & 0xff);
+        out.write((i >> 16) & 0xff);
+        out.write((i >> 24) & 0xff);
+    }
+
+    private static String hash(byte[] data) {
+        try {
+            byte[] bytes = MessageDigest.getInstance("SHA-1").digest(data);
+            StringBuilder sb = new StringBuilder(bytes.length * 2);
+            for (byte b : bytes) {
+                sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private Map<String, Entry> load(Site site) {
+        Map<String, Entry> entries = new HashMap<String, Entry>();
+        File file = new File(site.getWorking(), INDEX_FILE);
+        if (!file.exists()) {
+            return entries;
+        }
+        ObjectInputStream ois = null;
+        try {
+            ois = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)));
+            int count = ois.readInt();
+            for (int i = 0; i < count; i++) {
+                String path = ois.readUTF();
+                entries.put(path, new Entry(ois.readLong(), ois.readLong(), ois.readUTF(), ois.readBoolean()));
+            }
+        } catch (IOException e) {
+            log.warn("Unable to load precompress index, compressing all files: " + e.getMessage());
+            entries.clear();
+        } finally {
+            IOUtils.closeQuietly(ois);
+        }
+        return entries;
+    }
+
+    private void save(Site site, Map<String, Entry> entries) {
+        File file = new File(site.getWorking(), INDEX_FILE);
+        ObjectOutputStream oos = null;
+        try {
+            file.getParentFile().mkdirs();
+            oos = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+            oos.writeInt(entries.size());
+            for (Map.Entry<String, Entry> en : entries.entrySet()) {
+                Entry entry = en.getValue();
+                oos.writeUTF(en.getKey());
+                oos.writeLong(entry.length);
+                oos.writeLong(entry.lastModified);
+                oos.writeUTF(entry.hash);
+                oos.writeBoolean(entry.compressed);
+            }
+            oos.flush();
+        } catch (IOException e) {
+            //compressing all files in next build
+            log.warn("Unable to save precompress index: " + e.getMessage());
+            IOUtils.closeQuietly(oos);
+            FileUtils.deleteQuietly(file);
+        } finally {
+            IOUtils.closeQuietly(oos);
+        }
+    }
+
+    private static class Entry {
+        private final long length;
+        private final long lastModified;
+        private final String hash;
+        private final boolean compressed;
+
+        private Entry(long length, long lastModified, String hash, boolean compressed) {
+            this.length = length;
+            this.lastModified = lastModified;
+            this.hash = hash;
+            this.compressed = compressed;
+        }
+    }
+}
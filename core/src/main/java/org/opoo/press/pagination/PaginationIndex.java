@@ -0,0 +1,214 @@
+/*
+ * Copyright 2013-2015 Alex Lin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opoo.press.pagination;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.opoo.press.Base;
+import org.opoo.press.Page;
+import org.opoo.press.Pager;
+import org.opoo.press.Site;
+import org.opoo.press.Source;
+import org.opoo.press.impl.AssetFingerprints;
+import org.opoo.press.impl.SiteImpl;
+import org.opoo.press.util.StaleUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The item window and neighbour links of each pager page of last build, saved in
+ * the working directory.
+ * <p>A pager page is up to date if its url, items, the source files of its items and
+ * its previous and next pages are the same as last build, and the templates, the
+ * configuration files and the asset fingerprints not changed since then.</p>
+ * <p>The site wide data used by the templates of pager pages is not tracked, e.g. the
+ * recent posts in sidebar, the tag cloud or <code>site.query</code> results. Disable
+ * <code>incremental_pagination</code> if the templates list pages other than the items.</p>
+ *
+ * @author Alex Lin
+ * @see PaginationProcessor
+ */
+public class PaginationIndex {
+    private static final Logger log = LoggerFactory.getLogger(PaginationIndex.class);
+    static final String FILE_NAME = ".pagination";
+
+    private final File file;
+    private final long time = System.currentTimeMillis();
+    private final boolean showDrafts;
+    private final int configFilesLength;
+    private final long assetsHash;
+    private final Map<String, Long> previous = new HashMap<String, Long>();
+    private final Map<String, Long> current = new ConcurrentHashMap<String, Long>();
+
+    private PaginationIndex(File file, boolean showDrafts, int configFilesLength, long assetsHash) {
+        this.file = file;
+        this.showDrafts = showDrafts;
+        this.configFilesLength = configFilesLength;
+        this.assetsHash = assetsHash;
+    }
+
+    /**
+     * @param site the site
+     * @return index of last build, empty if not exists or the templates or configuration changed
+     */
+    public static PaginationIndex load(Site site) {
+        PaginationIndex index = new PaginationIndex(new File(site.getWorking(), FILE_NAME),
+                site.showDrafts(), site.getConfig().getConfigFiles().length, assetsHash(site));
+        if (!index.file.exists()) {
+            return index;
+        }
+
+        ObjectInputStream ois = null;
+        try {
+            ois = new ObjectInputStream(new BufferedInputStream(new FileInputStream(index.file)));
+            long time = ois.readLong();
+            if (ois.readBoolean() != index.showDrafts || ois.readInt() != index.configFilesLength
+                    || ois.readLong() != index.assetsHash || isLayoutChanged(site, time)) {
+                log.info("Templates, configuration or assets changed, rendering all pager pages.");
+                return index;
+            }
+            int count = ois.readInt();
+            for (int i = 0; i < count; i++) {
+                String url = ois.readUTF();
+                index.previous.put(url, ois.readLong());
+            }
+        } catch (IOException e) {
+            log.warn("Unable to load pagination index, rendering all pager pages: " + e.getMessage());
+            index.previous.clear();
+        } finally {
+            IOUtils.closeQuietly(ois);
+        }
+        return index;
+    }
+
+    private static boolean isLayoutChanged(Site site, long time) {
+        if (site.getTheme().getConfigFile().lastModified() > time) {
+            return true;
+        }
+        for (File configFile : site.getConfig().getConfigFiles()) {
+            if (configFile.lastModified() > time) {
+                return true;
+            }
+        }
+        return StaleUtils.isNewer(site.getTemplates(), time);
+    }
+
+    /**
+     * The fingerprinted names of assets are referenced by pages, the old ones are
+     * removed in cleanup.
+     */
+    private static long assetsHash(Site site) {
+        AssetFingerprints fingerprints = (site instanceof SiteImpl) ? ((SiteImpl) site).getAssetFingerprints() : null;
+        if (fingerprints == null) {
+            return 0;
+        }
+        return hash(new TreeMap<String, String>(fingerprints.getPaths()).toString());
+    }
+
+    /**
+     * Records the signature of the pager page, thread safe.
+     *
+     * @param page the paginated page, its pager and the neighbour pages must be set
+     * @return true if the page is the same as last build
+     */
+    public boolean update(Page page) {
+        String url = page.getUrl();
+        long signature = signature(page);
+        current.put(url, signature);
+
+        Long old = previous.get(url);
+        return old != null && old == signature;
+    }
+
+    public void save() {
+        ObjectOutputStream oos = null;
+        try {
+            oos = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+            oos.writeLong(time);
+            oos.writeBoolean(showDrafts);
+            oos.writeInt(configFilesLength);
+            oos.writeLong(assetsHash);
+            oos.writeInt(current.size());
+            for (Map.Entry<String, Long> en : current.entrySet()) {
+                oos.writeUTF(en.getKey());
+                oos.writeLong(en.getValue());
+            }
+            oos.flush();
+        } catch (IOException e) {
+            //rendering all pager pages in next build
+            log.warn("Unable to save pagination index: " + e.getMessage());
+            IOUtils.closeQuietly(oos);
+            FileUtils.deleteQuietly(file);
+        } finally {
+            IOUtils.closeQuietly(oos);
+        }
+    }
+
+    private static long signature(Page page) {
+        Pager pager = page.getPager();
+        StringBuilder sb = new StringBuilder();
+        sb.append(page.getUrl()).append('\n');
+        sb.append(page.getTitle()).append('\n');
+        appendSource(sb, page.getSource());
+        sb.append(pager.getPageNumber()).append('/').append(pager.getTotalPages())
+                .append('/').append(pager.getTotalItems()).append('\n');
+        sb.append(pager.getPrevious() != null ? pager.getPrevious().getUrl() : "").append('\n');
+        sb.append(pager.getNext() != null ? pager.getNext().getUrl() : "").append('\n');
+
+        for (Object item : pager.getItems()) {
+            if (item instanceof Base) {
+                sb.append(((Base) item).getUrl()).append('\n');
+            } else {
+                sb.append(item).append('\n');
+            }
+            if (item instanceof Page) {
+                appendSource(sb, ((Page) item).getSource());
+            }
+        }
+        return hash(sb);
+    }
+
+    private static void appendSource(StringBuilder sb, Source source) {
+        if (source != null && source.getSourceEntry() != null) {
+            sb.append(source.getSourceEntry().getLastModified()).append('\n');
+        }
+    }
+
+    /**
+     * 64-bit FNV-1a.
+     */
+    private static long hash(CharSequence text) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < text.length(); i++) {
+            hash ^= text.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+}
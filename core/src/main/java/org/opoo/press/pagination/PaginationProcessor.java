@@ -0,0 +1,50 @@
+/*
+ * Copyright 2013-2015 Alex Lin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opoo.press.pagination;
+
+import org.opoo.press.ProcessorAdapter;
+import org.opoo.press.Site;
+import org.opoo.press.output.MemoryOutputStore;
+
+/**
+ * Loads the {@link PaginationIndex} before generating pager pages and saves it after
+ * all pages written. Enabled by <code>incremental_pagination: true</code> in site
+ * configuration.
+ * <p>Not used if the pages are written to {@link MemoryOutputStore}, the output files
+ * in destination directory are not written by the build.</p>
+ *
+ * @author Alex Lin
+ */
+public class PaginationProcessor extends ProcessorAdapter {
+    public static final String PAGINATION_INDEX = "pagination_index";
+
+    @Override
+    public void postRead(Site site) {
+        if(site.getConfig().get("incremental_pagination", false)
+                && site.getConfig().get(MemoryOutputStore.NAME) == null){
+            site.set(PAGINATION_INDEX, PaginationIndex.load(site));
+        }
+    }
+
+    @Override
+    public void postWrite(Site site) {
+        PaginationIndex index = site.get(PAGINATION_INDEX);
+        if(index != null){
+            index.save();
+            site.set(PAGINATION_INDEX, null);
+        }
+    }
+}
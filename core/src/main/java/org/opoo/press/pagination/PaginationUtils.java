@@ -4,6 +4,7 @@ import org.opoo.press.Collection;
 import org.opoo.press.Page;
 import org.opoo.press.Pager;
 import org.opoo.press.Site;
+import org.opoo.press.impl.PagerPage;
 import org.opoo.press.impl.SimplePage;
 
 import java.util.ArrayList;
@@ -40,7 +41,7 @@ public class PaginationUtils {
             if(pageNumber > 1){
                 SimplePage newPage = /*(page.getSource() != null)
                         ? new PageImpl(site, page.getSource(), pager)
-                        : */new SimplePage(site, page, pager);
+                        : */new PagerPage(site, page, pager);
 
                 pages[i] = newPage;
                 newPages.add(newPage);
@@ -64,6 +65,17 @@ public class PaginationUtils {
             }
         }
 
+        //skip pager pages not changed since last build
+        PaginationIndex index = site.get(PaginationProcessor.PAGINATION_INDEX);
+        if(index != null){
+            for(Page p: pages){
+                boolean upToDate = index.update(p);
+                if(p instanceof SimplePage){
+                    ((SimplePage) p).setUpToDate(upToDate);
+                }
+            }
+        }
+
         return newPages;
     }
 
@@ -15,8 +15,10 @@
  */
 package org.opoo.press.plugin;
 
+import org.apache.commons.io.FilenameUtils;
 import org.opoo.press.ConfigAware;
 import org.opoo.press.Converter;
+import org.opoo.press.FileExtensionConverter;
 import org.opoo.press.Generator;
 import org.opoo.press.Named;
 import org.opoo.press.Ordered;
@@ -26,6 +28,7 @@ import org.opoo.press.Registry;
 import org.opoo.press.Site;
 import org.opoo.press.SiteAware;
 import org.opoo.press.Source;
+import org.opoo.press.SourceEntry;
 import org.opoo.press.util.ClassUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -34,8 +37,10 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.ServiceLoader;
+import java.util.WeakHashMap;
 
 /**
  * @author Alex Lin
@@ -45,6 +50,10 @@ public class PluginManagerImpl implements PluginManager {
 
     private Site site;
     private List<Converter> converters;
+    private volatile Map<String, List<Converter>> converterIndex;
+    private volatile List<Converter> otherConverters;
+    private final Map<SourceEntry, Converter> matchedConverters =
+            Collections.synchronizedMap(new WeakHashMap<SourceEntry, Converter>());
     private List<Generator> generators;
     private List<Processor> processors;
     private Map<Class,List> listMap = new HashMap<Class, List>();
@@ -92,13 +101,24 @@ public class PluginManagerImpl implements PluginManager {
 
     @Override
     public Converter getConverter(Source source) throws RuntimeException {
-        getConverters();
-        for(Converter c: converters){
+        SourceEntry entry = source.getSourceEntry();
+        Converter converter = matchedConverters.get(entry);
+        if(converter != null){
+            return converter;
+        }
+
+        String extension = FilenameUtils.getExtension(entry.getName()).toLowerCase(Locale.ENGLISH);
+        List<Converter> candidates = getConverterIndex().get(extension);
+        if(candidates == null){
+            candidates = otherConverters;
+        }
+        for(Converter c: candidates){
             if(c.matches(source)){
+                matchedConverters.put(entry, c);
                 return c;
             }
         }
-        throw new RuntimeException("No matched converter: " + source.getSourceEntry().getFile());
+        throw new RuntimeException("No matched converter: " + entry.getFile());
     }
 
     public List<Converter> getConverters() {
@@ -109,6 +129,45 @@ public class PluginManagerImpl implements PluginManager {
         return converters;
     }
 
+    /**
+     * Index converters by input file extension, the converters which are not
+     * {@link FileExtensionConverter} are candidates of all extensions.
+     *
+     * @return candidate converters of each extension, in order
+     */
+    private Map<String, List<Converter>> getConverterIndex() {
+        Map<String, List<Converter>> index = converterIndex;
+        if(index != null){
+            return index;
+        }
+
+        index = new HashMap<String, List<Converter>>();
+        List<Converter> others = new ArrayList<Converter>();
+        for(Converter c: getConverters()){
+            if(c instanceof FileExtensionConverter){
+                for(String extension: ((FileExtensionConverter) c).getInputFileExtensions()){
+                    extension = extension.toLowerCase(Locale.ENGLISH);
+                    List<Converter> list = index.get(extension);
+                    if(list == null){
+                        list = new ArrayList<Converter>(others);
+                        index.put(extension, list);
+                    }
+                    if(!list.contains(c)){
+                        list.add(c);
+                    }
+                }
+            }else{
+                others.add(c);
+                for(List<Converter> list: index.values()){
+                    list.add(c);
+                }
+            }
+        }
+        otherConverters = others;
+        converterIndex = index;
+        return index;
+    }
+
     @Override
     public List<Generator> getGenerators() {
         if(generators == null){
@@ -132,6 +191,8 @@ public class PluginManagerImpl implements PluginManager {
         getConverters();
         converters.add(c);
         sort(converters);
+        converterIndex = null;
+        matchedConverters.clear();
         return this;
     }
 
@@ -15,6 +15,8 @@
  */
 package org.opoo.press.renderer;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import freemarker.template.Configuration;
 import freemarker.template.Template;
 import freemarker.template.TemplateException;
@@ -29,12 +31,16 @@ import java.io.StringReader;
 import java.io.StringWriter;
 import java.io.Writer;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 
 /**
  * @author Alex Lin
  */
 public abstract class AbstractFreeMarkerRenderer extends AbstractRenderer {
     private static final Logger log = LoggerFactory.getLogger(AbstractFreeMarkerRenderer.class);
+    private static final Configuration PROCESS_CONFIGURATION = new Configuration();
+    private static final Cache<String, Template> TEMPLATES = CacheBuilder.newBuilder().maximumSize(256).build();
     private long start = System.currentTimeMillis();
 
     @Override
@@ -115,8 +121,7 @@ public abstract class AbstractFreeMarkerRenderer extends AbstractRenderer {
 
     public static String process(String templateContent, Object rootMap){
         try {
-            Configuration configuration = new Configuration();
-            Template template = new Template("tmp", new StringReader(templateContent), configuration, "UTF-8");
+            Template template = getTemplate(templateContent);
             StringWriter writer = new StringWriter();
             template.process(rootMap, writer);
             writer.flush();
@@ -125,4 +130,16 @@ public abstract class AbstractFreeMarkerRenderer extends AbstractRenderer {
             throw new RuntimeException("Process template failed: " + templateContent, e);
         }
     }
+
+    /**
+     * Short templates such as permalinks are processed for every page, parse them only once.
+     */
+    private static Template getTemplate(final String templateContent) throws ExecutionException {
+        return TEMPLATES.get(templateContent, new Callable<Template>() {
+            @Override
+            public Template call() throws Exception {
+                return new Template("tmp", new StringReader(templateContent), PROCESS_CONFIGURATION, "UTF-8");
+            }
+        });
+    }
 }
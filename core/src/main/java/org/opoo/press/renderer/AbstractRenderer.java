@@ -28,6 +28,7 @@ import java.io.StringWriter;
  * @author Alex Lin
  */
 public abstract class AbstractRenderer implements Renderer{
+    private final FragmentCache fragmentCache = new FragmentCache();
 
     public boolean isValidLayout(String layout){
         return LayoutUtils.isValidLayout(layout);
@@ -52,7 +53,14 @@ public abstract class AbstractRenderer implements Renderer{
 
     @Override
     public void prepare(){
+        fragmentCache.clear();
+    }
 
+    /**
+     * @return the fragment cache of current build
+     */
+    public FragmentCache getFragmentCache(){
+        return fragmentCache;
     }
 
     @Override
@@ -20,6 +20,7 @@ import org.apache.velocity.VelocityContext;
 import org.apache.velocity.app.VelocityEngine;
 import org.apache.velocity.context.Context;
 import org.opoo.press.Renderer;
+import org.opoo.press.template.VelocityFragmentCacheDirective;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -65,5 +66,15 @@ public abstract class AbstractVelocityRenderer extends AbstractRenderer implemen
         throw new IllegalArgumentException("rootMap type not supported: " + rootMap);
     }
 
+    /**
+     * Register the <code>#cache</code> directive, must be called before the engine initialized.
+     *
+     * @param velocityEngine the velocity engine
+     */
+    protected void initializeFragmentCache(VelocityEngine velocityEngine) {
+        velocityEngine.addProperty("userdirective", VelocityFragmentCacheDirective.class.getName());
+        velocityEngine.setApplicationAttribute(FragmentCache.ATTRIBUTE_NAME, getFragmentCache());
+    }
+
     protected abstract VelocityEngine getVelocityEngine();
 }
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2013-2015 Alex Lin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opoo.press.renderer;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Rendered template fragments shared by all pages of one build.
+ * Cleared by {@link org.opoo.press.Renderer#prepare()}.
+ *
+ * @author Alex Lin
+ * @see org.opoo.press.template.FragmentCacheModel
+ * @see org.opoo.press.template.VelocityFragmentCacheDirective
+ */
+public class FragmentCache {
+    /**
+     * The attribute name of the fragment cache in template engine.
+     */
+    public static final String ATTRIBUTE_NAME = FragmentCache.class.getName();
+
+    private final ConcurrentMap<String,String> fragments = new ConcurrentHashMap<String, String>();
+
+    /**
+     * @param key fragment key
+     * @return the rendered fragment, or null if not rendered yet
+     */
+    public String get(String key){
+        return fragments.get(key);
+    }
+
+    /**
+     * Put the rendered fragment if the key not cached yet.
+     *
+     * @param key fragment key
+     * @param fragment rendered fragment
+     * @return the cached fragment, it might be rendered by another thread.
+     */
+    public String putIfAbsent(String key, String fragment){
+        String previous = fragments.putIfAbsent(key, fragment);
+        return previous != null ? previous : fragment;
+    }
+
+    public int size(){
+        return fragments.size();
+    }
+
+    public void clear(){
+        fragments.clear();
+    }
+}
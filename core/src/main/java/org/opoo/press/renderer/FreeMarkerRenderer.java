@@ -88,7 +88,7 @@ public class FreeMarkerRenderer extends AbstractFreeMarkerRenderer{
         initializeAutoIncludeTemplates(site, configuration);
 
         initializeTemplateModels();
-
+        configuration.setCustomAttribute(FragmentCache.ATTRIBUTE_NAME, getFragmentCache());
 
         renderMethod = (String) site.get(PROPERTY_PREFIX + "render_method");
 
@@ -165,6 +165,7 @@ public class FreeMarkerRenderer extends AbstractFreeMarkerRenderer{
 
     @Override
     public void prepare(){
+        super.prepare();
         templatePreparedCache.clear();
     }
 
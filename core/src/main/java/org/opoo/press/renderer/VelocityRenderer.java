@@ -92,6 +92,8 @@ public class VelocityRenderer extends AbstractVelocityRenderer implements Render
         velocityEngine.setProperty(RuntimeConstants.FILE_RESOURCE_LOADER_PATH, newPath);
         velocityEngine.setProperty(RuntimeConstants.FILE_RESOURCE_LOADER_CACHE, true);
 
+        initializeFragmentCache(velocityEngine);
+
         //init the engine
         velocityEngine.init();
     }
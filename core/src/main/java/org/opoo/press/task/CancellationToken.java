@@ -0,0 +1,46 @@
+/*
+ * Copyright 2014 Alex Lin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opoo.press.task;
+
+import java.util.concurrent.CancellationException;
+
+/**
+ * Cancels the tasks of a build, checked by {@link TaskExecutor} before running
+ * each task.
+ *
+ * @author Alex Lin
+ * @see TaskExecutor#setCancellationToken(CancellationToken)
+ */
+public class CancellationToken {
+	private volatile boolean cancelled = false;
+
+	public void cancel(){
+		cancelled = true;
+	}
+
+	public boolean isCancelled(){
+		return cancelled;
+	}
+
+	/**
+	 * @throws CancellationException if cancelled
+	 */
+	public void checkCancelled() throws CancellationException{
+		if(cancelled){
+			throw new CancellationException("Build cancelled.");
+		}
+	}
+}
@@ -15,6 +15,7 @@
  */
 package org.opoo.press.task;
 
+import org.opoo.press.Site;
 import org.opoo.press.SiteConfig;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -23,6 +24,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletionService;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorCompletionService;
@@ -42,7 +44,17 @@ public class TaskExecutor {
 
 	private static final Logger log = LoggerFactory.getLogger(TaskExecutor.class);
 	private ExecutorService executorService;
+	private volatile CancellationToken cancellationToken;
 	
+	/**
+	 * @param site the site
+	 * @return the task executor of site, or null if the site provides none
+	 * @see TaskExecutorProvider
+	 */
+	public static TaskExecutor forSite(Site site) {
+		return (site instanceof TaskExecutorProvider) ? ((TaskExecutorProvider) site).getTaskExecutor() : null;
+	}
+
 	public TaskExecutor(SiteConfig config) {
 		//thread count
 		int threadsCount = Integer.parseInt(System.getProperty("threads", "-1"));
@@ -60,6 +72,27 @@ public class TaskExecutor {
 		}
 	}
 	
+	/**
+	 * Set the cancellation token of current build, the tasks in collection or list
+	 * are not started after the token cancelled, a {@link CancellationException}
+	 * is thrown instead.
+	 *
+	 * @param cancellationToken the token, or null if the build can not be cancelled
+	 */
+	public void setCancellationToken(CancellationToken cancellationToken){
+		this.cancellationToken = cancellationToken;
+	}
+
+	/**
+	 * @throws CancellationException if current build cancelled
+	 */
+	public void checkCancelled() throws CancellationException{
+		CancellationToken token = cancellationToken;
+		if(token != null){
+			token.checkCancelled();
+		}
+	}
+
 	public void run(Runnable task){
 		if(executorService == null){
 			task.run();
@@ -86,6 +119,7 @@ public class TaskExecutor {
 	public <T> void run(Collection<T> list, final RunnableTask<T> task){
 		if(executorService == null){
 			for(T t: list){
+				checkCancelled();
 				task.run(t);
 			}
 			return;
@@ -96,6 +130,7 @@ public class TaskExecutor {
 		for(final T input:list){
 			cs.submit(new Runnable(){
 				public void run() {
+					checkCancelled();
 					task.run(input);
 				}}, 1);
 		}
@@ -107,7 +142,7 @@ public class TaskExecutor {
 		} catch (InterruptedException e) {
 			throw new RuntimeException(e);
 		} catch (ExecutionException e) {
-			throw new RuntimeException(e);
+			throw wrap(e);
 		}
 	}
 	
@@ -115,6 +150,7 @@ public class TaskExecutor {
 		List<V> result = new ArrayList<V>();
 		if(executorService == null){
 			for(T t: list){
+				checkCancelled();
 				result.add(task.call(t));
 			}
 			return result;
@@ -126,6 +162,7 @@ public class TaskExecutor {
 		for(final T input:list){
 			cs.submit(new Callable<V>(){
 				public V call() throws Exception {
+					checkCancelled();
 					return task.call(input);
 				}});
 		}
@@ -137,7 +174,7 @@ public class TaskExecutor {
 		} catch (InterruptedException e) {
 			throw new RuntimeException(e);
 		} catch (ExecutionException e) {
-			throw new RuntimeException(e);
+			throw wrap(e);
 		}
         return result;
 	}
@@ -153,6 +190,7 @@ public class TaskExecutor {
 	public void run(List<Runnable> tasks){
 		if(executorService == null){
 			for(Runnable t: tasks){
+				checkCancelled();
 				t.run();
 			}
 			return;
@@ -161,7 +199,11 @@ public class TaskExecutor {
 		int size = tasks.size();
 		CompletionService<Integer> cs = new ExecutorCompletionService<Integer>(executorService);
 		for(final Runnable task : tasks){
-			cs.submit(task, 1);
+			cs.submit(new Runnable(){
+				public void run() {
+					checkCancelled();
+					task.run();
+				}}, 1);
 		}
 		
         try {
@@ -171,7 +213,17 @@ public class TaskExecutor {
 		} catch (InterruptedException e) {
 			throw new RuntimeException(e);
 		} catch (ExecutionException e) {
-			throw new RuntimeException(e);
+			throw wrap(e);
+		}
+	}
+
+	/**
+	 * Keep the cancellation of build as is, so the caller can tell it from failure.
+	 */
+	private static RuntimeException wrap(ExecutionException e){
+		if(e.getCause() instanceof CancellationException){
+			return (CancellationException) e.getCause();
 		}
+		return new RuntimeException(e);
 	}
 }
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2013-2015 Alex Lin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opoo.press.template;
+
+import freemarker.core.Environment;
+import freemarker.template.TemplateDirectiveBody;
+import freemarker.template.TemplateDirectiveModel;
+import freemarker.template.TemplateException;
+import freemarker.template.TemplateModel;
+import freemarker.template.TemplateModelException;
+import freemarker.template.TemplateScalarModel;
+import org.opoo.press.Named;
+import org.opoo.press.renderer.FragmentCache;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Map;
+
+/**
+ * Render the body once per build and reuse the output for the same key.
+ * The body must not depend on the current page.
+ * <p>Usage: <code>&lt;@cache key="sidebar"&gt;...&lt;/@cache&gt;</code>
+ *
+ * @author Alex Lin
+ */
+public class FragmentCacheModel implements TemplateDirectiveModel, Named {
+	public static final String NAME = "cache";
+
+	/* (non-Javadoc)
+	 * @see freemarker.template.TemplateDirectiveModel#execute(freemarker.core.Environment, java.util.Map, freemarker.template.TemplateModel[], freemarker.template.TemplateDirectiveBody)
+	 */
+	@Override
+	public void execute(Environment env, @SuppressWarnings("rawtypes") Map params, TemplateModel[] loopVars,
+						TemplateDirectiveBody body) throws TemplateException, IOException {
+		if(body == null){
+			return;
+		}
+
+		Object key = params.get("key");
+		if(!(key instanceof TemplateScalarModel)){
+			throw new TemplateModelException("The 'key' parameter of directive '" + NAME + "' is required.");
+		}
+
+		FragmentCache cache = (FragmentCache) env.getCustomAttribute(FragmentCache.ATTRIBUTE_NAME);
+		if(cache == null){
+			body.render(env.getOut());
+			return;
+		}
+
+		String cacheKey = ((TemplateScalarModel) key).getAsString();
+		String fragment = cache.get(cacheKey);
+		if(fragment == null){
+			StringWriter writer = new StringWriter();
+			body.render(writer);
+			fragment = cache.putIfAbsent(cacheKey, writer.toString());
+		}
+		env.getOut().write(fragment);
+	}
+
+	@Override
+	public String getName() {
+		return NAME;
+	}
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2013-2015 Alex Lin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opoo.press.template;
+
+import org.apache.velocity.context.InternalContextAdapter;
+import org.apache.velocity.exception.TemplateInitException;
+import org.apache.velocity.runtime.RuntimeServices;
+import org.apache.velocity.runtime.directive.Directive;
+import org.apache.velocity.runtime.parser.node.Node;
+import org.opoo.press.renderer.FragmentCache;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+
+/**
+ * Velocity version of {@link FragmentCacheModel}.
+ * <p>Usage: <code>#cache("sidebar") ... #end</code>
+ *
+ * @author Alex Lin
+ */
+public class VelocityFragmentCacheDirective extends Directive {
+
+	@Override
+	public String getName() {
+		return FragmentCacheModel.NAME;
+	}
+
+	@Override
+	public int getType() {
+		return BLOCK;
+	}
+
+	@Override
+	public void init(RuntimeServices rs, InternalContextAdapter context, Node node) throws TemplateInitException {
+		super.init(rs, context, node);
+		if(node.jjtGetNumChildren() != 2){
+			throw new TemplateInitException("#" + getName() + "() requires exactly one argument: the key",
+					context.getCurrentTemplateName(), node.getColumn(), node.getLine());
+		}
+	}
+
+	@Override
+	public boolean render(InternalContextAdapter context, Writer writer, Node node) throws IOException {
+		Node body = node.jjtGetChild(1);
+		FragmentCache cache = (FragmentCache) rsvc.getApplicationAttribute(FragmentCache.ATTRIBUTE_NAME);
+		Object key = node.jjtGetChild(0).value(context);
+		if(cache == null || key == null){
+			return body.render(context, writer);
+		}
+
+		String cacheKey = key.toString();
+		String fragment = cache.get(cacheKey);
+		if(fragment == null){
+			StringWriter out = new StringWriter();
+			body.render(context, out);
+			fragment = cache.putIfAbsent(cacheKey, out.toString());
+		}
+		writer.write(fragment);
+		return true;
+	}
+}
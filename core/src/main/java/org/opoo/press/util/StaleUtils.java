@@ -15,6 +15,7 @@
  */
 package org.opoo.press.util;
 
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
 import org.opoo.press.Site;
 import org.slf4j.Logger;
@@ -67,6 +68,16 @@ public class StaleUtils {
 		}
 	}
 
+	/**
+	 * Delete the last build info, so the next build will not be skipped, e.g. the
+	 * outputs are not written to destination directory.
+	 *
+	 * @param site the site
+	 */
+	public static void deleteLastBuildInfo(Site site){
+		FileUtils.deleteQuietly(getLastBuildInfoFile(site));
+	}
+
 	private static BuildInfo getLastBuildInfo(Site site){
 		File file = getLastBuildInfoFile(site);
 		if(!file.exists()){
@@ -177,6 +188,10 @@ public class StaleUtils {
 		return list;
 	}
 	
+    public static boolean isNewer(File dir, long compareTime){
+    	return isNewer(dir, compareTime, new ValidFileFilter());
+    }
+
     public static boolean isNewer(File dir, long compareTime, FileFilter filter){
     	File[] listFiles = dir.listFiles(filter);
     	for(File file: listFiles){
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2013-2015 Alex Lin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opoo.press.collection;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.opoo.press.Page;
+import org.opoo.press.Site;
+import org.opoo.press.Tag;
+import org.opoo.press.impl.SimplePage;
+import org.opoo.press.impl.SiteStub;
+import org.opoo.press.impl.TagImpl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Alex Lin
+ */
+public class MetaTagRegistryTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Site site;
+
+    @Before
+    public void setUp() {
+        site = new SiteStub(folder.getRoot()).getSite();
+    }
+
+    @Test
+    public void testGetSameAsLinearLookup() {
+        List<Tag> tags = new ArrayList<Tag>(Arrays.<Tag>asList(
+                new TagImpl("java", "Java"),
+                new TagImpl("java-ee", "Java EE"),
+                new TagImpl("Java", "Java 2"),
+                new TagImpl("javascript", "java-ee"),
+                new TagImpl("go", null)));
+        MetaTagRegistry<Tag> registry = new MetaTagRegistry<Tag>(tags);
+
+        for (String nameOrSlug : Arrays.asList("java", "Java", "java-ee", "Java EE", "Java 2",
+                "javascript", "go", "none")) {
+            assertSame(nameOrSlug, linearLookup(tags, nameOrSlug), registry.get(nameOrSlug));
+        }
+        assertNull(registry.get("none"));
+    }
+
+    @Test
+    public void testAdd() {
+        List<Tag> tags = new ArrayList<Tag>();
+        MetaTagRegistry<Tag> registry = new MetaTagRegistry<Tag>(tags);
+        Tag tag = new TagImpl("java", "Java");
+        registry.add(tag);
+        registry.add(new TagImpl("java", "Java again"));
+
+        assertEquals(2, tags.size());
+        assertSame(tag, registry.get("java"));
+        assertSame(tag, registry.get("Java"));
+        assertSame(tags.get(1), registry.get("Java again"));
+    }
+
+    @Test
+    public void testAddPage() {
+        Page existing = new SimplePage(site);
+        Page page = new SimplePage(site);
+        Tag tag = new TagImpl("java", "Java");
+        tag.getPages().add(existing);
+        MetaTagRegistry<Tag> registry = new MetaTagRegistry<Tag>(new ArrayList<Tag>(Arrays.asList(tag)));
+
+        assertFalse(registry.addPage(tag, existing));
+        assertTrue(registry.addPage(tag, page));
+        assertFalse(registry.addPage(tag, page));
+        assertEquals(Arrays.asList(existing, page), tag.getPages());
+
+        Tag added = new TagImpl("go", "Go");
+        registry.add(added);
+        assertTrue(registry.addPage(added, page));
+        assertEquals(Arrays.asList(page), added.getPages());
+    }
+
+    private static Tag linearLookup(List<Tag> tags, String nameOrSlug) {
+        for (Tag tag : tags) {
+            if (tag.isNameOrSlug(nameOrSlug)) {
+                return tag;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright 2013-2015 Alex Lin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opoo.press.collection;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.opoo.press.Page;
+import org.opoo.press.Tag;
+import org.opoo.press.impl.SiteStub;
+import org.opoo.press.impl.SourcePost;
+import org.opoo.press.impl.TagImpl;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Compares the indexed queries with filtering all pages.
+ *
+ * @author Alex Lin
+ */
+public class SiteQueryTest {
+    private static final String[] AUTHORS = {"alex", "bob", "carol"};
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private CollectionImpl collection;
+    private List<Tag> tags;
+    private SiteQuery query;
+
+    @Before
+    public void setUp() {
+        SiteStub site = new SiteStub(folder.getRoot());
+        collection = new CollectionImpl(null);
+        tags = new ArrayList<Tag>();
+        for (int i = 0; i < 5; i++) {
+            Tag tag = new TagImpl("tag-" + i, "Tag " + i);
+            tags.add(tag);
+            collection.getTagsHolder().add("tag", tag);
+        }
+
+        Random random = new Random(42);
+        for (int i = 0; i < 60; i++) {
+            String date = String.format("%d-%02d-%02d 10:00", 2013 + random.nextInt(3), 1 + random.nextInt(12), 1 + i % 28);
+            List<Tag> postTags = new ArrayList<Tag>();
+            for (Tag tag : tags) {
+                if (random.nextInt(3) == 0) {
+                    postTags.add(tag);
+                }
+            }
+            SourcePost post = site.post("post-" + i, date, "Content " + i, postTags.toArray(new Tag[postTags.size()]));
+            post.set("author", AUTHORS[random.nextInt(AUTHORS.length)]);
+            post.set("rank", random.nextInt(10));
+            collection.addPage(post);
+        }
+        site.getCollections().put("post", collection);
+        query = new SiteQuery(site.getCollections());
+    }
+
+    @Test
+    public void testTag() {
+        for (Tag tag : tags) {
+            assertEquals(filter(tag, -1, -1, null, null), query.from("post").tag(tag.getSlug()).list());
+            assertEquals(filter(tag, -1, -1, null, null), query.from("post").tag(tag.getName()).list());
+        }
+        assertEquals(0, query.from("post").tag("none").count());
+    }
+
+    @Test
+    public void testCombinedFilters() {
+        for (Tag tag : tags) {
+            for (int year = 2013; year <= 2015; year++) {
+                for (String author : AUTHORS) {
+                    List<Page> expected = filter(tag, year, -1, author, null);
+                    assertEquals(expected, query.from("post").tag(tag.getSlug()).year(year).where("author", author).list());
+                    assertEquals(expected.size(), query.from("post").where("author", author).year(year).tag(tag.getSlug()).count());
+                }
+                for (int month = 1; month <= 12; month++) {
+                    assertEquals(filter(tag, year, month, null, null),
+                            query.from("post").month(year, month).tag(tag.getSlug()).list());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testOffsetAndLimit() {
+        Tag tag = tags.get(0);
+        List<Page> expected = filter(tag, -1, -1, "alex", null);
+        for (int offset = 0; offset <= expected.size(); offset++) {
+            for (int limit = 0; limit <= 3; limit++) {
+                int to = Math.min(offset + limit, expected.size());
+                assertEquals(expected.subList(offset, to),
+                        query.from("post").tag(tag.getSlug()).where("author", "alex").offset(offset).limit(limit).list());
+            }
+        }
+        assertEquals(expected.get(0), query.from("post").tag(tag.getSlug()).where("author", "alex").first());
+        assertNull(query.from("post").tag("none").first());
+    }
+
+    @Test
+    public void testWhereValueAsString() {
+        assertEquals(filter(null, -1, -1, null, 3), query.from("post").where("rank", "3").list());
+        assertEquals(filter(null, -1, -1, null, 3), query.from("post").where("rank", 3).list());
+    }
+
+    @Test
+    public void testOrderBy() {
+        List<Page> list = query.from("post").orderBy("rank").list();
+        assertEquals(collection.getPages().size(), list.size());
+        for (int i = 1; i < list.size(); i++) {
+            int previous = (Integer) list.get(i - 1).get("rank");
+            int current = (Integer) list.get(i).get("rank");
+            assertEquals(true, previous <= current);
+        }
+
+        List<Page> reversed = query.from("post").tag(tags.get(1).getSlug()).reverse().limit(3).list();
+        List<Page> expected = filter(tags.get(1), -1, -1, null, null);
+        assertEquals(expected.get(expected.size() - 1), reversed.get(0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownCollection() {
+        query.from("none");
+    }
+
+    /**
+     * Filters the pages of collection one by one.
+     */
+    private List<Page> filter(Tag tag, int year, int month, String author, Integer rank) {
+        List<Page> result = new ArrayList<Page>();
+        Calendar calendar = Calendar.getInstance();
+        for (Page page : collection.getPages()) {
+            calendar.setTime(page.getDate());
+            if (tag != null && !((SourcePost) page).getTags().contains(tag)) {
+                continue;
+            }
+            if (year != -1 && calendar.get(Calendar.YEAR) != year) {
+                continue;
+            }
+            if (month != -1 && calendar.get(Calendar.MONTH) + 1 != month) {
+                continue;
+            }
+            if (author != null && !author.equals(page.get("author"))) {
+                continue;
+            }
+            if (rank != null && !rank.equals(page.get("rank"))) {
+                continue;
+            }
+            result.add(page);
+        }
+        return result;
+    }
+}
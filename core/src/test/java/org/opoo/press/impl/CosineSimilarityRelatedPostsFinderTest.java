@@ -0,0 +1,201 @@
+/*
+ * Copyright 2013-2015 Alex Lin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opoo.press.impl;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.opoo.press.Category;
+import org.opoo.press.MetaTag;
+import org.opoo.press.Post;
+import org.opoo.press.Tag;
+import org.opoo.press.collection.CollectionImpl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares the inverted index with scoring every pair of posts.
+ *
+ * @author Alex Lin
+ */
+public class CosineSimilarityRelatedPostsFinderTest {
+    private static final String FINDER = CosineSimilarityRelatedPostsFinder.class.getName();
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private SiteStub site;
+    private List<Post> posts;
+
+    @Before
+    public void setUp() {
+        site = new SiteStub(folder.getRoot());
+        posts = createPosts(site, 80, new Random(7));
+        CollectionImpl collection = new CollectionImpl(null);
+        for (Post post : posts) {
+            collection.addPage(post);
+        }
+        site.getCollections().put("post", collection);
+    }
+
+    @Test
+    public void testSameAsBruteForce() {
+        assertSameAsBruteForce(5, 1.0, 1.0);
+        assertSameAsBruteForce(3, 2.0, 0.5);
+        assertSameAsBruteForce(100, 1.0, 1.0);
+    }
+
+    @Test
+    public void testNoTerms() {
+        Post post = site.post("lonely", "2015-01-01 10:00", "Lonely");
+        CosineSimilarityRelatedPostsFinder finder = new CosineSimilarityRelatedPostsFinder(site.getSite().getConfig());
+        assertNull(finder.findRelatedPosts(post));
+    }
+
+    private void assertSameAsBruteForce(int size, double categoriesFactor, double tagsFactor) {
+        site.config("related_posts", size);
+        site.config(FINDER + ".categories.factor", categoriesFactor);
+        site.config(FINDER + ".tags.factor", tagsFactor);
+        CosineSimilarityRelatedPostsFinder finder = new CosineSimilarityRelatedPostsFinder(site.getSite().getConfig());
+
+        Map<Post, List<Post>> batch = finder.findRelatedPosts(posts, null);
+        int found = 0;
+        for (Post post : posts) {
+            List<Post> expected = bruteForce(post, size, categoriesFactor, tagsFactor);
+            if (expected == null || expected.isEmpty()) {
+                assertTrue(batch.get(post) == null || batch.get(post).isEmpty());
+            } else {
+                assertEquals(post.getUrl(), urls(expected), urls(batch.get(post)));
+                found++;
+            }
+            List<Post> single = finder.findRelatedPosts(post);
+            assertEquals(post.getUrl(), urls(expected), urls(single));
+        }
+        assertTrue(found > posts.size() / 2);
+    }
+
+    /**
+     * Scores all other posts, ties are broken by the distance of date and the id.
+     */
+    private List<Post> bruteForce(final Post post, int size, double categoriesFactor, double tagsFactor) {
+        if (post.getCategories().isEmpty() && post.getTags().isEmpty()) {
+            return null;
+        }
+        final Map<Post, Double> scores = new IdentityHashMap<Post, Double>();
+        for (Post other : posts) {
+            if (other == post) {
+                continue;
+            }
+            int categories = shared(post.getCategories(), other.getCategories());
+            int tags = shared(post.getTags(), other.getTags());
+            if (categories == 0 && tags == 0) {
+                continue;
+            }
+            double score = 0;
+            if (categories > 0) {
+                score += categories * 1.0 / (Math.sqrt(post.getCategories().size())
+                        * Math.sqrt(other.getCategories().size())) * categoriesFactor;
+            }
+            if (tags > 0) {
+                score += tags * 1.0 / (Math.sqrt(post.getTags().size())
+                        * Math.sqrt(other.getTags().size())) * tagsFactor;
+            }
+            scores.put(other, score);
+        }
+        List<Post> list = new ArrayList<Post>(scores.keySet());
+        final long time = post.getDate().getTime();
+        Collections.sort(list, new Comparator<Post>() {
+            @Override
+            public int compare(Post a, Post b) {
+                int c = scores.get(b).compareTo(scores.get(a));
+                if (c != 0) {
+                    return c;
+                }
+                long distanceA = Math.abs(a.getDate().getTime() - time);
+                long distanceB = Math.abs(b.getDate().getTime() - time);
+                if (distanceA != distanceB) {
+                    return distanceA < distanceB ? -1 : 1;
+                }
+                return a.getId().compareTo(b.getId());
+            }
+        });
+        return list.subList(0, Math.min(size, list.size()));
+    }
+
+    private static int shared(List<? extends MetaTag> a, List<? extends MetaTag> b) {
+        int count = 0;
+        for (MetaTag tag : a) {
+            if (b.contains(tag)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static List<String> urls(List<Post> posts) {
+        List<String> urls = new ArrayList<String>();
+        if (posts != null) {
+            for (Post post : posts) {
+                urls.add(post.getUrl());
+            }
+        }
+        return urls;
+    }
+
+    /**
+     * Creates the posts with random categories and tags, the dates may be same.
+     */
+    static List<Post> createPosts(SiteStub site, int count, Random random) {
+        List<Category> categories = new ArrayList<Category>();
+        for (int i = 0; i < 4; i++) {
+            categories.add(new CategoryImpl("category-" + i, "Category " + i));
+        }
+        List<Tag> tags = new ArrayList<Tag>();
+        for (int i = 0; i < 12; i++) {
+            tags.add(new TagImpl("tag-" + i, "Tag " + i));
+        }
+
+        List<Post> posts = new ArrayList<Post>();
+        for (int i = 0; i < count; i++) {
+            String date = String.format("2015-%02d-%02d 10:00", 1 + random.nextInt(3), 1 + random.nextInt(28));
+            List<Tag> postTags = new ArrayList<Tag>();
+            for (Tag tag : tags) {
+                if (random.nextInt(5) == 0) {
+                    postTags.add(tag);
+                }
+            }
+            SourcePost post = site.post("post-" + i, date, "Content " + i, postTags.toArray(new Tag[postTags.size()]));
+            if (random.nextBoolean()) {
+                Category category = categories.get(random.nextInt(categories.size()));
+                post.getCategoriesHolder().add("category", category);
+                category.getPages().add(post);
+            }
+            posts.add(post);
+        }
+        return posts;
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright 2013-2015 Alex Lin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opoo.press.impl;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.opoo.press.Post;
+import org.opoo.press.collection.CollectionImpl;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares the MinHash estimation with the exact Jaccard similarity of the shingles.
+ * The posts are near duplicates in clusters, the others share few shingles.
+ *
+ * @author Alex Lin
+ */
+public class MinHashRelatedPostsFinderTest {
+    private static final int CLUSTERS = 8;
+    private static final int CLUSTER_SIZE = 4;
+    private static final int SHINGLE_SIZE = 5;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private SiteStub site;
+    private List<Post> posts;
+    private Map<Post, Integer> clusters;
+
+    @Before
+    public void setUp() {
+        site = new SiteStub(folder.getRoot());
+        site.config("related_posts", CLUSTER_SIZE - 1);
+        site.getWorking().mkdirs();
+
+        Random random = new Random(11);
+        String[] words = new String[400];
+        for (int i = 0; i < words.length; i++) {
+            StringBuilder word = new StringBuilder();
+            for (int j = 3 + random.nextInt(6); j > 0; j--) {
+                word.append((char) ('a' + random.nextInt(26)));
+            }
+            words[i] = word.toString();
+        }
+
+        posts = new ArrayList<Post>();
+        clusters = new IdentityHashMap<Post, Integer>();
+        CollectionImpl collection = new CollectionImpl(null);
+        for (int cluster = 0; cluster < CLUSTERS; cluster++) {
+            String[] text = new String[120];
+            for (int i = 0; i < text.length; i++) {
+                text[i] = words[random.nextInt(words.length)];
+            }
+            for (int variant = 0; variant < CLUSTER_SIZE; variant++) {
+                //edit a few words of each variant
+                for (int i = 0; i < 3; i++) {
+                    text[random.nextInt(text.length)] = words[random.nextInt(words.length)];
+                }
+                StringBuilder content = new StringBuilder("<p>");
+                for (String word : text) {
+                    content.append(word).append(random.nextInt(8) == 0 ? "\n" : " ");
+                }
+                content.append("</p>");
+                String date = String.format("2015-01-%02d 10:00", 1 + posts.size() % 28);
+                Post post = site.post("post-" + cluster + "-" + variant, date, content.toString());
+                posts.add(post);
+                clusters.put(post, cluster);
+                collection.addPage(post);
+            }
+        }
+        site.getCollections().put("post", collection);
+    }
+
+    @Test
+    public void testNearDuplicatesSameAsBruteForce() {
+        MinHashRelatedPostsFinder finder = new MinHashRelatedPostsFinder();
+        finder.setSite(site.getSite());
+        Map<Post, List<Post>> batch = finder.findRelatedPosts(posts, null);
+
+        for (Post post : posts) {
+            Set<String> expected = bruteForce(post, CLUSTER_SIZE - 1);
+            //near duplicates only
+            for (Post other : posts) {
+                if (other != post && expected.contains(other.getUrl())) {
+                    assertEquals(clusters.get(post), clusters.get(other));
+                }
+            }
+            assertEquals(post.getUrl(), expected, urls(batch.get(post)));
+            assertEquals(post.getUrl(), urls(batch.get(post)), urls(finder.findRelatedPosts(post)));
+        }
+    }
+
+    @Test
+    public void testSignaturesReused() {
+        MinHashRelatedPostsFinder finder = new MinHashRelatedPostsFinder();
+        finder.setSite(site.getSite());
+        Map<Post, List<Post>> first = finder.findRelatedPosts(posts, null);
+        assertTrue(new File(site.getWorking(), ".minhash-signatures").exists());
+
+        //loaded from the signatures file
+        MinHashRelatedPostsFinder next = new MinHashRelatedPostsFinder();
+        next.setSite(site.getSite());
+        Map<Post, List<Post>> second = next.findRelatedPosts(posts, null);
+        for (Post post : posts) {
+            assertEquals(urls(first.get(post)), urls(second.get(post)));
+        }
+    }
+
+    /**
+     * @return the urls of the posts with the highest exact Jaccard similarity
+     */
+    private Set<String> bruteForce(Post post, int size) {
+        Set<Integer> shingles = shingles(post.getContent());
+        List<Post> others = new ArrayList<Post>();
+        final Map<Post, Double> similarities = new IdentityHashMap<Post, Double>();
+        for (Post other : posts) {
+            if (other != post) {
+                Set<Integer> intersection = new HashSet<Integer>(shingles);
+                Set<Integer> otherShingles = shingles(other.getContent());
+                intersection.retainAll(otherShingles);
+                Set<Integer> union = new HashSet<Integer>(shingles);
+                union.addAll(otherShingles);
+                similarities.put(other, (double) intersection.size() / union.size());
+                others.add(other);
+            }
+        }
+        Collections.sort(others, new Comparator<Post>() {
+            @Override
+            public int compare(Post a, Post b) {
+                return similarities.get(b).compareTo(similarities.get(a));
+            }
+        });
+        Set<String> urls = new HashSet<String>();
+        for (Post other : others.subList(0, size)) {
+            //the clusters are well separated
+            assertTrue(similarities.get(other) > 0.5);
+            urls.add(other.getUrl());
+        }
+        assertTrue(similarities.get(others.get(size)) < 0.2);
+        return urls;
+    }
+
+    private static Set<Integer> shingles(String content) {
+        String text = content.replaceAll("<[^>]*>", " ").replaceAll("\\s+", " ").trim().toLowerCase();
+        Set<Integer> shingles = new HashSet<Integer>();
+        for (int start = 0; start + SHINGLE_SIZE <= text.length(); start++) {
+            shingles.add(text.substring(start, start + SHINGLE_SIZE).hashCode());
+        }
+        return shingles;
+    }
+
+    private static Set<String> urls(List<Post> posts) {
+        Set<String> urls = new HashSet<String>();
+        if (posts != null) {
+            for (Post post : posts) {
+                urls.add(post.getUrl());
+            }
+        }
+        return urls;
+    }
+}
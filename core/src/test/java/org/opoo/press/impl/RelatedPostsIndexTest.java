@@ -0,0 +1,164 @@
+/*
+ * Copyright 2013-2015 Alex Lin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opoo.press.impl;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.opoo.press.Category;
+import org.opoo.press.Post;
+import org.opoo.press.Tag;
+import org.opoo.press.collection.CollectionImpl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares the related posts of an incremental build with a full recompute.
+ *
+ * @author Alex Lin
+ */
+public class RelatedPostsIndexTest {
+    private static final int POSTS = 60;
+    private static final long SEED = 3;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testUnchanged() {
+        build(newSite(), posts(newSite(), POSTS));
+        SiteStub site = newSite();
+        List<Post> posts = posts(site, POSTS);
+
+        RelatedPostsIndex index = RelatedPostsIndex.load(site.getWorking(), finder(site));
+        assertTrue(index.update(posts).isEmpty());
+        for (Post post : posts) {
+            assertEquals(post.getUrl(), urls(recompute(site, posts).get(post)), urls(index.getRelatedPosts(post)));
+        }
+    }
+
+    @Test
+    public void testSameAsFullRecompute() {
+        SiteStub first = newSite();
+        build(first, posts(first, POSTS));
+
+        //one more post than last build
+        SiteStub site = newSite();
+        List<Post> posts = posts(site, POSTS + 1);
+        Post added = posts.get(POSTS);
+
+        //removed
+        Post removed = posts.remove(7);
+        for (Tag tag : removed.getTags()) {
+            tag.getPages().remove(removed);
+        }
+        for (Category category : removed.getCategories()) {
+            category.getPages().remove(removed);
+        }
+
+        //tag added
+        Post modified = posts.get(20);
+        Tag tag = null;
+        for (Post post : posts) {
+            for (Tag t : post.getTags()) {
+                if (!modified.getTags().contains(t)) {
+                    tag = t;
+                }
+            }
+        }
+        ((SourcePost) modified).getTagsHolder().add("tag", tag);
+        tag.getPages().add(modified);
+
+        RelatedPostsIndex index = RelatedPostsIndex.load(site.getWorking(), finder(site));
+        Set<Post> affected = index.update(posts);
+        assertTrue(affected.contains(added));
+        assertTrue(affected.contains(modified));
+        assertTrue(affected.size() < posts.size());
+
+        build(site, posts);
+        Map<Post, List<Post>> expected = recompute(site, posts);
+        int found = 0;
+        for (Post post : posts) {
+            List<Post> relatedPosts = post.get("related_posts");
+            assertEquals(post.getUrl(), urls(expected.get(post)), urls(relatedPosts));
+            assertFalse(urls(relatedPosts).contains(removed.getUrl()));
+            if (relatedPosts != null) {
+                found++;
+            }
+        }
+        assertTrue(found > posts.size() / 2);
+    }
+
+    @Test
+    public void testFinderChanged() {
+        build(newSite(), posts(newSite(), POSTS));
+        SiteStub site = newSite();
+        site.config("related_posts", 3);
+        List<Post> posts = posts(site, POSTS);
+
+        RelatedPostsIndex index = RelatedPostsIndex.load(site.getWorking(), finder(site));
+        assertEquals(posts.size(), index.update(posts).size());
+    }
+
+    private SiteStub newSite() {
+        SiteStub site = new SiteStub(folder.getRoot());
+        site.getWorking().mkdirs();
+        return site;
+    }
+
+    /**
+     * Same posts, categories and tags in every call.
+     */
+    private List<Post> posts(SiteStub site, int count) {
+        return CosineSimilarityRelatedPostsFinderTest.createPosts(site, count, new Random(SEED));
+    }
+
+    private void build(SiteStub site, List<Post> posts) {
+        CollectionImpl collection = new CollectionImpl(null);
+        for (Post post : posts) {
+            collection.addPage(post);
+        }
+        site.getCollections().put("post", collection);
+        site.factory("getRelatedPostsFinder", finder(site));
+        new RelatedPostsProcessor().preRender(site.getSite());
+    }
+
+    private CosineSimilarityRelatedPostsFinder finder(SiteStub site) {
+        return new CosineSimilarityRelatedPostsFinder(site.getSite().getConfig());
+    }
+
+    private Map<Post, List<Post>> recompute(SiteStub site, List<Post> posts) {
+        return finder(site).findRelatedPosts(posts, null);
+    }
+
+    private static List<String> urls(List<Post> posts) {
+        List<String> urls = new ArrayList<String>();
+        if (posts != null) {
+            for (Post post : posts) {
+                urls.add(post.getUrl());
+            }
+        }
+        return urls;
+    }
+}
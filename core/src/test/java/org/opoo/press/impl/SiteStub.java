@@ -0,0 +1,272 @@
+/*
+ * Copyright 2013-2015 Alex Lin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opoo.press.impl;
+
+import org.apache.commons.io.FileUtils;
+import org.opoo.press.Collection;
+import org.opoo.press.Converter;
+import org.opoo.press.Factory;
+import org.opoo.press.Page;
+import org.opoo.press.Site;
+import org.opoo.press.SiteConfig;
+import org.opoo.press.Source;
+import org.opoo.press.StaticFile;
+import org.opoo.press.Tag;
+import org.opoo.press.Theme;
+import org.opoo.press.source.SimpleSource;
+import org.opoo.press.source.SourceEntryLoaderImpl;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A site for unit tests, only the configuration, the data, the pages and the
+ * directories are available. The factory and the theme provide nothing.
+ *
+ * @author Alex Lin
+ */
+public class SiteStub implements InvocationHandler {
+    private final File basedir;
+    private final Map<String, Object> config = new HashMap<String, Object>();
+    private final Map<String, Object> data = new HashMap<String, Object>();
+    private final Map<String, Collection> collections = new LinkedHashMap<String, Collection>();
+    private final List<Page> allPages = new ArrayList<Page>();
+    private final List<StaticFile> staticFiles = new ArrayList<StaticFile>();
+    private final Map<String, Object> factoryObjects = new HashMap<String, Object>();
+    private final Site site;
+    private final SiteConfig siteConfig;
+    private Converter converter = new StubConverter();
+
+    /**
+     * @param basedir the directory of sources, destination and working directory
+     */
+    public SiteStub(File basedir) {
+        this.basedir = basedir;
+        ClassLoader classLoader = SiteStub.class.getClassLoader();
+        this.site = (Site) Proxy.newProxyInstance(classLoader, new Class[]{Site.class}, this);
+        this.siteConfig = (SiteConfig) Proxy.newProxyInstance(classLoader, new Class[]{SiteConfig.class},
+                new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        String name = method.getName();
+                        if ("get".equals(name)) {
+                            Object value = config.get(args[0]);
+                            return (value == null && args.length > 1) ? args[1] : value;
+                        }
+                        if ("getConfigFiles".equals(name)) {
+                            return new File[0];
+                        }
+                        if ("getBasedir".equals(name)) {
+                            return SiteStub.this.basedir;
+                        }
+                        return defaultValue(proxy, method, args);
+                    }
+                });
+    }
+
+    public Site getSite() {
+        return site;
+    }
+
+    public SiteStub config(String name, Object value) {
+        config.put(name, value);
+        return this;
+    }
+
+    /**
+     * @param method the getter of factory, e.g. 'getRelatedPostsFinder'
+     * @param object the object returned
+     * @return this site
+     */
+    public SiteStub factory(String method, Object object) {
+        factoryObjects.put(method, object);
+        return this;
+    }
+
+    public SiteStub converter(Converter converter) {
+        this.converter = converter;
+        return this;
+    }
+
+    public Map<String, Collection> getCollections() {
+        return collections;
+    }
+
+    public List<Page> getAllPages() {
+        return allPages;
+    }
+
+    public List<StaticFile> getStaticFiles() {
+        return staticFiles;
+    }
+
+    public File getSource() {
+        return new File(basedir, "source");
+    }
+
+    public File getDestination() {
+        return new File(basedir, "site");
+    }
+
+    public File getWorking() {
+        return new File(basedir, "working");
+    }
+
+    /**
+     * Creates a post, the file name is 'yyyy-MM-dd-name.md' and the url is '/name.html'.
+     *
+     * @param name the name of post
+     * @param date the date of post, 'yyyy-MM-dd HH:mm'
+     * @param content the content of post
+     * @param tags the tag slugs of post
+     * @return the post
+     */
+    public SourcePost post(String name, String date, String content, Tag... tags) {
+        Map<String, Object> meta = new LinkedHashMap<String, Object>();
+        meta.put("title", name);
+        meta.put("date", date);
+        SourcePost post = new SourcePost(site, source(date.substring(0, 10) + "-" + name + ".md", meta, content));
+        for (Tag tag : tags) {
+            post.getTagsHolder().add("tag", tag);
+            tag.getPages().add(post);
+        }
+        allPages.add(post);
+        return post;
+    }
+
+    /**
+     * @param fileName the name of source file
+     * @param meta the front matter
+     * @param content the content
+     * @return the source, the file is created in source directory
+     */
+    public Source source(String fileName, Map<String, Object> meta, String content) {
+        File file = new File(getSource(), fileName);
+        try {
+            FileUtils.write(file, content, "UTF-8");
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return new SimpleSource(new SourceEntryLoaderImpl.SourceEntryImpl(file, getSource()), meta, content);
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) {
+        String name = method.getName();
+        if ("getConfig".equals(name)) {
+            return siteConfig;
+        } else if ("get".equals(name)) {
+            return data.get(args[0]);
+        } else if ("set".equals(name)) {
+            data.put((String) args[0], args[1]);
+            return null;
+        } else if ("formatDate".equals(name)) {
+            return args[0] != null ? new SimpleDateFormat("yyyy-MM-dd").format((Date) args[0]) : null;
+        } else if ("getConverter".equals(name)) {
+            return converter;
+        } else if ("getCollections".equals(name)) {
+            return collections;
+        } else if ("getAllPages".equals(name)) {
+            return allPages;
+        } else if ("getStaticFiles".equals(name)) {
+            return staticFiles;
+        } else if ("getBasedir".equals(name)) {
+            return basedir;
+        } else if ("getDestination".equals(name)) {
+            return getDestination();
+        } else if ("getWorking".equals(name)) {
+            return getWorking();
+        } else if ("getTemplates".equals(name)) {
+            return new File(basedir, "templates");
+        } else if ("getFactory".equals(name)) {
+            return Proxy.newProxyInstance(SiteStub.class.getClassLoader(), new Class[]{Factory.class},
+                    new InvocationHandler() {
+                        @Override
+                        public Object invoke(Object proxy, Method method, Object[] args) {
+                            Object object = factoryObjects.get(method.getName());
+                            return object != null ? object : defaultValue(proxy, method, args);
+                        }
+                    });
+        } else if ("getTheme".equals(name)) {
+            return Proxy.newProxyInstance(SiteStub.class.getClassLoader(), new Class[]{Theme.class},
+                    new InvocationHandler() {
+                        @Override
+                        public Object invoke(Object proxy, Method method, Object[] args) {
+                            if ("getConfigFile".equals(method.getName())) {
+                                return new File(basedir, "theme.yml");
+                            }
+                            return defaultValue(proxy, method, args);
+                        }
+                    });
+        }
+        return defaultValue(proxy, method, args);
+    }
+
+    private static Object defaultValue(Object proxy, Method method, Object[] args) {
+        String name = method.getName();
+        if ("equals".equals(name)) {
+            return proxy == args[0];
+        } else if ("hashCode".equals(name)) {
+            return System.identityHashCode(proxy);
+        } else if ("toString".equals(name)) {
+            return proxy.getClass().getName();
+        }
+        Class<?> type = method.getReturnType();
+        if (type == boolean.class) {
+            return false;
+        } else if (type == int.class) {
+            return 0;
+        } else if (type == long.class) {
+            return 0L;
+        }
+        return null;
+    }
+
+    /**
+     * Converts nothing, the output is html.
+     */
+    private static class StubConverter implements Converter {
+        @Override
+        public boolean matches(Source src) {
+            return true;
+        }
+
+        @Override
+        public String convert(String content) {
+            return content;
+        }
+
+        @Override
+        public String getOutputFileExtension(Source src) {
+            return ".html";
+        }
+
+        @Override
+        public int getOrder() {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2013-2015 Alex Lin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opoo.press.impl;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.opoo.press.Converter;
+import org.opoo.press.converter.TxtmarkMarkdownConverter;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the excerpt cut from the converted content against converting the excerpt.
+ *
+ * @author Alex Lin
+ */
+public class SourcePostTest {
+    private static final String EXCERPT = "First *paragraph* of post.\n\n> quoted\n> text\n\n- one\n- two\n";
+    private static final String REST = "\nRest of `post`.\n\n    code\n";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private SiteStub site;
+    private Converter converter = new TxtmarkMarkdownConverter();
+
+    @Before
+    public void setUp() {
+        site = new SiteStub(folder.getRoot()).converter(converter);
+    }
+
+    @Test
+    public void testSeparatorAfterBlankLine() {
+        String content = EXCERPT + "\n<!--more-->\n" + REST;
+        SourcePost post = post(content, null);
+        assertTrue(post.isExcerptExtracted());
+        assertEquals(EXCERPT + "\n", post.getExcerpt());
+
+        //cut from the converted content
+        post.convert();
+        assertEquals(converter.convert(EXCERPT).trim(), post.getExcerpt().trim());
+        assertTrue(post.getContent().startsWith(post.getExcerpt()));
+        assertEquals(converter.convert(content), post.getContent());
+    }
+
+    @Test
+    public void testSeparatorAfterList() {
+        //continuation line of the list item
+        String content = EXCERPT + "<!--more-->\n" + REST;
+        SourcePost post = post(content, null);
+        assertEquals(EXCERPT, post.getExcerpt());
+
+        post.convert();
+        assertEquals(converter.convert(EXCERPT), post.getExcerpt());
+        assertEquals(converter.convert(content), post.getContent());
+    }
+
+    @Test
+    public void testInlineSeparator() {
+        String content = "First paragraph<!--more--> of post.\n\nSecond paragraph.\n";
+        SourcePost post = post(content, null);
+        assertEquals("First paragraph", post.getExcerpt());
+
+        post.convert();
+        assertEquals(converter.convert("First paragraph"), post.getExcerpt());
+        assertEquals(converter.convert(content), post.getContent());
+    }
+
+    @Test
+    public void testTwoSeparators() {
+        String content = EXCERPT + "<!--more-->\n" + REST + "<!--more-->\nLast.\n";
+        SourcePost post = post(content, null);
+        assertEquals(EXCERPT, post.getExcerpt());
+
+        post.convert();
+        assertEquals(converter.convert(EXCERPT), post.getExcerpt());
+        assertEquals(converter.convert(content), post.getContent());
+    }
+
+    @Test
+    public void testFrontMatterExcerpt() {
+        SourcePost post = post(EXCERPT + "<!--more-->\n" + REST, "The *excerpt*.");
+        assertTrue(post.isExcerpted());
+        assertFalse(post.isExcerptExtracted());
+
+        post.convert();
+        assertEquals(converter.convert("The *excerpt*."), post.getExcerpt());
+    }
+
+    @Test
+    public void testNoSeparator() {
+        SourcePost post = post(EXCERPT + REST, null);
+        assertTrue(post.isExcerptExtracted());
+        assertFalse(post.isExcerpted());
+
+        post.convert();
+        assertEquals(converter.convert(EXCERPT + REST), post.getContent());
+        assertEquals(post.getContent(), post.getExcerpt());
+    }
+
+    @Test
+    public void testNotExcerptable() {
+        site.getSite().set("excerptable", false);
+        SourcePost post = post(EXCERPT + "<!--more-->\n" + REST, null);
+        assertFalse(post.isExcerptable());
+
+        post.convert();
+        assertNull(post.getExcerpt());
+        assertEquals(converter.convert(EXCERPT + "<!--more-->\n" + REST), post.getContent());
+    }
+
+    @Test
+    public void testCustomSeparator() {
+        site.config("excerpt_separator", "<!--cut-->");
+        SourcePost post = post(EXCERPT + "\n<!--cut-->\n" + REST + "<!--more-->\n", null);
+        assertEquals(EXCERPT + "\n", post.getExcerpt());
+
+        post.convert();
+        assertEquals(converter.convert(EXCERPT).trim(), post.getExcerpt().trim());
+    }
+
+    private SourcePost post(String content, String excerpt) {
+        Map<String, Object> meta = new LinkedHashMap<String, Object>();
+        meta.put("title", "Excerpt");
+        meta.put("date", "2015-01-01 10:00");
+        if (excerpt != null) {
+            meta.put("excerpt", excerpt);
+        }
+        return new SourcePost(site.getSite(), site.source("2015-01-01-excerpt.md", meta, content));
+    }
+}
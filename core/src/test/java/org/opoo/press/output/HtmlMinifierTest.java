@@ -0,0 +1,89 @@
+/*
+ * Copyright 2013-2015 Alex Lin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opoo.press.output;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author Alex Lin
+ */
+public class HtmlMinifierTest {
+
+    @Test
+    public void testWhitespace() {
+        assertEquals("<p> Some text, <b>bold</b> </p>\n<p>Next</p>",
+                HtmlMinifier.minify("<p>  Some \t text,   <b>bold</b>  </p>\n\n  <p>Next</p>"));
+        assertEquals("a < b\n", HtmlMinifier.minify("a  <  b\r\n"));
+    }
+
+    @Test
+    public void testAttributes() {
+        assertEquals("<a href=\"/a  b.html\" title='x  y' class=c>link</a>",
+                HtmlMinifier.minify("<a   href=\"/a  b.html\"\n   title='x  y'  class=c >link</a>"));
+        assertEquals("<input type=text value = \" a \" disabled>",
+                HtmlMinifier.minify("<input type=text  value =  \" a \"   disabled>"));
+    }
+
+    @Test
+    public void testQuoteInUnquotedValue() {
+        assertEquals("<img alt=it's src=a.png>\n<p>Text</p>",
+                HtmlMinifier.minify("<img alt=it's  src=a.png>\n  <p>Text</p>"));
+        assertEquals("<img alt=\"it's\" title=say\"hi\">\n<p>Text</p>",
+                HtmlMinifier.minify("<img  alt=\"it's\" title=say\"hi\">\n\n<p>Text</p>"));
+    }
+
+    @Test
+    public void testRawElements() {
+        String pre = "<pre>  line 1\n\n    line 2 <b> x  </b>\n</pre>";
+        assertEquals("<div> " + pre + " </div>", HtmlMinifier.minify("<div>  " + pre + "  </div>"));
+
+        String textarea = "<TEXTAREA name=t>  a\n\n  b</TEXTAREA>";
+        assertEquals(textarea, HtmlMinifier.minify(textarea));
+
+        String script = "<script>\n  if (a  <  b && c</d) {\n    x = '<!-- y -->';\n  }\n</script>";
+        assertEquals(script + "\n<p>x</p>", HtmlMinifier.minify(script + "\n\n<p>x</p>"));
+
+        String style = "<style type=\"text/css\">\n  p  >  a { color: red; }\n</style>";
+        assertEquals(style, HtmlMinifier.minify(style));
+    }
+
+    @Test
+    public void testSelfClosingRawElement() {
+        assertEquals("<script src=a.js /> <p> a </p>",
+                HtmlMinifier.minify("<script src=a.js />  <p>  a  </p>"));
+    }
+
+    @Test
+    public void testComments() {
+        assertEquals("<p>a</p>\n<p>b</p>", HtmlMinifier.minify("<p>a</p>\n<!-- comment\n -->\n<p>b</p>"));
+        assertEquals("a b", HtmlMinifier.minify("a <!-- x --> b"));
+
+        String conditional = "<!--[if lt IE 9]><script src=\"html5.js\"></script><![endif]-->";
+        assertEquals(conditional, HtmlMinifier.minify(conditional));
+        String downlevel = "<!--[if !IE]><!--><p>x</p><!--<![endif]-->";
+        assertEquals(downlevel, HtmlMinifier.minify(downlevel));
+        String include = "<!--#include virtual=\"/footer.html\" -->";
+        assertEquals("<p>a</p> " + include, HtmlMinifier.minify("<p>a</p>  " + include));
+    }
+
+    @Test
+    public void testUnclosed() {
+        assertEquals("<p>a", HtmlMinifier.minify("<p>a<!-- unclosed"));
+        assertEquals("<pre> a  b", HtmlMinifier.minify("<pre> a  b"));
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright 2013-2015 Alex Lin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opoo.press.output;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.opoo.press.Page;
+import org.opoo.press.StaticFile;
+import org.opoo.press.impl.SimplePage;
+import org.opoo.press.impl.SiteStub;
+import org.opoo.press.impl.StaticFileImpl;
+import org.opoo.press.source.SourceEntryLoaderImpl;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Alex Lin
+ */
+public class PrecompressProcessorTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private SiteStub site;
+
+    @Before
+    public void setUp() {
+        site = newSite();
+    }
+
+    @Test
+    public void testCompress() throws IOException {
+        Page large = site.post("large", "2015-01-01 10:00", text(100));
+        Page small = site.post("small", "2015-01-01 10:00", "Small");
+        build(site);
+
+        File largeFile = outputFile(large);
+        assertEquals(new File(site.getDestination(), "large.html"), largeFile);
+        assertArrayEquals(FileUtils.readFileToByteArray(largeFile), gunzip(gz(largeFile)));
+        assertTrue(gz(largeFile).length() < largeFile.length());
+        assertFalse(gz(outputFile(small)).exists());
+    }
+
+    @Test
+    public void testNotChanged() throws IOException {
+        Page page = site.post("page", "2015-01-01 10:00", text(100));
+        build(site);
+        File compressedFile = gz(outputFile(page));
+        compressedFile.setLastModified(compressedFile.lastModified() - 10000);
+        long lastModified = compressedFile.lastModified();
+
+        //same content written again
+        SiteStub next = newSite();
+        page = next.post("page", "2015-01-01 10:00", text(100));
+        build(next);
+        assertArrayEquals(FileUtils.readFileToByteArray(outputFile(page)), gunzip(compressedFile));
+        assertTrue(compressedFile.lastModified() >= outputFile(page).lastModified());
+        assertTrue(compressedFile.lastModified() > lastModified);
+
+        //changed
+        next = newSite();
+        page = next.post("page", "2015-01-01 10:00", text(200));
+        build(next);
+        assertArrayEquals(FileUtils.readFileToByteArray(outputFile(page)), gunzip(compressedFile));
+    }
+
+    @Test
+    public void testRemoved() {
+        Page page = site.post("page", "2015-01-01 10:00", text(100));
+        build(site);
+        assertTrue(gz(outputFile(page)).exists());
+
+        build(newSite());
+        assertFalse(gz(outputFile(page)).exists());
+    }
+
+    @Test
+    public void testOtherGzipFilesKept() throws IOException {
+        StaticFile archive = staticFile(site, "foo.tar.gz", text(100));
+        build(site);
+        build(site);
+        File archiveFile = archive.getOutputFile(site.getDestination());
+        assertEquals(new File(site.getDestination(), "foo.tar.gz"), archiveFile);
+        assertEquals(text(100), FileUtils.readFileToString(archiveFile, "UTF-8"));
+        assertFalse(gz(archiveFile).exists());
+    }
+
+    @Test
+    public void testCompressedFileIsOutput() throws IOException {
+        StaticFile text = staticFile(site, "data.txt", text(100));
+        build(site);
+        File compressedFile = gz(text.getOutputFile(site.getDestination()));
+        assertTrue(compressedFile.exists());
+
+        //'data.txt' removed, 'data.txt.gz' is a static file now
+        SiteStub next = newSite();
+        FileUtils.deleteQuietly(text.getOutputFile(next.getDestination()));
+        FileUtils.deleteQuietly(compressedFile);
+        staticFile(next, "data.txt.gz", "Archive");
+        build(next);
+        assertEquals("Archive", FileUtils.readFileToString(compressedFile, "UTF-8"));
+    }
+
+    private SiteStub newSite() {
+        return new SiteStub(folder.getRoot()).config("precompress", true);
+    }
+
+    /**
+     * Writes the pages and the static files, then compresses them.
+     */
+    private void build(SiteStub site) {
+        File dest = site.getDestination();
+        try {
+            for (Page page : site.getAllPages()) {
+                FileUtils.write(outputFile(page), page.getContent(), "UTF-8");
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        for (StaticFile staticFile : site.getStaticFiles()) {
+            staticFile.write(dest);
+        }
+        new PrecompressProcessor().postWrite(site.getSite());
+    }
+
+    private StaticFile staticFile(SiteStub site, String name, String content) throws IOException {
+        File file = new File(site.getSource(), name);
+        FileUtils.write(file, content, "UTF-8");
+        StaticFile staticFile = new StaticFileImpl(site.getSite(),
+                new SourceEntryLoaderImpl.SourceEntryImpl(file, site.getSource()));
+        site.getStaticFiles().add(staticFile);
+        return staticFile;
+    }
+
+    private File outputFile(Page page) {
+        return ((SimplePage) page).getOutputFile(site.getDestination());
+    }
+
+    private static File gz(File file) {
+        return new File(file.getPath() + ".gz");
+    }
+
+    private static String text(int lines) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < lines; i++) {
+            sb.append("<p>Line ").append(i).append(" of the page.</p>\n");
+        }
+        return sb.toString();
+    }
+
+    private static byte[] gunzip(File file) throws IOException {
+        InputStream in = new GZIPInputStream(new FileInputStream(file));
+        try {
+            return IOUtils.toByteArray(in);
+        } finally {
+            IOUtils.closeQuietly(in);
+        }
+    }
+}
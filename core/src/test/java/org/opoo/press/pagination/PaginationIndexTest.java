@@ -0,0 +1,155 @@
+/*
+ * Copyright 2013-2015 Alex Lin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opoo.press.pagination;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.opoo.press.Page;
+import org.opoo.press.Pager;
+import org.opoo.press.Post;
+import org.opoo.press.impl.SiteStub;
+import org.opoo.press.impl.SourcePost;
+import org.opoo.press.source.SimpleSource;
+import org.opoo.press.source.SourceEntryLoaderImpl;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Alex Lin
+ */
+public class PaginationIndexTest {
+    private static final int PAGE_SIZE = 3;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private SiteStub site;
+    private File template;
+    private List<Post> items;
+    private List<Page> pages;
+
+    @Before
+    public void setUp() throws IOException {
+        site = new SiteStub(folder.getRoot());
+        site.getWorking().mkdirs();
+        template = new File(folder.getRoot(), "templates/index.ftl");
+        template.getParentFile().mkdirs();
+        template.createNewFile();
+        template.setLastModified(System.currentTimeMillis() - 60000);
+
+        items = new ArrayList<Post>();
+        for (int i = 0; i < 10; i++) {
+            items.add(site.post("item-" + i, "2015-01-10 10:00", "Item " + i));
+        }
+        //the sources of the pager pages are same in every build
+        pages = new ArrayList<Page>();
+        for (int i = 0; i < 5; i++) {
+            pages.add(site.post("page-" + i, "2015-01-01 10:00", "Page " + i));
+        }
+    }
+
+    @Test
+    public void testUnchanged() {
+        assertEquals(Arrays.asList(false, false, false, false), build(items));
+        assertEquals(Arrays.asList(true, true, true, true), build(items));
+        assertEquals(Arrays.asList(true, true, true, true), build(items));
+    }
+
+    @Test
+    public void testChangedItem() {
+        build(items);
+        items.set(7, site.post("item-new", "2015-01-10 10:00", "New item"));
+        assertEquals(Arrays.asList(true, true, false, true), build(items));
+
+        //moved to another page
+        items.add(0, items.remove(9));
+        assertEquals(Arrays.asList(false, false, false, false), build(items));
+        assertEquals(Arrays.asList(true, true, true, true), build(items));
+    }
+
+    @Test
+    public void testChangedSource() {
+        build(items);
+        Post item = items.get(4);
+        File file = item.getSource().getSourceEntry().getFile();
+        assertTrue(file.setLastModified(item.getSource().getSourceEntry().getLastModified() - 10000));
+
+        Map<String, Object> meta = new LinkedHashMap<String, Object>(item.getSource().getMeta());
+        items.set(4, new SourcePost(site.getSite(), new SimpleSource(
+                new SourceEntryLoaderImpl.SourceEntryImpl(file, site.getSource()), meta, item.getContent())));
+        assertEquals(Arrays.asList(true, false, true, true), build(items));
+    }
+
+    @Test
+    public void testNewPage() {
+        build(items);
+        items.add(site.post("item-10", "2015-01-10 10:00", "Item 10"));
+        items.add(site.post("item-11", "2015-01-10 10:00", "Item 11"));
+        items.add(site.post("item-12", "2015-01-10 10:00", "Item 12"));
+        //the total number of items and pages changed
+        assertEquals(Arrays.asList(false, false, false, false, false), build(items));
+        assertEquals(Arrays.asList(true, true, true, true, true), build(items));
+    }
+
+    @Test
+    public void testTemplateChanged() {
+        build(items);
+        template.setLastModified(System.currentTimeMillis() + 60000);
+        assertEquals(Arrays.asList(false, false, false, false), build(items));
+    }
+
+    /**
+     * Paginates the items like {@link PaginationUtils}, loads and saves the index.
+     *
+     * @return whether each pager page is up to date
+     */
+    private List<Boolean> build(List<Post> items) {
+        PaginationIndex index = PaginationIndex.load(site.getSite());
+        int totalPages = (items.size() + PAGE_SIZE - 1) / PAGE_SIZE;
+        Pager[] pagers = new Pager[totalPages];
+        for (int i = 0; i < totalPages; i++) {
+            List<Post> pageItems = items.subList(i * PAGE_SIZE, Math.min(items.size(), (i + 1) * PAGE_SIZE));
+            pagers[i] = new Pager(i + 1, totalPages, items.size(), PAGE_SIZE, new ArrayList<Post>(pageItems));
+            pages.get(i).setPager(pagers[i]);
+        }
+        for (int i = 0; i < totalPages; i++) {
+            if (i > 0) {
+                pagers[i].setPrevious(pages.get(i - 1));
+            }
+            if (i < totalPages - 1) {
+                pagers[i].setNext(pages.get(i + 1));
+            }
+        }
+
+        List<Boolean> upToDate = new ArrayList<Boolean>();
+        for (int i = 0; i < totalPages; i++) {
+            upToDate.add(index.update(pages.get(i)));
+        }
+        index.save();
+        return upToDate;
+    }
+}
@@ -22,6 +22,7 @@ import org.opoo.press.Observer;
 import org.opoo.press.impl.SiteConfigImpl;
 import org.opoo.press.impl.SiteImpl;
 import org.opoo.press.impl.SiteObserver;
+import org.opoo.press.output.MemoryOutputStore;
 
 /**
  * @author Alex Lin
@@ -30,6 +31,8 @@ import org.opoo.press.impl.SiteObserver;
 public class AbstractPreviewMojo extends AbstractServerMojo{
     /**
      * The amount of time in seconds to wait between checks of the site directory.
+     * Changes of site files are detected without waiting if the WatchService is
+     * available (Java 7+), theme files are still checked at this interval.
      *
      * @parameter expression="${interval}" default-value="3"
      */
@@ -42,6 +45,25 @@ public class AbstractPreviewMojo extends AbstractServerMojo{
      */
     private boolean skipPreview;
 
+    /**
+     * Set this to 'true' to keep the built pages in memory and serve them from memory,
+     * the pages are not written to the destination directory. Static files are still
+     * copied to the destination directory.
+     *
+     * @parameter expression="${op.preview.memory}" default-value="false"
+     */
+    private boolean memoryOutput;
+
+    /**
+     * Set this to 'true' to render the pages only when requested, the sources are read
+     * and the collections are built at startup. Implies the memory output.
+     *
+     * @parameter expression="${op.preview.lazy}" default-value="false"
+     */
+    private boolean lazyRender;
+
+    private MemoryOutputStore outputStore;
+
     private boolean running = true;
 
     @Override
@@ -50,6 +72,13 @@ public class AbstractPreviewMojo extends AbstractServerMojo{
             getLog().info("Skipping preview.");
             return;
         }
+        if(memoryOutput || lazyRender){
+            outputStore = new MemoryOutputStore();
+            config.put(MemoryOutputStore.NAME, outputStore);
+        }
+        if(lazyRender){
+            config.put("lazy_render", true);
+        }
         super.executeInternal(config);
     }
 
@@ -86,7 +115,12 @@ public class AbstractPreviewMojo extends AbstractServerMojo{
         running = true;
         while(running){
             try {
-                Thread.sleep(intervalMillis);
+                if(observer instanceof SiteObserver){
+                    //returns immediately after site files changed
+                    ((SiteObserver) observer).await(intervalMillis);
+                }else{
+                    Thread.sleep(intervalMillis);
+                }
                 if(!running){
                     break;
                 }
@@ -111,6 +145,12 @@ public class AbstractPreviewMojo extends AbstractServerMojo{
         if(config.getConfigFiles().length == 0){
             throw new Exception("No valid OpooPress configuration file.");
         }
+        if(outputStore != null){
+            config.put(MemoryOutputStore.NAME, outputStore);
+        }
+        if(lazyRender){
+            config.put("lazy_render", true);
+        }
         site = new SiteImpl(config);
         site.build(true);
         startAll(config, site, intervalMillis);
@@ -26,6 +26,10 @@ import org.mortbay.jetty.handler.RequestLogHandler;
 import org.mortbay.jetty.handler.ResourceHandler;
 import org.mortbay.jetty.nio.SelectChannelConnector;
 import org.opoo.press.Site;
+import org.opoo.press.output.MemoryOutputStore;
+
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * @author Alex Lin
@@ -53,6 +57,19 @@ public class AbstractServerMojo extends AbstractBuildMojo{
         String resourceBase = site.getDestination().getPath();
         getLog().info("Server resource base: " + resourceBase);
 
+        //handlers before the resource handler
+        List<Handler> list = new ArrayList<Handler>();
+        //pages in memory, see AbstractPreviewMojo
+        MemoryOutputStore outputStore = site.getConfig().get(MemoryOutputStore.NAME);
+        if(outputStore != null){
+            getLog().info("Serving pages from memory.");
+            list.add(new MemoryOutputHandler(outputStore));
+        }
+        if(site.getConfig().get("precompress", false)){
+            getLog().info("Serving precompressed files if accepted.");
+            list.add(new PrecompressedFileHandler(site.getDestination()));
+        }
+
         if("".equals(root)){
             ResourceHandler resourceHandler = new ResourceHandler();
             //resourceHandler.setDirectoriesListed(true);
@@ -60,8 +77,10 @@ public class AbstractServerMojo extends AbstractBuildMojo{
 
             resourceHandler.setResourceBase(resourceBase/*site.getDestination().getPath()*/);
 
+            list.add(resourceHandler);
+            list.add(new DefaultHandler());
             HandlerList handlers = new HandlerList();
-            handlers.setHandlers(new Handler[] { resourceHandler, new DefaultHandler()});
+            handlers.setHandlers(list.toArray(new Handler[list.size()]));
             server.setHandler(handlers);
             //server.setHandlers(new Handler[]{handlers, logHandler});
             //getLog().info( "Startisng preview server on http://localhost:" + port + "/" );
@@ -69,7 +88,14 @@ public class AbstractServerMojo extends AbstractBuildMojo{
             getLog().info("Using " + ContextHandler.class.getName());
             ContextHandler contextHandler = new ContextHandler();
             contextHandler.setContextPath(root);
-            contextHandler.setHandler(new ResourceHandler());
+            if(!list.isEmpty()){
+                list.add(new ResourceHandler());
+                HandlerList handlers = new HandlerList();
+                handlers.setHandlers(list.toArray(new Handler[list.size()]));
+                contextHandler.setHandler(handlers);
+            }else {
+                contextHandler.setHandler(new ResourceHandler());
+            }
             contextHandler.setResourceBase(resourceBase/*site.getDestination().getPath()*/);
             //server.setHandler(contextHandler);
             server.setHandlers(new Handler[]{contextHandler, new DefaultHandler()});
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2013-2015 Alex Lin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opoopress.maven.plugins.plugin;
+
+import org.mortbay.jetty.HttpConnection;
+import org.mortbay.jetty.Request;
+import org.mortbay.jetty.handler.AbstractHandler;
+import org.opoo.press.output.MemoryOutputStore;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Serves the pages in {@link MemoryOutputStore}, the requests of other files are
+ * passed to the next handler.
+ *
+ * @author Alex Lin
+ */
+public class MemoryOutputHandler extends AbstractHandler {
+    private static final String WELCOME_FILE = "index.html";
+
+    private final MemoryOutputStore outputStore;
+
+    public MemoryOutputHandler(MemoryOutputStore outputStore) {
+        this.outputStore = outputStore;
+    }
+
+    @Override
+    public void handle(String target, HttpServletRequest request, HttpServletResponse response, int dispatch)
+            throws IOException, ServletException {
+        String method = request.getMethod();
+        if (!"GET".equals(method) && !"HEAD".equals(method)) {
+            return;
+        }
+
+        //path in context
+        String path = target;
+        MemoryOutputStore.Entry entry;
+        if (path.endsWith("/")) {
+            entry = outputStore.get(path + WELCOME_FILE);
+        } else {
+            entry = outputStore.get(path);
+            if (entry == null && outputStore.get(path + "/" + WELCOME_FILE) != null) {
+                setHandled(request);
+                String query = request.getQueryString();
+                response.sendRedirect(request.getRequestURI() + "/" + (query != null ? "?" + query : ""));
+                return;
+            }
+        }
+        if (entry == null) {
+            return;
+        }
+
+        setHandled(request);
+        response.setHeader("ETag", entry.getETag());
+        response.setHeader("Cache-Control", "no-cache");
+        if (entry.getETag().equals(request.getHeader("If-None-Match"))) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        byte[] content = entry.getContent();
+        response.setStatus(HttpServletResponse.SC_OK);
+        response.setContentType(entry.getContentType());
+        response.setContentLength(content.length);
+        response.setDateHeader("Last-Modified", entry.getLastModified());
+        if (!"HEAD".equals(method)) {
+            response.getOutputStream().write(content);
+        }
+    }
+
+    private void setHandled(HttpServletRequest request) {
+        Request baseRequest = (request instanceof Request) ? (Request) request
+                : HttpConnection.getCurrentConnection().getRequest();
+        baseRequest.setHandled(true);
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2013-2015 Alex Lin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.opoopress.maven.plugins.plugin;
+
+import org.apache.commons.io.IOUtils;
+import org.mortbay.io.Buffer;
+import org.mortbay.jetty.HttpConnection;
+import org.mortbay.jetty.MimeTypes;
+import org.mortbay.jetty.Request;
+import org.mortbay.jetty.handler.AbstractHandler;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Serves the gzip compressed sibling ('.gz') of the requested file if the client
+ * accepts gzip encoding, the requests of other files are passed to the next handler.
+ *
+ * @author Alex Lin
+ * @see org.opoo.press.output.PrecompressProcessor
+ */
+public class PrecompressedFileHandler extends AbstractHandler {
+    private static final String WELCOME_FILE = "index.html";
+
+    private final File baseDir;
+    private final String basePath;
+    private final MimeTypes mimeTypes = new MimeTypes();
+
+    public PrecompressedFileHandler(File baseDir) {
+        this.baseDir = baseDir;
+        String path;
+        try {
+            path = baseDir.getCanonicalPath();
+        } catch (IOException e) {
+            path = baseDir.getAbsolutePath();
+        }
+        this.basePath = path.endsWith(File.separator) ? path : path + File.separator;
+    }
+
+    @Override
+    public void handle(String target, HttpServletRequest request, HttpServletResponse response, int dispatch)
+            throws IOException, ServletException {
+        String method = request.getMethod();
+        if (!"GET".equals(method) && !"HEAD".equals(method)) {
+            return;
+        }
+        String acceptEncoding = request.getHeader("Accept-Encoding");
+        if (acceptEncoding == null || acceptEncoding.indexOf("gzip") == -1) {
+            return;
+        }
+
+        //path in context
+        String path = target.endsWith("/") ? target + WELCOME_FILE : target;
+        File file = new File(baseDir, path);
+        File compressedFile = new File(file.getPath() + ".gz");
+        //stale if older than the original file
+        if (!file.isFile() || !compressedFile.isFile() || compressedFile.lastModified() < file.lastModified()
+                || !compressedFile.getCanonicalPath().startsWith(basePath)) {
+            return;
+        }
+
+        Request baseRequest = (request instanceof Request) ? (Request) request
+                : HttpConnection.getCurrentConnection().getRequest();
+        baseRequest.setHandled(true);
+
+        Buffer mimeType = mimeTypes.getMimeByExtension(file.getName());
+        response.setStatus(HttpServletResponse.SC_OK);
+        response.setContentType(mimeType != null ? mimeType.toString() : "application/octet-stream");
+        response.setHeader("Content-Encoding", "gzip");
+        response.setHeader("Vary", "Accept-Encoding");
+        response.setContentLength((int) compressedFile.length());
+        response.setDateHeader("Last-Modified", file.lastModified());
+        if ("HEAD".equals(method)) {
+            return;
+        }
+
+        InputStream in = new FileInputStream(compressedFile);
+        try {
+            IOUtils.copy(in, response.getOutputStream());
+        } finally {
+            IOUtils.closeQuietly(in);
+        }
+    }
+}